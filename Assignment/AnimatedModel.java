@@ -1,5 +1,6 @@
 import gmaths.*;
 import java.nio.*;
+import java.util.Random;
 import com.jogamp.common.nio.*;
 import com.jogamp.opengl.*;
 
@@ -17,25 +18,34 @@ public class AnimatedModel extends Model {
   private static final float MAX_ANIMATION_SPEED_X = BASE_ANIMATION_SPEED_X + MAX_ANIMATION_SPEED_CHANGE;
   private static final float MAX_ANIMATION_SPEED_Y = 0.025f;
   private static final float MIN_ANIMATION_SPEED_Y = 0.015f;
-  private float offsetX;
+  private float offsetX;   //advanced by animate, on the simulation thread
   private float offsetY;
-  private double lastTime;
+  private float shownOffsetX;   //what render draws, set from a FrameState on the render thread
+  private float shownOffsetY;
+  private FrameClock clock;
+  private Random random = new Random(1);  //seeded, so that a replay of the clock gives the same wind
 
-  public AnimatedModel(GL3 gl, Camera camera, Light light, Spotlight spotlight, Shader shader, Material material, Mat4 modelMatrix, Mesh mesh, int[] textureId1, int[] textureId2) {
+  public AnimatedModel(GL3 gl, Camera camera, Light light, Spotlight spotlight, Shader shader, Material material, Mat4 modelMatrix, Mesh mesh, int[] textureId1, int[] textureId2, FrameClock clock) {
     super(gl, camera, light, spotlight, shader, material, modelMatrix, mesh, textureId1, textureId2);
-    lastTime = timeOfLastAnimationChange = System.currentTimeMillis()/1000.0;
+    this.clock = clock;
+    timeOfLastAnimationChange = clock.getTime();
   }
 
   @Override
-  public void render(GL3 gl, Mat4 modelMatrix) {
+  public void render(GL3 gl, Mat4 modelMatrix, Mesh mesh) {
     setupShaders(gl, modelMatrix);
+    shader.setFloat(gl, "offset", shownOffsetX, shownOffsetY);
+    mesh.render(gl);
+  }
 
-    double currentTime = System.currentTimeMillis()/1000.0;
+  /* Moves the snowfall on; call once per simulation tick */
+  public void animate() {
+    double currentTime = clock.getTime();
 
     if(currentTime > timeOfLastAnimationChange + ANIMATION_SPEED_CHANGE_INTERVAL) {
       lastAnimationSpeed = animationSpeedX;
       //set the speed change target to +- the max speed change
-      targetAnimationSpeed = BASE_ANIMATION_SPEED_X + ((float)Math.random() * MAX_ANIMATION_SPEED_CHANGE * 2) - MAX_ANIMATION_SPEED_CHANGE;
+      targetAnimationSpeed = BASE_ANIMATION_SPEED_X + (random.nextFloat() * MAX_ANIMATION_SPEED_CHANGE * 2) - MAX_ANIMATION_SPEED_CHANGE;
       timeOfLastAnimationChange = currentTime;
       lastToTargetAnimationDifference = targetAnimationSpeed - animationSpeedX;
     }
@@ -51,14 +61,21 @@ public class AnimatedModel extends Model {
       animationSpeedY = MIN_ANIMATION_SPEED_Y;
     }
 
-    double deltaTime = currentTime - lastTime;
-    offsetX += (animationSpeedX * (float)deltaTime);
-    offsetY += (animationSpeedY * (float)deltaTime);
+    offsetX += (animationSpeedX * (float)clock.getStep());
+    offsetY += (animationSpeedY * (float)clock.getStep());
+  }
 
-    shader.setFloat(gl, "offset", offsetX, offsetY);
-    lastTime = currentTime;
+  public float getOffsetX() {
+    return offsetX;
+  }
 
-    mesh.render(gl);
+  public float getOffsetY() {
+    return offsetY;
+  }
+
+  public void setShownOffset(float x, float y) {
+    shownOffsetX = x;
+    shownOffsetY = y;
   }
 
 }
@@ -1,5 +1,6 @@
 import gmaths.*;
 import java.awt.event.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.jogamp.opengl.awt.GLCanvas;
 
 public class Camera {
@@ -28,12 +29,31 @@ public class Camera {
   private float yaw;
   private float pitch;
   
-  private Mat4 perspective;
+  private Mat4 perspective = new Mat4(1);
+
+  // The view and view-projection matrices are cached and only rebuilt after the camera changes.
+  // version goes up on every change, so users of the matrices can also tell when to re-upload.
+  // Changes come from both the AWT input thread and the GL thread (reshape), so the count is
+  // atomic and no change is lost. updateMatrices reads version before rebuilding, so a change made
+  // during a rebuild leaves cachedVersion behind and the matrices are rebuilt again on the next
+  // call. The vectors themselves are not locked: a frame may see a move half applied, never a stale one.
+  private final AtomicInteger version = new AtomicInteger(0);
+  private int cachedVersion = -1;
+  private Mat4 view = new Mat4(1);
+  private Mat4 viewProjection = new Mat4(1);
 
   public Camera(Vec3 position, Vec3 target, Vec3 up) {
     setupCamera(position, target, up);
   }
   
+  private void changed() {
+    version.incrementAndGet();
+  }
+  
+  public int getVersion() {
+    return version.get();
+  }
+  
   private void setupCamera(Vec3 position, Vec3 target, Vec3 up) {
     this.position = new Vec3(position);
     this.target = new Vec3(target);
@@ -44,6 +64,7 @@ public class Camera {
     calculateYawPitch(front);
     worldUp = new Vec3(up);
     updateCameraVectors();
+    changed();
   }
   
   public Vec3 getPosition() {
@@ -70,13 +91,32 @@ public class Camera {
     pitch = (float)Math.asin(v.y);
   }
 
+  /* The returned matrix is shared and must not be modified */
   public Mat4 getViewMatrix() {
-    target = Vec3.add(position, front);
-    return Mat4Transform.lookAt(position, target, up);
+    updateMatrices();
+    return view;
+  }
+  
+  /* perspective*view. The returned matrix is shared and must not be modified */
+  public Mat4 getViewProjectionMatrix() {
+    updateMatrices();
+    return viewProjection;
+  }
+  
+  private void updateMatrices() {
+    int v = version.get();
+    if (v == cachedVersion) return;
+    target.x = position.x + front.x;
+    target.y = position.y + front.y;
+    target.z = position.z + front.z;
+    Mat4Transform.lookAtInto(position, target, up, view);
+    Mat4.multiplyInto(perspective, view, viewProjection);
+    cachedVersion = v;
   }
   
   public void setPerspectiveMatrix(Mat4 m) {
-    perspective = m;
+    perspective.set(m);
+    changed();
   }
   
   public Mat4 getPerspectiveMatrix() {
@@ -93,6 +133,7 @@ public class Camera {
       case FORWARD: position.add(Vec3.multiply(front, KEYBOARD_SPEED)); break;
       case BACK: position.add(Vec3.multiply(front, -KEYBOARD_SPEED)); break;
     }
+    if (movement != Movement.NO_MOVEMENT) changed();
   }
   
   public void updateYawPitch(float y, float p) {
@@ -102,6 +143,7 @@ public class Camera {
     else if (pitch < -89) pitch = -89;
     updateFront();
     updateCameraVectors();
+    changed();
   }
   
   private void updateFront() {
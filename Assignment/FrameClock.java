@@ -0,0 +1,91 @@
+/* The time all animation runs on. Simulation advances it once per loop, reading System.nanoTime
+   a single time, and the scaled real time is added to an accumulator; each whole step in the
+   accumulator is one tick, and getTime moves on by exactly getStep each tick. So the animations
+   see the same times however fast or unevenly the machine runs. getTickNanos gives the real time
+   each tick fell due, which FrameState keeps with the tick's time, for drawing between ticks.
+
+   Paused, the clock only moves when advanceBy is called, which is how a replay, or a benchmark
+   running faster than real time, drives it.
+
+   Only the simulation thread advances and steps the clock; the rest may be used from any thread. */
+
+public final class FrameClock {
+
+  private static final long MAX_ADVANCE_NANOS = 250_000_000L;  // after a longer stall the time lost is dropped, not caught up
+
+  private final double step;
+  private volatile double time = 0;
+  private volatile double accumulator = 0;
+  private volatile long lastAdvanceNanos = System.nanoTime();
+  private volatile double timeScale = 1;
+  private volatile boolean paused = false;
+  private long tickNanos = lastAdvanceNanos;   // only used by the simulation thread
+
+  public FrameClock(double step) {
+    this.step = step;
+  }
+
+  /* Adds the real time since the last call, scaled, unless paused. Returns the number of ticks now due. */
+  public int advance() {
+    long now = System.nanoTime();
+    if (!paused) {
+      accumulator += Math.min(now - lastAdvanceNanos, MAX_ADVANCE_NANOS) * 1e-9 * timeScale;
+    }
+    lastAdvanceNanos = now;
+    return (int)(accumulator / step);
+  }
+
+  /* Adds simulated time directly; call advance to find the ticks now due */
+  public void advanceBy(double seconds) {
+    accumulator += seconds;
+  }
+
+  /* Moves on one tick; call at the start of each tick */
+  public void step() {
+    time += step;
+    accumulator -= step;
+    // What is left in the accumulator is the simulated time the clock had reached past this tick
+    // when it was last advanced, so the tick fell due that much real time earlier
+    double scale = paused ? 0 : timeScale;
+    tickNanos = (scale > 0) ? lastAdvanceNanos - (long)(accumulator / scale * 1e9) : lastAdvanceNanos;
+  }
+
+  /* The System.nanoTime at which the current tick fell due. For the simulation thread. */
+  public long getTickNanos() {
+    return tickNanos;
+  }
+
+  /* The simulated time of the current tick, in seconds */
+  public double getTime() {
+    return time;
+  }
+
+  /* The length of a tick in simulated seconds */
+  public double getStep() {
+    return step;
+  }
+
+  /* The real time until the next tick is due, or a whole step's worth of real time if paused */
+  public long getNanosToNextStep() {
+    if (paused || timeScale <= 0) return (long)(step * 1e9);
+    return (long)((step - accumulator) / timeScale * 1e9);
+  }
+
+  public double getTimeScale() {
+    return timeScale;
+  }
+
+  /* Runs simulated time faster (above 1) or slower (below 1) than real time */
+  public void setTimeScale(double timeScale) {
+    this.timeScale = timeScale;
+  }
+
+  public boolean isPaused() {
+    return paused;
+  }
+
+  public void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+
+}
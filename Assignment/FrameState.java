@@ -0,0 +1,145 @@
+import gmaths.*;
+
+/* A copy of what the render thread draws from one simulation tick: the world matrix of each model
+   in the scene graphs, the bounds of each graph, the spotlight's lamp and the background's texture
+   offset. Simulation fills it in on its own thread and then hands it over; from then on it is only
+   read, until the render thread hands it back.
+
+   Each state also holds the same things from the tick before, and is drawn part way between the
+   two, as far as getAlpha says. So movement stays smooth when frames and ticks do not line up, at
+   the cost of drawing a tick behind the simulation. The tick's time and the real time it fell due
+   are captured together, so alpha never mixes one tick's time with another's. */
+
+public final class FrameState {
+
+  private final Model[] models;
+  private final Mat4[] worldMatrices, previousMatrices;
+  private final int[] graphStarts;   // the models of scene graph g are graphStarts[g] up to graphStarts[g+1]
+  private final BoundingSphere[] tickBounds;
+  private final BoundingSphere[] graphBounds;   // enclose this tick's bounds and the previous tick's
+
+  private final float[] lamp = new float[9], previousLamp = new float[9];   // position, direction and rotation
+  private boolean spotlightOn;
+  private final float[] backgroundOffset = new float[2], previousBackgroundOffset = new float[2];
+  private double time;
+  private long tickNanos;
+
+  private final Mat4 drawnMatrix = new Mat4(1);   // scratch for draw, on the render thread
+
+  FrameState(Model[] models, int[] graphStarts) {
+    this.models = models;
+    this.graphStarts = graphStarts;
+    worldMatrices = new Mat4[models.length];
+    previousMatrices = new Mat4[models.length];
+    for (int i=0; i<models.length; ++i) {
+      worldMatrices[i] = new Mat4(1);
+      previousMatrices[i] = new Mat4(1);
+    }
+    tickBounds = new BoundingSphere[graphStarts.length-1];
+    graphBounds = new BoundingSphere[graphStarts.length-1];
+    for (int g=0; g<graphBounds.length; ++g) {
+      tickBounds[g] = new BoundingSphere();
+      graphBounds[g] = new BoundingSphere();
+    }
+  }
+
+  // Copies the simulation's state at the given time, which fell due at System.nanoTime tickNanos; nodes
+  // are the ModelNodes of graphs, in the order of models. previous is the state published for the tick
+  // before, or null if there was none.
+  void capture(ModelNode[] nodes, SGNode[] graphs, SecuritySpotlight securitySpotlight, AnimatedModel background,
+               double time, long tickNanos, FrameState previous) {
+    if (previous == null) previous = this;
+    for (int i=0; i<nodes.length; ++i) {
+      worldMatrices[i].set(nodes[i].getWorldTransform());
+      previousMatrices[i].set(previous.worldMatrices[i]);
+    }
+    for (int g=0; g<graphs.length; ++g) {
+      tickBounds[g].set(graphs[g].getWorldBounds());
+      graphBounds[g].set(tickBounds[g]);
+      graphBounds[g].enclose(previous.tickBounds[g]);
+    }
+    copy(securitySpotlight.getLampPosition(), lamp, 0);
+    copy(securitySpotlight.getLampDirection(), lamp, 3);
+    copy(securitySpotlight.getLampRotation(), lamp, 6);
+    System.arraycopy(previous.lamp, 0, previousLamp, 0, lamp.length);
+    spotlightOn = securitySpotlight.isActive();
+    backgroundOffset[0] = background.getOffsetX();
+    backgroundOffset[1] = background.getOffsetY();
+    System.arraycopy(previous.backgroundOffset, 0, previousBackgroundOffset, 0, backgroundOffset.length);
+    this.time = time;
+    this.tickNanos = tickNanos;
+  }
+
+  private static void copy(Vec3 from, float[] to, int offset) {
+    to[offset] = from.x;
+    to[offset+1] = from.y;
+    to[offset+2] = from.z;
+  }
+
+  private static float lerp(float[] a, float[] b, int i, float t) {
+    return a[i] + (b[i]-a[i])*t;
+  }
+
+  /* The clock's time at the tick this state was captured */
+  public double getTime() {
+    return time;
+  }
+
+  /* How far to draw from the tick before towards this one, from 0 to 1: the scaled real time since this
+     tick fell due, in steps. The clock's scale and pause are read, but not its time. Paused, the tick
+     is drawn as it is, so stepping with advanceBy shows each tick as soon as it is published. */
+  public float getAlpha(FrameClock clock) {
+    if (clock.isPaused()) return 1;
+    double alpha = (System.nanoTime() - tickNanos) * 1e-9 * clock.getTimeScale() / clock.getStep();
+    return (float)Math.min(Math.max(alpha, 0), 1);
+  }
+
+  public int getModelCount() {
+    return worldMatrices.length;
+  }
+
+  /* The world matrix of a model at this tick, in the order the scene graphs hold them */
+  public Mat4 getWorldMatrix(int model) {
+    return worldMatrices[model];
+  }
+
+  /* The background's texture offset at this tick */
+  public float getBackgroundOffsetX() {
+    return backgroundOffset[0];
+  }
+
+  public float getBackgroundOffsetY() {
+    return backgroundOffset[1];
+  }
+
+  public int getGraphCount() {
+    return graphBounds.length;
+  }
+
+  public BoundingSphere getGraphBounds(int graph) {
+    return graphBounds[graph];
+  }
+
+  /* Queues every model of one scene graph, alpha of the way from its previous world matrix to its captured one */
+  public void draw(int graph, RenderQueue queue, float alpha) {
+    for (int i=graphStarts[graph]; i<graphStarts[graph+1]; ++i) {
+      queue.add(models[i], Mat4.lerpInto(previousMatrices[i], worldMatrices[i], alpha, drawnMatrix));
+    }
+  }
+
+  /* Moves the spotlight alpha of the way to the captured lamp, and switches it on or off to match */
+  public void applySpotlight(Spotlight spotlight, float alpha) {
+    spotlight.setPosition(lerp(previousLamp, lamp, 0, alpha), lerp(previousLamp, lamp, 1, alpha), lerp(previousLamp, lamp, 2, alpha));
+    spotlight.setDirection(lerp(previousLamp, lamp, 3, alpha), lerp(previousLamp, lamp, 4, alpha), lerp(previousLamp, lamp, 5, alpha));
+    spotlight.setRotation(lerp(previousLamp, lamp, 6, alpha), lerp(previousLamp, lamp, 7, alpha), lerp(previousLamp, lamp, 8, alpha));
+    if (spotlight.isOn() != spotlightOn) {
+      spotlight.toggle();
+    }
+  }
+
+  public void applyBackground(AnimatedModel background, float alpha) {
+    background.setShownOffset(lerp(previousBackgroundOffset, backgroundOffset, 0, alpha),
+                              lerp(previousBackgroundOffset, backgroundOffset, 1, alpha));
+  }
+
+}
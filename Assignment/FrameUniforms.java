@@ -0,0 +1,95 @@
+import gmaths.*;
+import java.nio.*;
+import com.jogamp.common.nio.*;
+import com.jogamp.opengl.*;
+
+/* Holds the uniforms that are the same for every model in a frame (the camera and the lights)
+   in two uniform buffer objects, updated once per frame. Shaders declare the matching std140
+   blocks, CameraData and LightData, and Shader binds them to the binding points below.
+
+   std140 layout, in floats:
+     CameraData  0  mat4 viewProjection (column major)
+                 16 vec3 viewPos
+     LightData   0  Light light
+                 24 Light spotlight
+     Light       0  vec3 position, 4 vec3 ambient, 8 vec3 diffuse, 12 vec3 specular,
+                 15 float cuttoff, 16 float outerCuttoff, 20 vec3 direction  (24 floats in all) */
+
+public class FrameUniforms {
+
+  public static final String CAMERA_BLOCK = "CameraData";
+  public static final String LIGHT_BLOCK = "LightData";
+  public static final int CAMERA_BINDING = 0;
+  public static final int LIGHT_BINDING = 1;
+
+  private static final int CAMERA_FLOATS = 20;
+  private static final int LIGHT_STRUCT_FLOATS = 24;
+  private static final int LIGHT_FLOATS = 2*LIGHT_STRUCT_FLOATS;
+
+  private int[] bufferIds = new int[2];
+  private float[] cameraData = new float[CAMERA_FLOATS];
+  private float[] lightData = new float[LIGHT_FLOATS];
+  private FloatBuffer cameraBuffer = Buffers.newDirectFloatBuffer(CAMERA_FLOATS);
+  private FloatBuffer lightBuffer = Buffers.newDirectFloatBuffer(LIGHT_FLOATS);
+  private int uploadedCameraVersion = -1;
+
+  public FrameUniforms(GL3 gl) {
+    gl.glGenBuffers(2, bufferIds, 0);
+    createBuffer(gl, bufferIds[0], CAMERA_BINDING, CAMERA_FLOATS);
+    createBuffer(gl, bufferIds[1], LIGHT_BINDING, LIGHT_FLOATS);
+  }
+
+  private void createBuffer(GL3 gl, int id, int binding, int floats) {
+    gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, id);
+    gl.glBufferData(GL2ES3.GL_UNIFORM_BUFFER, (long)Float.BYTES*floats, null, GL.GL_DYNAMIC_DRAW);
+    gl.glBindBufferBase(GL2ES3.GL_UNIFORM_BUFFER, binding, id);
+  }
+
+  /* Call once per frame, after anything that moves the camera or lights and before drawing */
+  public void update(GL3 gl, Camera camera, Light light, Spotlight spotlight) {
+    int cameraVersion = camera.getVersion();
+    if (cameraVersion != uploadedCameraVersion) {   // nothing to send while the camera is still
+      camera.getViewProjectionMatrix().toFloatArrayForGLSL(cameraData, 0);
+      Vec3 viewPos = camera.getPosition();
+      cameraData[16] = viewPos.x;
+      cameraData[17] = viewPos.y;
+      cameraData[18] = viewPos.z;
+      upload(gl, bufferIds[0], cameraBuffer, cameraData);
+      uploadedCameraVersion = cameraVersion;
+    }
+
+    putLight(light, 0);
+    putLight(spotlight, LIGHT_STRUCT_FLOATS);
+    lightData[LIGHT_STRUCT_FLOATS+15] = spotlight.getCutoff();
+    lightData[LIGHT_STRUCT_FLOATS+16] = spotlight.getOuterCutoff();
+    putVec3(spotlight.getDirection(), LIGHT_STRUCT_FLOATS+20);
+    upload(gl, bufferIds[1], lightBuffer, lightData);
+  }
+
+  private void putLight(Light light, int offset) {
+    Material material = light.getMaterial();
+    putVec3(light.getPosition(), offset);
+    putVec3(material.getAmbient(), offset+4);
+    putVec3(material.getDiffuse(), offset+8);
+    putVec3(material.getSpecular(), offset+12);
+  }
+
+  private void putVec3(Vec3 v, int offset) {
+    lightData[offset] = v.x;
+    lightData[offset+1] = v.y;
+    lightData[offset+2] = v.z;
+  }
+
+  private void upload(GL3 gl, int id, FloatBuffer buffer, float[] data) {
+    buffer.clear();
+    buffer.put(data);
+    buffer.flip();
+    gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, id);
+    gl.glBufferSubData(GL2ES3.GL_UNIFORM_BUFFER, 0, (long)Float.BYTES*data.length, buffer);
+  }
+
+  public void dispose(GL3 gl) {
+    gl.glDeleteBuffers(2, bufferIds, 0);
+  }
+
+}
@@ -0,0 +1,99 @@
+import com.jogamp.opengl.*;
+
+/* Tracks the GL state that is set through it and skips calls that would not change anything.
+   The program only ever has one GL context, so, like TextureLibrary, the state is held statically.
+   Code that changes the program, vertex array or texture bindings directly on the GL3 object
+   must call invalidate() afterwards, otherwise later calls could be wrongly skipped. */
+
+public final class GLStateCache {
+
+  private static final int MAX_TEXTURE_UNITS = 16;
+
+  private static int currentProgram = -1;
+  private static int currentVertexArray = -1;
+  private static int activeTextureUnit = -1;
+  private static int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+
+  private static long issuedCalls = 0;
+  private static long skippedCalls = 0;
+
+  static {
+    invalidate();
+  }
+
+  public static void invalidate() {
+    currentProgram = -1;
+    currentVertexArray = -1;
+    activeTextureUnit = -1;
+    for (int i=0; i<MAX_TEXTURE_UNITS; ++i) {
+      boundTextures[i] = -1;
+    }
+  }
+
+  public static void useProgram(GL3 gl, int program) {
+    if (program == currentProgram) {
+      skippedCalls++;
+      return;
+    }
+    gl.glUseProgram(program);
+    currentProgram = program;
+    issuedCalls++;
+  }
+
+  public static void bindVertexArray(GL3 gl, int vertexArray) {
+    if (vertexArray == currentVertexArray) {
+      skippedCalls++;
+      return;
+    }
+    gl.glBindVertexArray(vertexArray);
+    currentVertexArray = vertexArray;
+    issuedCalls++;
+  }
+
+  public static void bindTexture(GL3 gl, int unit, int texture) {
+    if (boundTextures[unit] == texture) {
+      skippedCalls++;
+      return;
+    }
+    if (unit != activeTextureUnit) {
+      gl.glActiveTexture(GL.GL_TEXTURE0 + unit);
+      activeTextureUnit = unit;
+      issuedCalls++;
+    }
+    gl.glBindTexture(GL.GL_TEXTURE_2D, texture);
+    boundTextures[unit] = texture;
+    issuedCalls++;
+  }
+
+  /* Called when a texture is deleted, as GL may hand out the same name again */
+  public static void forgetTexture(int texture) {
+    for (int i=0; i<MAX_TEXTURE_UNITS; ++i) {
+      if (boundTextures[i] == texture) boundTextures[i] = -1;
+    }
+  }
+
+  //---------------------------COUNTERS----------------------------------
+
+  /* Used by Shader, which caches uniform values per program */
+  static void countIssued() {
+    issuedCalls++;
+  }
+
+  static void countSkipped() {
+    skippedCalls++;
+  }
+
+  public static long getIssuedCalls() {
+    return issuedCalls;
+  }
+
+  public static long getSkippedCalls() {
+    return skippedCalls;
+  }
+
+  public static void resetCounters() {
+    issuedCalls = 0;
+    skippedCalls = 0;
+  }
+
+}
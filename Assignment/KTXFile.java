@@ -0,0 +1,119 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/* KTX 1.1 files holding a compressed 2D texture and all its mipmaps, so that they can be given
+   to glCompressedTexImage2D as they are. Files are memory mapped when read, as MeshFile's are.
+   Only what TextureLibrary writes is supported: one face, no array, no key/value data.
+
+   Values are written little endian, which the endianness field records.
+     byte 0   12 byte KTX 1.1 identifier
+          12  int   endianness, 0x04030201
+          16  int   glType, glTypeSize, glFormat: 0, 1, 0 for compressed data
+          28  int   glInternalFormat, such as GL_COMPRESSED_RGB_S3TC_DXT1_EXT
+          32  int   glBaseInternalFormat, such as GL_RGB
+          36  int   width, height, depth (0)
+          48  int   array elements (0), faces (1), mipmap levels
+          60  int   bytes of key/value data (0)
+          64  for each level: int image size, then the image, padded to 4 bytes */
+
+public final class KTXFile {
+
+  private static final byte[] IDENTIFIER = {(byte)0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte)0xBB, '\r', '\n', 0x1A, '\n'};
+  private static final int ENDIANNESS = 0x04030201;
+  private static final int HEADER_BYTES = 64;
+
+  /* The contents of a file, with the levels still in the mapped file */
+  public static final class Contents {
+    public final int internalFormat;
+    public final int width;
+    public final int height;
+    public final ByteBuffer[] levels;
+
+    private Contents(int internalFormat, int width, int height, ByteBuffer[] levels) {
+      this.internalFormat = internalFormat;
+      this.width = width;
+      this.height = height;
+      this.levels = levels;
+    }
+  }
+
+  /* Maps a file and checks its header. The mapping stays valid until the buffers are garbage collected. */
+  public static Contents read(String filename) throws IOException {
+    ByteBuffer file;
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    file.order(ByteOrder.LITTLE_ENDIAN);
+    if (file.capacity() < HEADER_BYTES) throw new IOException(filename + " is not a KTX file");
+    for (int i=0; i<IDENTIFIER.length; ++i) {
+      if (file.get(i) != IDENTIFIER[i]) throw new IOException(filename + " is not a KTX file");
+    }
+    if (file.getInt(12) != ENDIANNESS) throw new IOException(filename + " is big endian");
+    if (file.getInt(16) != 0 || file.getInt(44) != 0 || file.getInt(48) != 0 || file.getInt(52) != 1) {
+      throw new IOException(filename + " is not a compressed 2D texture");
+    }
+    int internalFormat = file.getInt(28);
+    int width = file.getInt(36);
+    int height = file.getInt(40);
+    int levelCount = Math.max(1, file.getInt(56));
+    int offset = HEADER_BYTES + file.getInt(60);
+    ByteBuffer[] levels = new ByteBuffer[levelCount];
+    for (int level=0; level<levelCount; ++level) {
+      if (offset+4 > file.capacity()) throw new IOException(filename + " is damaged");
+      int size = file.getInt(offset);
+      offset += 4;
+      if (size < 0 || offset+size > file.capacity()) throw new IOException(filename + " is damaged");
+      ByteBuffer b = file.duplicate();
+      b.position(offset).limit(offset+size);
+      levels[level] = b.slice();
+      offset += align(size);
+    }
+    return new Contents(internalFormat, width, height, levels);
+  }
+
+  /* Writes to a temporary file first, so that readers never see part of a file */
+  public static void write(String filename, int internalFormat, int baseInternalFormat,
+                           int width, int height, byte[][] levels) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.put(IDENTIFIER).putInt(ENDIANNESS);
+    header.putInt(0).putInt(1).putInt(0);
+    header.putInt(internalFormat).putInt(baseInternalFormat);
+    header.putInt(width).putInt(height).putInt(0);
+    header.putInt(0).putInt(1).putInt(levels.length);
+    header.putInt(0);
+    header.clear();
+
+    Path target = Paths.get(filename).toAbsolutePath();
+    Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+      out.write(header.array());
+      ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+      for (byte[] level : levels) {
+        size.putInt(0, level.length);
+        out.write(size.array());
+        out.write(level);
+        for (int pad=level.length; pad<align(level.length); ++pad) {
+          out.write(0);
+        }
+      }
+    }
+    catch (IOException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+    try {
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {   // on Windows the old file cannot be replaced while an earlier read still maps it
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+  }
+
+  private static int align(int size) {
+    return (size+3) & ~3;
+  }
+
+}
@@ -15,6 +15,10 @@ public class Light {
   protected Vec3 originalDiffuse;
   protected Vec3 originalSpecular;
 
+  // scratch storage so that per-frame rendering does not allocate
+  private Mat4 mvpMatrix = new Mat4(1);
+  private float[] mvpMatrixGLSL = new float[16];
+
   protected float intensity = 1;
   private static final float INTENSITY_STEP = 0.25f;
 
@@ -103,26 +107,25 @@ public class Light {
   }
 
   public void render(GL3 gl) {
-    Mat4 model = new Mat4(1);
-    model = Mat4.multiply(Mat4Transform.translate(position), model);
+    Mat4Transform.translateInto(position.x, position.y, position.z, model);
     renderModel(gl, model);
   }
 
   protected void renderModel(GL3 gl, Mat4 model) {
-    Mat4 mvpMatrix = Mat4.multiply(camera.getPerspectiveMatrix(), Mat4.multiply(camera.getViewMatrix(), model));
+    Mat4.multiplyInto(camera.getViewProjectionMatrix(), model, mvpMatrix);
 
     shader.use(gl);
-    shader.setFloatArray(gl, "mvpMatrix", mvpMatrix.toFloatArrayForGLSL());
+    shader.setFloatArray(gl, "mvpMatrix", mvpMatrix.toFloatArrayForGLSL(mvpMatrixGLSL));
     shader.setVec3(gl, "colour", material.getDiffuse());
 
-    gl.glBindVertexArray(vertexArrayId[0]);
+    GLStateCache.bindVertexArray(gl, vertexArrayId[0]);
     gl.glDrawElements(GL.GL_TRIANGLES, indices.length, GL.GL_UNSIGNED_INT, 0);
-    gl.glBindVertexArray(0);
   }
 
   public void dispose(GL3 gl) {
     gl.glDeleteBuffers(1, vertexBufferId, 0);
     gl.glDeleteVertexArrays(1, vertexArrayId, 0);
+    GLStateCache.invalidate();
     gl.glDeleteBuffers(1, elementBufferId, 0);
   }
 
@@ -170,7 +173,7 @@ public class Light {
 
   private void fillBuffers(GL3 gl) {
     gl.glGenVertexArrays(1, vertexArrayId, 0);
-    gl.glBindVertexArray(vertexArrayId[0]);
+    GLStateCache.bindVertexArray(gl, vertexArrayId[0]);
     gl.glGenBuffers(1, vertexBufferId, 0);
     gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vertexBufferId[0]);
     FloatBuffer fb = Buffers.newDirectFloatBuffer(vertices);
@@ -187,7 +190,7 @@ public class Light {
     IntBuffer ib = Buffers.newDirectIntBuffer(indices);
     gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, elementBufferId[0]);
     gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, Integer.BYTES * indices.length, ib, GL.GL_STATIC_DRAW);
-    gl.glBindVertexArray(0);
+    GLStateCache.bindVertexArray(gl, 0);
   }
 
 }
@@ -9,6 +9,8 @@ import com.jogamp.opengl.util.glsl.*;
 
 public class MainGLEventListener implements GLEventListener {
 
+  private static final boolean DISPLAY_GL_STATS = false;
+
   public MainGLEventListener(Camera camera) {
     this.camera = camera;
     this.camera.setPosition(new Vec3(-7f,16f,26f));
@@ -28,6 +30,7 @@ public class MainGLEventListener implements GLEventListener {
     gl.glFrontFace(GL.GL_CCW);    // default is 'CCW'
     gl.glEnable(GL.GL_CULL_FACE); // default is 'not enabled'
     gl.glCullFace(GL.GL_BACK);   // default is 'back', assuming CCW
+    GLStateCache.invalidate();
     initialise(gl);
   }
 
@@ -37,6 +40,7 @@ public class MainGLEventListener implements GLEventListener {
     gl.glViewport(x, y, width, height);
     float aspect = (float)width/(float)height;
     camera.setPerspectiveMatrix(Mat4Transform.perspective(45, aspect));
+    renderQueue.setViewportHeight(height);
   }
 
   /* Draw */
@@ -48,18 +52,24 @@ public class MainGLEventListener implements GLEventListener {
   /* Clean up memory, if necessary */
   public void dispose(GLAutoDrawable drawable) {
     GL3 gl = drawable.getGL().getGL3();
+    simulation.stop();
     mainLight.dispose(gl);
     spotlight.dispose(gl);
     floor.dispose(gl);
     background.dispose(gl);
     crate.dispose(gl);
     crate2.dispose(gl);
+    frameUniforms.dispose(gl);
+    MeshLibrary.dispose(gl);
+    TextureLibrary.dispose(gl);
   }
 
   //---------------------------INTERACTION----------------------------------
 
+  //The snowman and the security spotlight are animated on the simulation thread, so changes are passed to it
+
   public void selectSnowmanAnimation(AnimationSelections newAnimationSelection) {
-    snowman.selectAnimation(newAnimationSelection);
+    simulation.post(() -> snowman.selectAnimation(newAnimationSelection));
   }
 
   public void decreaseLightIntensity() {
@@ -71,7 +81,7 @@ public class MainGLEventListener implements GLEventListener {
   }
 
   public void toggleSpotlight(){
-    securitySpotlight.toggle();
+    simulation.post(securitySpotlight::toggle);
   }
 
   // ----------------------THE SCENE------------------------------
@@ -85,6 +95,18 @@ public class MainGLEventListener implements GLEventListener {
 
   private Snowman snowman;
   private SecuritySpotlight securitySpotlight;
+  private Simulation simulation;
+  private FrameClock clock;   //all animation runs on this time
+
+  private RenderQueue renderQueue = new RenderQueue();
+  private FrameUniforms frameUniforms;
+
+  //Everything drawable is an item in sceneBVH: first the models placed directly in the scene,
+  //then the scene graphs, whose bounds change as they animate and are refitted every frame
+  private Model[] sceneModels;
+  private BVH sceneBVH;
+  private int[] visibleItems;
+  private BoundingSphere itemBounds = new BoundingSphere();
 
 
   //LIGHTS--------
@@ -95,12 +117,36 @@ public class MainGLEventListener implements GLEventListener {
   private static float SPOTLIGHT_OUTER_CUTOFF = 30.5f;
 
   private void initialise(GL3 gl) {
+    frameUniforms = new FrameUniforms(gl);
+    clock = new FrameClock(1.0/Simulation.TICK_RATE);
     setupLights(gl);
     setupModels(gl);
 
     //These are the two main parts of the scene, so they are separated out into different classes
-    snowman = new Snowman(gl, camera, mainLight, spotlight);
-    securitySpotlight = new SecuritySpotlight(gl, camera, mainLight, spotlight);
+    snowman = new Snowman(gl, camera, mainLight, spotlight, clock);
+    securitySpotlight = new SecuritySpotlight(gl, camera, mainLight, spotlight, clock);
+    simulation = new Simulation(clock, snowman, securitySpotlight, background);
+    setupSceneBVH(simulation.getLatest());
+    simulation.start();
+  }
+
+  private void setupSceneBVH(FrameState state) {
+    sceneModels = new Model[] {floor, background, crate, crate2};
+    sceneBVH = new BVH(sceneModels.length + state.getGraphCount());
+    visibleItems = new int[sceneBVH.getItemCount()];
+    for (int i=0; i<sceneModels.length; ++i) {
+      Model model = sceneModels[i];
+      model.getMesh().getBoundingSphere().transformInto(model.getModelMatrix(), itemBounds);
+      sceneBVH.setItemBounds(i, itemBounds);
+    }
+    updateSceneGraphBounds(state);
+    sceneBVH.build();
+  }
+
+  private void updateSceneGraphBounds(FrameState state) {
+    for (int i=0; i<state.getGraphCount(); ++i) {
+      sceneBVH.setItemBounds(sceneModels.length+i, state.getGraphBounds(i));
+    }
   }
 
   private void setupLights(GL3 gl) {
@@ -134,7 +180,7 @@ public class MainGLEventListener implements GLEventListener {
 
     //-----------Floor--------------------
 
-    Mesh mesh = new Mesh(gl, TwoTriangles.vertices.clone(), TwoTriangles.indices.clone());
+    Mesh mesh = MeshLibrary.get(gl, TwoTriangles.vertices, TwoTriangles.indices);
     Shader shader = new Shader(gl, "vs_main.txt", "fs_main.txt");
     Material material = new Material(new Vec3(0.68f, 0.73f, 0.8f), new Vec3(0.58f, 0.63f, 0.7f), new Vec3(0.9f, 0.9f, 0.9f), 32.0f);
     Mat4 modelMatrix = Mat4Transform.scale(32,1f,24);
@@ -142,17 +188,17 @@ public class MainGLEventListener implements GLEventListener {
 
     //-----------Background--------------------
 
-    mesh = new Mesh(gl, TwoTriangles.vertices.clone(), TwoTriangles.indices.clone());
+    mesh = MeshLibrary.get(gl, TwoTriangles.vertices, TwoTriangles.indices);
     shader = new Shader(gl, "vs_animated.txt", "fs_animated.txt");
     material = new Material(new Vec3(0.8f, 0.8f, 0.8f), new Vec3(0.8f, 0.8f, 0.8f), new Vec3(0.0f, 0.0f, 0.0f), 32.0f);
     modelMatrix = Mat4Transform.translate(0, 8, -12f);
     modelMatrix = Mat4.multiply(modelMatrix, Mat4Transform.rotateAroundX(90));
     modelMatrix = Mat4.multiply(modelMatrix, Mat4Transform.scale(32,1f,16));
-    background = new AnimatedModel(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, backgroundTexture, snowfallTexture);
+    background = new AnimatedModel(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, backgroundTexture, snowfallTexture, clock);
 
     //-----------Crates--------------------
 
-    mesh = new Mesh(gl, Cube.vertices.clone(), Cube.indices.clone());
+    mesh = MeshLibrary.get(gl, Cube.vertices, Cube.indices);
     shader = new Shader(gl, "vs_main.txt", "fs_crate.txt");
     material = new Material(new Vec3(0.9f, 0.9f, 0.9f), new Vec3(0.7f, 0.7f, 0.7f), new Vec3(1, 1, 1), 32.0f);
     modelMatrix = Mat4Transform.translate(10.5f, 2.9f, 0f);
@@ -171,15 +217,43 @@ public class MainGLEventListener implements GLEventListener {
   private void render(GL3 gl) {
     gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
 
-    floor.render(gl);
-    background.render(gl);
-    crate.render(gl);
-    crate2.render(gl);
-
-    snowman.draw(gl);
-    securitySpotlight.draw(gl);
+    //Textures are decoded in the background and shown as they arrive
+    TextureLibrary.uploadPending(gl);
+
+    //The scene is animated on the simulation thread; draw the latest state it has published
+    //between its last two ticks, as far as the clock has gone since
+    FrameState state = simulation.getLatest();
+    float alpha = state.getAlpha(clock);
+    updateSceneGraphBounds(state);
+    sceneBVH.refit();
+
+    //Models are queued, then drawn sorted by shader, texture, mesh and depth
+    renderQueue.clear(camera);
+    int visible = sceneBVH.query(renderQueue.getFrustum(), visibleItems);
+    for (int i=0; i<visible; ++i) {
+      int item = visibleItems[i];
+      if (item < sceneModels.length) {
+        renderQueue.add(sceneModels[item], sceneModels[item].getModelMatrix());
+      } else {
+        state.draw(item-sceneModels.length, renderQueue, alpha);
+      }
+    }
+
+    //The animations may have moved the spotlight, so update the per-frame uniforms now
+    state.applySpotlight(spotlight, alpha);
+    state.applyBackground(background, alpha);
+    frameUniforms.update(gl, camera, mainLight, spotlight);
+    renderQueue.submit(gl);
 
     mainLight.render(gl);
     spotlight.render(gl);
+
+    if (DISPLAY_GL_STATS) {
+      System.out.println("GL calls issued: " + GLStateCache.getIssuedCalls() + ", skipped: " + GLStateCache.getSkippedCalls());
+      System.out.println("Models drawn: " + renderQueue.getDrawnCount() + ", culled: " + renderQueue.getCulledCount());
+      System.out.println("Textures held: " + TextureLibrary.size() + " (" + TextureLibrary.getResidentBytes()/1024 + " KB), hits: "
+                         + TextureLibrary.getHits() + ", misses: " + TextureLibrary.getMisses() + ", evicted: " + TextureLibrary.getEvictions());
+    }
+    GLStateCache.resetCounters();
   }
 }
@@ -5,70 +5,145 @@ import com.jogamp.opengl.*;
 
 public class Mesh {
   
-  private float[] vertices;
-  private int[] indices;
-  private int vertexStride = 8;
-  private int vertexXYZFloats = 3;
-  private int vertexNormalFloats = 3;
-  private int vertexTexFloats = 2;
+  private static int nextId = 0;
+  private final int id = nextId++;  // small number identifying the mesh, used for sorting draws
+  private int indexCount;
+  private BoundingSphere bounds;  // in model coordinates, used for culling
+  private VertexLayout layout;
+  private int indexType;   // GL_UNSIGNED_SHORT when there are few enough vertices, else GL_UNSIGNED_INT
   private int[] vertexBufferId = new int[1];
   private int[] vertexArrayId = new int[1];
   private int[] elementBufferId = new int[1];
   
+  // Per-instance model and normal matrices for instanced drawing, created on first use.
+  // A mat4 attribute takes four locations, one per column: 3, 4, 5 and 6; the mat3 then takes 7, 8 and 9.
+  public static final int INSTANCE_FLOATS = 16+9;
+  private static final int INSTANCE_MATRIX_LOCATION = 3;
+  private static final int INSTANCE_NORMAL_MATRIX_LOCATION = 7;
+  private int[] instanceBufferId = null;
+  private int instanceCapacity = 0;
+  private FloatBuffer instanceData;
+  
   public Mesh(GL3 gl, float[] vertices, int[] indices) {
-    this.vertices = vertices;
-    this.indices = indices;
-    fillBuffers(gl);
+    this(gl, vertices, indices, VertexLayout.STANDARD);
+  }
+
+  /* vertices are always 8 floats each; layout decides how they are stored on the GPU */
+  public Mesh(GL3 gl, float[] vertices, int[] indices, VertexLayout layout) {
+    this.layout = layout;
+    bounds = BoundingSphere.fromVertices(vertices, VertexLayout.SOURCE_FLOATS);
+    indexCount = indices.length;
+    indexType = indexTypeFor(vertices.length/VertexLayout.SOURCE_FLOATS);
+    fillBuffers(gl, layout.encode(vertices), encodeIndices(indices, indexType));
+  }
+
+  /* A mesh from data that is already in the form the GPU takes, such as a mapped MeshFile.
+     The buffers are uploaded as they are, so must be direct. */
+  public Mesh(GL3 gl, ByteBuffer vertexData, ByteBuffer indexData, int indexCount, int indexType,
+              VertexLayout layout, BoundingSphere bounds) {
+    this.layout = layout;
+    this.bounds = bounds;
+    this.indexCount = indexCount;
+    this.indexType = indexType;
+    fillBuffers(gl, vertexData, indexData);
+  }
+  
+  public int getId() {
+    return id;
+  }
+
+  public BoundingSphere getBoundingSphere() {
+    return bounds;
   }
   
   public void render(GL3 gl) {
-    gl.glBindVertexArray(vertexArrayId[0]);
-    gl.glDrawElements(GL.GL_TRIANGLES, indices.length, GL.GL_UNSIGNED_INT, 0);
-    gl.glBindVertexArray(0);
+    GLStateCache.bindVertexArray(gl, vertexArrayId[0]);
+    gl.glDrawElements(GL.GL_TRIANGLES, indexCount, indexType, 0);
   }
 
-  private void fillBuffers(GL3 gl) {
+  /* Draws count copies of the mesh in one call. matrices holds INSTANCE_FLOATS values per instance:
+     the model matrix then the normal matrix, column major, see Model.renderInstanced. */
+  public void renderInstanced(GL3 gl, float[] matrices, int count) {
+    if (instanceBufferId == null) createInstanceBuffer(gl);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, instanceBufferId[0]);
+    if (count > instanceCapacity) {
+      instanceCapacity = Math.max(count, instanceCapacity*2);
+      instanceData = Buffers.newDirectFloatBuffer(instanceCapacity*INSTANCE_FLOATS);
+    }
+    instanceData.clear();
+    instanceData.put(matrices, 0, count*INSTANCE_FLOATS);
+    instanceData.flip();
+    // Re-specifying the store orphans the copy the GPU may still be reading from the last frame,
+    // so the update below does not have to wait for it
+    gl.glBufferData(GL.GL_ARRAY_BUFFER, (long)Float.BYTES*instanceCapacity*INSTANCE_FLOATS, null, GL2ES2.GL_STREAM_DRAW);
+    gl.glBufferSubData(GL.GL_ARRAY_BUFFER, 0, (long)Float.BYTES*count*INSTANCE_FLOATS, instanceData);
+    GLStateCache.bindVertexArray(gl, vertexArrayId[0]);
+    gl.glDrawElementsInstanced(GL.GL_TRIANGLES, indexCount, indexType, 0, count);
+  }
+  
+  private void createInstanceBuffer(GL3 gl) {
+    instanceBufferId = new int[1];
+    gl.glGenBuffers(1, instanceBufferId, 0);
+    GLStateCache.bindVertexArray(gl, vertexArrayId[0]);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, instanceBufferId[0]);
+    int stride = INSTANCE_FLOATS*Float.BYTES;
+    for (int column=0; column<4; ++column) {
+      setupInstanceAttribute(gl, INSTANCE_MATRIX_LOCATION + column, 4, stride, column*4);
+    }
+    for (int column=0; column<3; ++column) {
+      setupInstanceAttribute(gl, INSTANCE_NORMAL_MATRIX_LOCATION + column, 3, stride, 16 + column*3);
+    }
+  }
+  
+  private void setupInstanceAttribute(GL3 gl, int location, int floats, int stride, int offsetFloats) {
+    gl.glVertexAttribPointer(location, floats, GL.GL_FLOAT, false, stride, offsetFloats*Float.BYTES);
+    gl.glEnableVertexAttribArray(location);
+    gl.glVertexAttribDivisor(location, 1);   // advance once per instance, not per vertex
+  }
+  
+  private void fillBuffers(GL3 gl, ByteBuffer vertexData, ByteBuffer indexData) {
     gl.glGenVertexArrays(1, vertexArrayId, 0);
-    gl.glBindVertexArray(vertexArrayId[0]);
+    GLStateCache.bindVertexArray(gl, vertexArrayId[0]);
     gl.glGenBuffers(1, vertexBufferId, 0);
     gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vertexBufferId[0]);
-    FloatBuffer fb = Buffers.newDirectFloatBuffer(vertices);
-    
-    gl.glBufferData(GL.GL_ARRAY_BUFFER, Float.BYTES * vertices.length, fb, GL.GL_STATIC_DRAW);
-    
-    int stride = vertexStride;
-    int numXYZFloats = vertexXYZFloats;
-    int offset = 0;
-    gl.glVertexAttribPointer(0, numXYZFloats, GL.GL_FLOAT, false, stride*Float.BYTES, offset);
-    gl.glEnableVertexAttribArray(0);
-  
-    int numNormalFloats = vertexNormalFloats; // x,y,z for each vertex 
-    offset = numXYZFloats*Float.BYTES;  // the normal values are three floats after the three x,y,z values
-                                    // so change the offset value
-    gl.glVertexAttribPointer(1, numNormalFloats, GL.GL_FLOAT, false, stride*Float.BYTES, offset);
-                                    // the vertex shader uses location 1 (sometimes called index 1)
-                                    // for the normal information
-                                    // location, size, type, normalize, stride, offset
-                                    // offset is relative to the start of the array of data
-    gl.glEnableVertexAttribArray(1);// Enable the vertex attribute array at location 1
-
-    // now do the texture coordinates  in vertex attribute 2
-    int numTexFloats = vertexTexFloats;
-    offset = (numXYZFloats+numNormalFloats)*Float.BYTES;
-    gl.glVertexAttribPointer(2, numTexFloats, GL.GL_FLOAT, false, stride*Float.BYTES, offset);
-    gl.glEnableVertexAttribArray(2);
+    gl.glBufferData(GL.GL_ARRAY_BUFFER, vertexData.remaining(), vertexData, GL.GL_STATIC_DRAW);
+    layout.setAttribPointers(gl);
     
     gl.glGenBuffers(1, elementBufferId, 0);
-    IntBuffer ib = Buffers.newDirectIntBuffer(indices);
     gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, elementBufferId[0]);
-    gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, Integer.BYTES * indices.length, ib, GL.GL_STATIC_DRAW);
-    gl.glBindVertexArray(0);
+    gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, indexData.remaining(), indexData, GL.GL_STATIC_DRAW);
+    GLStateCache.bindVertexArray(gl, 0);
+  }
+
+  /* GL_UNSIGNED_SHORT when every index fits in 16 bits, else GL_UNSIGNED_INT */
+  public static int indexTypeFor(int vertexCount) {
+    return (vertexCount <= 0x10000) ? GL.GL_UNSIGNED_SHORT : GL.GL_UNSIGNED_INT;
+  }
+
+  public static int indexBytes(int indexType) {
+    return (indexType == GL.GL_UNSIGNED_SHORT) ? Short.BYTES : Integer.BYTES;
+  }
+
+  /* The indices as the GPU takes them, in native byte order */
+  public static ByteBuffer encodeIndices(int[] indices, int indexType) {
+    int size = indexBytes(indexType);
+    ByteBuffer buffer = Buffers.newDirectByteBuffer(indices.length*size);
+    for (int i=0; i<indices.length; ++i) {
+      if (size == Short.BYTES) {
+        buffer.putShort(i*size, (short)indices[i]);
+      } else {
+        buffer.putInt(i*size, indices[i]);
+      }
+    }
+    return buffer;
   }
   
   public void dispose(GL3 gl) {
     gl.glDeleteBuffers(1, vertexBufferId, 0);
     gl.glDeleteVertexArrays(1, vertexArrayId, 0);
+    GLStateCache.invalidate();  // the deleted vertex array may have been the bound one
     gl.glDeleteBuffers(1, elementBufferId, 0);
+    if (instanceBufferId != null) gl.glDeleteBuffers(1, instanceBufferId, 0);
   }
   
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+import java.io.IOException;
+
+/* Makes binary mesh files (see MeshFile) from the built in meshes or from OBJ files:
+     java MeshConverter <output.mesh> <cube|quad|sphere|sphere:segments|file.obj> [standard|compact]
+   Without a layout, the smallest one that can hold the mesh is used.
+   The mesh is optimised for the vertex cache before it is written. */
+
+public class MeshConverter {
+
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.out.println("Usage: java MeshConverter <output.mesh> <cube|quad|sphere|sphere:segments|file.obj> [standard|compact]");
+      return;
+    }
+    try {
+      MeshData mesh = source(args[1]);
+      VertexLayout layout = VertexLayout.smallestFor(mesh.vertices);
+      if (args.length > 2) layout = args[2].equals("compact") ? VertexLayout.COMPACT : VertexLayout.STANDARD;
+      convert(mesh, args[0], layout);
+      System.out.println("Wrote " + args[0] + ": " + mesh.getVertexCount() + " vertices, "
+                         + mesh.getTriangleCount() + " triangles, " + layout.getStride() + " bytes per vertex");
+    }
+    catch (IOException | IllegalArgumentException e) {
+      System.out.println("Error converting " + args[1] + ": " + e.getMessage());
+    }
+  }
+
+  public static MeshData source(String name) throws IOException {
+    if (name.equals("cube")) return new MeshData(Cube.vertices.clone(), Cube.indices.clone());
+    if (name.equals("quad")) return new MeshData(TwoTriangles.vertices.clone(), TwoTriangles.indices.clone());
+    if (name.equals("sphere")) return new MeshData(Sphere.vertices.clone(), Sphere.indices.clone());
+    if (name.startsWith("sphere:")) {
+      int segments = Integer.parseInt(name.substring("sphere:".length()));
+      return new MeshData(Sphere.createVertices(segments+1, segments+1), Sphere.createIndices(segments+1, segments+1));
+    }
+    if (name.toLowerCase().endsWith(".obj")) return ObjLoader.load(name);
+    throw new IllegalArgumentException("unknown mesh " + name);
+  }
+
+  /* Optimises the mesh in place and writes it */
+  public static void convert(MeshData mesh, String filename, VertexLayout layout) throws IOException {
+    if (!layout.canEncode(mesh.vertices)) throw new IllegalArgumentException("the mesh does not fit the chosen layout");
+    MeshOptimizer.optimize(mesh.vertices, VertexLayout.SOURCE_FLOATS, mesh.indices);
+    MeshFile.write(filename, mesh, layout);
+  }
+
+}
@@ -0,0 +1,22 @@
+/* Mesh geometry on the CPU, as Mesh takes it: 8 floats per vertex (position x,y,z,
+   normal x,y,z, texture s,t) and three indices per triangle. */
+
+public final class MeshData {
+
+  public final float[] vertices;
+  public final int[] indices;
+
+  public MeshData(float[] vertices, int[] indices) {
+    this.vertices = vertices;
+    this.indices = indices;
+  }
+
+  public int getVertexCount() {
+    return vertices.length/VertexLayout.SOURCE_FLOATS;
+  }
+
+  public int getTriangleCount() {
+    return indices.length/3;
+  }
+
+}
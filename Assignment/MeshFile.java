@@ -0,0 +1,145 @@
+import gmaths.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import com.jogamp.opengl.*;
+
+/* Binary mesh files, laid out so that the vertex and index blocks can be given to GL as they are.
+   Files are memory mapped when read, so loading does no parsing and no copying on the Java side.
+   Use MeshConverter to make them.
+
+   All values are little endian.
+     byte 0   "MESH"
+          4   int   version, 1
+          8   int   position, normal and texture coordinate formats: VertexLayout.Format ordinals
+          20  int   vertex count
+          24  int   index count
+          28  int   bytes per index, 2 or 4
+          32  float bounding sphere x, y, z, radius
+          48  int   offset of the vertex block, vertex count * layout stride bytes
+          52  int   offset of the index block
+          56  8 bytes unused; the vertex block starts at 64
+   Both blocks start on a 16 byte boundary. */
+
+public final class MeshFile {
+
+  private static final int MAGIC = 'M' | ('E' << 8) | ('S' << 16) | ('H' << 24);
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 64;
+  private static final int ALIGNMENT = 16;
+
+  /* The contents of a file, with the blocks still in the mapped file */
+  public static final class Contents {
+    public final VertexLayout layout;
+    public final int vertexCount;
+    public final int indexCount;
+    public final int indexType;
+    public final BoundingSphere bounds;
+    public final ByteBuffer vertexData;
+    public final ByteBuffer indexData;
+
+    private Contents(VertexLayout layout, int vertexCount, int indexCount, int indexType,
+                     BoundingSphere bounds, ByteBuffer vertexData, ByteBuffer indexData) {
+      this.layout = layout;
+      this.vertexCount = vertexCount;
+      this.indexCount = indexCount;
+      this.indexType = indexType;
+      this.bounds = bounds;
+      this.vertexData = vertexData;
+      this.indexData = indexData;
+    }
+  }
+
+  public static Mesh load(GL3 gl, String filename) throws IOException {
+    Contents c = read(filename);
+    return new Mesh(gl, c.vertexData, c.indexData, c.indexCount, c.indexType, c.layout, c.bounds);
+  }
+
+  /* Maps a file and checks its header. The mapping stays valid until the buffers are garbage collected. */
+  public static Contents read(String filename) throws IOException {
+    checkByteOrder();
+    ByteBuffer file;
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    file.order(ByteOrder.LITTLE_ENDIAN);
+    if (file.capacity() < HEADER_BYTES || file.getInt(0) != MAGIC) throw new IOException(filename + " is not a mesh file");
+    if (file.getInt(4) != VERSION) throw new IOException(filename + " has unsupported version " + file.getInt(4));
+    VertexLayout layout = new VertexLayout(format(file, 8, filename), format(file, 12, filename), format(file, 16, filename));
+    int vertexCount = file.getInt(20);
+    int indexCount = file.getInt(24);
+    int indexBytes = file.getInt(28);
+    BoundingSphere bounds = new BoundingSphere(file.getFloat(32), file.getFloat(36), file.getFloat(40), file.getFloat(44));
+    int vertexOffset = file.getInt(48);
+    int indexOffset = file.getInt(52);
+    if (indexBytes != Short.BYTES && indexBytes != Integer.BYTES
+        || vertexCount < 0 || indexCount < 0 || vertexOffset < 0 || indexOffset < 0
+        || vertexOffset + (long)vertexCount*layout.getStride() > file.capacity()
+        || indexOffset + (long)indexCount*indexBytes > file.capacity()) {
+      throw new IOException(filename + " is damaged");
+    }
+    int vertexLength = vertexCount*layout.getStride();   // both fit in an int, being within the file
+    int indexLength = indexCount*indexBytes;
+    int indexType = (indexBytes == Short.BYTES) ? GL.GL_UNSIGNED_SHORT : GL.GL_UNSIGNED_INT;
+    return new Contents(layout, vertexCount, indexCount, indexType, bounds,
+                        slice(file, vertexOffset, vertexLength), slice(file, indexOffset, indexLength));
+  }
+
+  private static VertexLayout.Format format(ByteBuffer file, int offset, String filename) throws IOException {
+    VertexLayout.Format[] formats = VertexLayout.Format.values();
+    int ordinal = file.getInt(offset);
+    if (ordinal < 0 || ordinal >= formats.length) throw new IOException(filename + " is damaged");
+    return formats[ordinal];
+  }
+
+  private static ByteBuffer slice(ByteBuffer file, int offset, int length) {
+    ByteBuffer b = file.duplicate();
+    b.position(offset).limit(offset+length);
+    return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  public static void write(String filename, MeshData mesh, VertexLayout layout) throws IOException {
+    checkByteOrder();
+    int vertexCount = mesh.getVertexCount();
+    int indexType = Mesh.indexTypeFor(vertexCount);
+    ByteBuffer vertexData = layout.encode(mesh.vertices);
+    ByteBuffer indexData = Mesh.encodeIndices(mesh.indices, indexType);
+    int vertexOffset = HEADER_BYTES;
+    int indexOffset = align(vertexOffset + vertexData.capacity());
+    BoundingSphere bounds = BoundingSphere.fromVertices(mesh.vertices, VertexLayout.SOURCE_FLOATS);
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(VERSION);
+    for (int a=0; a<3; ++a) {
+      header.putInt(layout.getFormat(a).ordinal());
+    }
+    header.putInt(vertexCount).putInt(mesh.indices.length).putInt(Mesh.indexBytes(indexType));
+    header.putFloat(bounds.x).putFloat(bounds.y).putFloat(bounds.z).putFloat(bounds.radius);
+    header.putInt(vertexOffset).putInt(indexOffset);
+    header.clear();
+
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(channel, header, 0);
+      writeFully(channel, vertexData, vertexOffset);
+      writeFully(channel, indexData, indexOffset);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer b, long position) throws IOException {
+    while (b.hasRemaining()) {
+      position += channel.write(b, position);
+    }
+  }
+
+  private static int align(int offset) {
+    return (offset + ALIGNMENT-1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  // Vertex data is encoded in native byte order, and the file is little endian
+  private static void checkByteOrder() throws IOException {
+    if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) throw new IOException("Mesh files need a little endian machine");
+  }
+
+}
@@ -0,0 +1,63 @@
+import com.jogamp.opengl.*;
+
+/* A chain of meshes for the same shape at different levels of detail, from coarsest to finest.
+   RenderQueue picks a level for each model from how large it will appear on screen.
+
+   For spheres, a level is chosen so that the flat edges cut off no more than MAX_ERROR_PIXELS
+   of the true outline. A ring of n segments around a sphere of radius r pixels falls short of
+   the outline by r*(1-cos(pi/n)), so each level can be used while the sphere's projected radius
+   is below MAX_ERROR_PIXELS/(1-cos(pi/n)). Keeping that under a pixel means the switch
+   between levels cannot be seen. */
+
+public class MeshLOD {
+
+  public static final float MAX_ERROR_PIXELS = 0.5f;
+  private static final int[] SPHERE_SEGMENTS = {8, 16, 32, 64};
+
+  private Mesh[] levels;
+  private float[] maxRadius;  // in pixels; the last level has no limit
+
+  public MeshLOD(Mesh[] levels, float[] maxRadius) {
+    this.levels = levels;
+    this.maxRadius = maxRadius;
+  }
+
+  /* The coarsest level that is detailed enough for the given projected radius in pixels */
+  public Mesh select(float projectedRadius) {
+    for (int i=0; i<levels.length-1; ++i) {
+      if (projectedRadius <= maxRadius[i]) return levels[i];
+    }
+    return levels[levels.length-1];
+  }
+
+  public Mesh getFinest() {
+    return levels[levels.length-1];
+  }
+
+  /* Counts a reference to each level, see MeshLibrary */
+  public void retain() {
+    for (Mesh mesh : levels) {
+      MeshLibrary.retain(mesh);
+    }
+  }
+
+  public void release(GL3 gl) {
+    for (Mesh mesh : levels) {
+      MeshLibrary.release(gl, mesh);
+    }
+  }
+
+  //---------------------------SPHERES----------------------------------
+
+  public static MeshLOD sphere(GL3 gl) {
+    Mesh[] levels = new Mesh[SPHERE_SEGMENTS.length];
+    float[] maxRadius = new float[SPHERE_SEGMENTS.length];
+    for (int i=0; i<levels.length; ++i) {
+      int n = SPHERE_SEGMENTS[i];
+      levels[i] = MeshLibrary.sphere(gl, n);
+      maxRadius[i] = MAX_ERROR_PIXELS / (1 - (float)Math.cos(Math.PI/n));
+    }
+    return new MeshLOD(levels, maxRadius);
+  }
+
+}
@@ -0,0 +1,120 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import com.jogamp.opengl.*;
+
+/* Shares meshes between models, so identical geometry is uploaded to the GPU once.
+   Meshes are found either by their contents, for data such as Cube.vertices, or by the
+   parameters of the generator that made them, such as the number of segments of a sphere.
+   Meshes are reordered by MeshOptimizer and stored in the smallest VertexLayout that can
+   hold their values.
+
+   Every Model holding a mesh counts as one reference to it: the Model constructor calls
+   retain and Model.dispose calls release, and the mesh's buffers are deleted when the last
+   reference is released. Like TextureLibrary, the meshes are held statically, as the program
+   only ever has one GL context. */
+
+public final class MeshLibrary {
+
+  private static HashMap<Object, Mesh> meshes = new HashMap<Object, Mesh>();
+  private static HashMap<Mesh, Object> keys = new HashMap<Mesh, Object>();
+  private static HashMap<Mesh, Integer> references = new HashMap<Mesh, Integer>();
+
+  /* A mesh with the given contents. The arrays are copied the first time they are seen,
+     so callers do not need to clone them. */
+  public static Mesh get(GL3 gl, float[] vertices, int[] indices) {
+    ContentKey key = new ContentKey(vertices, indices);
+    Mesh mesh = meshes.get(key);
+    if (mesh == null) {
+      key = new ContentKey(vertices.clone(), indices.clone());
+      mesh = add(key, create(gl, vertices.clone(), indices.clone()));
+    }
+    return mesh;
+  }
+
+  /* A sphere with the given number of segments around it and from pole to pole */
+  public static Mesh sphere(GL3 gl, int segments) {
+    String key = "sphere " + segments;
+    Mesh mesh = meshes.get(key);
+    if (mesh == null) {
+      mesh = add(key, create(gl, Sphere.createVertices(segments+1, segments+1), Sphere.createIndices(segments+1, segments+1)));
+    }
+    return mesh;
+  }
+
+  // Optimises the arrays in place, then uploads them in the smallest layout that holds their values
+  private static Mesh create(GL3 gl, float[] vertices, int[] indices) {
+    MeshOptimizer.optimize(vertices, VertexLayout.SOURCE_FLOATS, indices);
+    return new Mesh(gl, vertices, indices, VertexLayout.smallestFor(vertices));
+  }
+
+  private static Mesh add(Object key, Mesh mesh) {
+    meshes.put(key, mesh);
+    keys.put(mesh, key);
+    references.put(mesh, 0);
+    return mesh;
+  }
+
+  /* Meshes made directly, rather than through this library, may also be counted */
+  public static void retain(Mesh mesh) {
+    Integer count = references.get(mesh);
+    references.put(mesh, (count == null) ? 1 : count+1);
+  }
+
+  /* Releasing a mesh that was never retained, or already deleted, does nothing */
+  public static void release(GL3 gl, Mesh mesh) {
+    Integer count = references.get(mesh);
+    if (count == null) {
+      System.err.println("[error] Released a mesh that is not held");
+      return;
+    }
+    if (count <= 1) {
+      mesh.dispose(gl);
+      references.remove(mesh);
+      Object key = keys.remove(mesh);
+      if (key != null) meshes.remove(key);
+    } else {
+      references.put(mesh, count-1);
+    }
+  }
+
+  /* The number of distinct meshes held */
+  public static int size() {
+    return meshes.size();
+  }
+
+  /* Deletes every mesh held, whether or not it is still referenced, including meshes made directly and retained */
+  public static void dispose(GL3 gl) {
+    HashSet<Mesh> all = new HashSet<Mesh>(meshes.values());
+    all.addAll(references.keySet());
+    for (Mesh mesh : all) {
+      mesh.dispose(gl);
+    }
+    meshes.clear();
+    keys.clear();
+    references.clear();
+  }
+
+  private static final class ContentKey {
+    private final float[] vertices;
+    private final int[] indices;
+    private final int hash;
+
+    ContentKey(float[] vertices, int[] indices) {
+      this.vertices = vertices;
+      this.indices = indices;
+      hash = 31*Arrays.hashCode(vertices) + Arrays.hashCode(indices);
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof ContentKey)) return false;
+      ContentKey k = (ContentKey)o;
+      return hash == k.hash && Arrays.equals(indices, k.indices) && Arrays.equals(vertices, k.vertices);
+    }
+  }
+
+}
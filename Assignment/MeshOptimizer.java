@@ -0,0 +1,227 @@
+/* Reorders mesh data so the GPU does less work drawing it. Neither step changes what is drawn.
+
+   optimizeVertexCache reorders the triangles so that vertices are reused while they are still in
+   the GPU's post-transform cache, using Tom Forsyth's "Linear-Speed Vertex Cache Optimisation"
+   (https://tomforsyth1000.github.io/papers/fast_vert_cache_opt.html).
+   optimizeVertexFetch then renumbers the vertices in the order they are first used, so they are
+   read from memory in order.
+
+   acmr and atvr measure the result on a simulated FIFO cache: the average number of vertices
+   transformed per triangle (0.5 is the best possible for a large grid, 3 the worst) and per vertex
+   (1 is the best possible). */
+
+public final class MeshOptimizer {
+
+  private static final int CACHE_SIZE = 32;   // the cache modelled when scoring, larger than most real caches
+  private static final float CACHE_DECAY_POWER = 1.5f;
+  private static final float LAST_TRIANGLE_SCORE = 0.75f;
+  private static final float VALENCE_BOOST_SCALE = 2.0f;
+  private static final float VALENCE_BOOST_POWER = 0.5f;
+  private static final int MAX_VALENCE = 64;   // valence scores above this are worked out as needed
+
+  // The scores depend only on small integers, so are looked up rather than recomputed
+  private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+  private static final float[] VALENCE_SCORES = new float[MAX_VALENCE+1];
+
+  static {
+    for (int i=0; i<CACHE_SIZE; ++i) {
+      // in the last triangle: a fixed score, so that strips are not favoured over fans
+      CACHE_SCORES[i] = (i < 3) ? LAST_TRIANGLE_SCORE : (float)Math.pow(1.0f - (i-3)/(float)(CACHE_SIZE-3), CACHE_DECAY_POWER);
+    }
+    for (int i=1; i<=MAX_VALENCE; ++i) {
+      VALENCE_SCORES[i] = valenceScore(i);
+    }
+  }
+
+  /* Reorders the triangles, then the vertices, in place. stride is the number of floats per vertex.
+     Meshes already in a good order, such as small regular grids, can come out worse, so the new
+     order is only kept if it transforms fewer vertices in a cache of CACHE_SIZE; otherwise the
+     arrays are left as they were. Returns whether they were reordered. */
+  public static boolean optimize(float[] vertices, int stride, int[] indices) {
+    int vertexCount = vertices.length/stride;
+    int[] reordered = optimizeVertexCache(indices, vertexCount);
+    if (acmr(reordered, vertexCount, CACHE_SIZE) >= acmr(indices, vertexCount, CACHE_SIZE)) return false;
+    System.arraycopy(reordered, 0, indices, 0, indices.length);
+    optimizeVertexFetch(vertices, stride, indices);
+    return true;
+  }
+
+  //---------------------------VERTEX CACHE----------------------------------
+
+  /* Returns the triangles of indices in a cache friendly order */
+  public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+    int triangleCount = indices.length/3;
+    int[] result = new int[indices.length];
+    if (triangleCount == 0) return result;
+
+    // For each vertex, the triangles using it that are still to be added, in a flat array
+    int[] remaining = new int[vertexCount];
+    for (int i=0; i<indices.length; ++i) {
+      remaining[indices[i]]++;
+    }
+    int[] firstTriangle = new int[vertexCount+1];
+    for (int v=0; v<vertexCount; ++v) {
+      firstTriangle[v+1] = firstTriangle[v] + remaining[v];
+    }
+    int[] triangles = new int[indices.length];
+    int[] filled = new int[vertexCount];
+    for (int i=0; i<indices.length; ++i) {
+      int v = indices[i];
+      triangles[firstTriangle[v] + filled[v]++] = i/3;
+    }
+
+    int[] cachePosition = new int[vertexCount];
+    float[] vertexScore = new float[vertexCount];
+    for (int v=0; v<vertexCount; ++v) {
+      cachePosition[v] = -1;
+      vertexScore[v] = vertexScore(-1, remaining[v]);
+    }
+    float[] triangleScore = new float[triangleCount];
+    boolean[] added = new boolean[triangleCount];
+    for (int t=0; t<triangleCount; ++t) {
+      triangleScore[t] = vertexScore[indices[t*3]] + vertexScore[indices[t*3+1]] + vertexScore[indices[t*3+2]];
+    }
+
+    int[] cache = new int[CACHE_SIZE+3];
+    int[] newCache = new int[CACHE_SIZE+3];
+    int cacheCount = 0;
+    int bestTriangle = -1;
+    int scanFrom = 0;   // every triangle before this has been added
+
+    for (int output=0; output<triangleCount; ++output) {
+      if (bestTriangle < 0) {
+        // Nothing in the cache is worth continuing with, so start again from the best remaining triangle
+        float bestScore = -1;
+        while (added[scanFrom]) scanFrom++;
+        for (int t=scanFrom; t<triangleCount; ++t) {
+          if (!added[t] && triangleScore[t] > bestScore) {
+            bestScore = triangleScore[t];
+            bestTriangle = t;
+          }
+        }
+      }
+      int t = bestTriangle;
+      added[t] = true;
+      int newCount = 0;
+      for (int k=0; k<3; ++k) {
+        int v = indices[t*3+k];
+        result[output*3+k] = v;
+        newCache[newCount++] = v;
+        // remove the triangle from the vertex's list of remaining triangles
+        int end = firstTriangle[v] + remaining[v] - 1;
+        for (int j=firstTriangle[v]; j<=end; ++j) {
+          if (triangles[j] == t) {
+            triangles[j] = triangles[end];
+            triangles[end] = t;
+            break;
+          }
+        }
+        remaining[v]--;
+      }
+      // The new triangle's vertices go to the front of the cache; the rest move back
+      for (int i=0; i<cacheCount; ++i) {
+        int v = cache[i];
+        if (v != newCache[0] && v != newCache[1] && v != newCache[2]) newCache[newCount++] = v;
+      }
+      for (int i=0; i<newCount; ++i) {
+        int v = newCache[i];
+        cachePosition[v] = (i < CACHE_SIZE) ? i : -1;
+        vertexScore[v] = vertexScore(cachePosition[v], remaining[v]);
+      }
+      // Rescore the triangles that use vertices whose scores changed, and pick the best of them next
+      bestTriangle = -1;
+      float bestScore = -1;
+      for (int i=0; i<newCount; ++i) {
+        int v = newCache[i];
+        for (int j=firstTriangle[v]; j<firstTriangle[v]+remaining[v]; ++j) {
+          int u = triangles[j];
+          float score = vertexScore[indices[u*3]] + vertexScore[indices[u*3+1]] + vertexScore[indices[u*3+2]];
+          triangleScore[u] = score;
+          if (score > bestScore) {
+            bestScore = score;
+            bestTriangle = u;
+          }
+        }
+      }
+      int[] swap = cache;
+      cache = newCache;
+      newCache = swap;
+      cacheCount = Math.min(newCount, CACHE_SIZE);
+    }
+    return result;
+  }
+
+  private static float vertexScore(int cachePosition, int remainingTriangles) {
+    if (remainingTriangles == 0) return -1;   // no triangle needs it
+    float score = (cachePosition >= 0) ? CACHE_SCORES[cachePosition] : 0;
+    score += (remainingTriangles <= MAX_VALENCE) ? VALENCE_SCORES[remainingTriangles] : valenceScore(remainingTriangles);
+    return score;
+  }
+
+  // favours vertices with few triangles left, so that they are finished and leave no holes
+  private static float valenceScore(int remainingTriangles) {
+    return VALENCE_BOOST_SCALE * (float)Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+  }
+
+  //---------------------------VERTEX FETCH----------------------------------
+
+  /* Renumbers the vertices in the order indices first uses them, in place.
+     stride is the number of floats per vertex. Unused vertices are moved to the end. */
+  public static void optimizeVertexFetch(float[] vertices, int stride, int[] indices) {
+    int vertexCount = vertices.length/stride;
+    int[] newIndex = new int[vertexCount];
+    for (int v=0; v<vertexCount; ++v) {
+      newIndex[v] = -1;
+    }
+    int next = 0;
+    for (int i=0; i<indices.length; ++i) {
+      int v = indices[i];
+      if (newIndex[v] < 0) newIndex[v] = next++;
+      indices[i] = newIndex[v];
+    }
+    for (int v=0; v<vertexCount; ++v) {
+      if (newIndex[v] < 0) newIndex[v] = next++;
+    }
+    float[] old = vertices.clone();
+    for (int v=0; v<vertexCount; ++v) {
+      System.arraycopy(old, v*stride, vertices, newIndex[v]*stride, stride);
+    }
+  }
+
+  //---------------------------MEASURES----------------------------------
+
+  /* Average cache miss ratio: vertices transformed per triangle, with a FIFO cache of cacheSize */
+  public static float acmr(int[] indices, int vertexCount, int cacheSize) {
+    return (float)misses(indices, vertexCount, cacheSize) / (indices.length/3);
+  }
+
+  /* Average transformed vertex ratio: vertices transformed per vertex used */
+  public static float atvr(int[] indices, int vertexCount, int cacheSize) {
+    boolean[] used = new boolean[vertexCount];
+    int usedCount = 0;
+    for (int i=0; i<indices.length; ++i) {
+      if (!used[indices[i]]) {
+        used[indices[i]] = true;
+        usedCount++;
+      }
+    }
+    return (float)misses(indices, vertexCount, cacheSize) / usedCount;
+  }
+
+  private static int misses(int[] indices, int vertexCount, int cacheSize) {
+    // A vertex is in the cache if it was one of the last cacheSize vertices to miss
+    int[] missedAt = new int[vertexCount];
+    for (int v=0; v<vertexCount; ++v) {
+      missedAt[v] = -cacheSize-1;
+    }
+    int misses = 0;
+    for (int i=0; i<indices.length; ++i) {
+      int v = indices[i];
+      if (misses - missedAt[v] > cacheSize) {
+        missedAt[v] = misses++;
+      }
+    }
+    return misses;
+  }
+
+}
@@ -5,18 +5,30 @@ import com.jogamp.opengl.*;
 
 public class Model {
 
+  private static int nextId = 0;
+  private final int id = nextId++;
+
   protected Mesh mesh;
   private int[] textureId1;
   private int[] textureId2;
   private Material material;
   protected Shader shader;
+  private Shader instancedShader;  // optional, takes the model matrix per instance
+  private MeshLOD lod;             // optional, simpler meshes to use when the model is small on screen
   private Mat4 modelMatrix;
   private Camera camera;
   private Light light;
   private Spotlight spotlight;
+  private boolean transparent = false;
+  private float[] uvTransform = {1, 1, 0, 0};  // scale u, v then offset u, v; see TextureAtlas
+
+  // scratch storage so that per-frame rendering does not allocate
+  private float[] modelMatrixGLSL = new float[16];
+  private float[] normalMatrixGLSL = new float[9];
 
   public Model(GL3 gl, Camera camera, Light light, Spotlight spotlight, Shader shader, Material material, Mat4 modelMatrix, Mesh mesh, int[] textureId1, int[] textureId2) {
     this.mesh = mesh;
+    MeshLibrary.retain(mesh);  // meshes may be shared, see MeshLibrary
     this.material = material;
     this.modelMatrix = modelMatrix;
     this.shader = shader;
@@ -25,6 +37,8 @@ public class Model {
     this.spotlight = spotlight;
     this.textureId1 = textureId1;
     this.textureId2 = textureId2;
+    if (textureId1 != null) TextureLibrary.retain(textureId1);  // textures may be shared too
+    if (textureId2 != null) TextureLibrary.retain(textureId2);
   }
 
   public Model(GL3 gl, Camera camera, Light light, Spotlight spotlight, Shader shader, Material material, Mat4 modelMatrix, Mesh mesh, int[] textureId1) {
@@ -39,6 +53,10 @@ public class Model {
     modelMatrix = m;
   }
 
+  public Mat4 getModelMatrix() {
+    return modelMatrix;
+  }
+
   public void setCamera(Camera camera) {
     this.camera = camera;
   }
@@ -47,47 +65,102 @@ public class Model {
     this.light = light;
   }
 
+  public void setTransparent(boolean transparent) {
+    this.transparent = transparent;
+  }
+
+  public boolean isTransparent() {
+    return transparent;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  /* Allows copies of this model to be drawn in a single call. The shader must read
+     the model matrix as a per-instance attribute, as vs_instanced.txt does. */
+  public void setInstancedShader(Shader instancedShader) {
+    this.instancedShader = instancedShader;
+  }
+
+  public boolean canRenderInstanced() {
+    return instancedShader != null;
+  }
+
+  public Shader getShader() {
+    return shader;
+  }
+
+  public Mesh getMesh() {
+    return mesh;
+  }
+
+  /* Lets RenderQueue draw the model with a mesh from lod, chosen by size on screen, in place of
+     its own mesh. The meshes must be the same shape as the model's own mesh, which is still used
+     for culling and when drawing directly. Set at most once. */
+  public void setLOD(MeshLOD lod) {
+    this.lod = lod;
+    lod.retain();
+  }
+
+  public MeshLOD getLOD() {
+    return lod;
+  }
+
+  /* For a model textured by one image of a TextureAtlas: the image's TextureAtlas.getUVTransform.
+     The shader must apply the uvTransform uniform, as vs_main.txt and vs_instanced.txt do. */
+  public void setUVTransform(float[] uvTransform) {
+    this.uvTransform = uvTransform.clone();
+  }
+
+  // The texture that decides draw order; 0 if untextured
+  public int getTextureId() {
+    return (textureId1 != null) ? textureId1[0] : 0;
+  }
+
   public void render(GL3 gl, Mat4 modelMatrix) {
+    render(gl, modelMatrix, mesh);
+  }
+
+  /* Draws the model with a different mesh of the same shape, such as one from its MeshLOD */
+  public void render(GL3 gl, Mat4 modelMatrix, Mesh mesh) {
     setupShaders(gl, modelMatrix);
     mesh.render(gl);
   }
 
+  /* Draws count instances of the model with the given mesh. For each instance, matrices holds
+     Mesh.INSTANCE_FLOATS values: the model matrix as given by Mat4.toFloatArrayForGLSL followed
+     by the normal matrix as given by Mat4.toNormalMatrixForGLSL. */
+  public void renderInstanced(GL3 gl, Mesh mesh, float[] matrices, int count) {
+    instancedShader.use(gl);
+    setupMaterial(gl, instancedShader);
+    mesh.renderInstanced(gl, matrices, count);
+  }
+
+  // The camera and lights are set once per frame for all models by FrameUniforms,
+  // so only the model matrix and material are set here
   protected void setupShaders(GL3 gl, Mat4 modelMatrix) {
-    Mat4 mvpMatrix = Mat4.multiply(camera.getPerspectiveMatrix(), Mat4.multiply(camera.getViewMatrix(), modelMatrix));
     shader.use(gl);
-    shader.setFloatArray(gl, "model", modelMatrix.toFloatArrayForGLSL());
-    shader.setFloatArray(gl, "mvpMatrix", mvpMatrix.toFloatArrayForGLSL());
-
-    shader.setVec3(gl, "viewPos", camera.getPosition());
-
-    shader.setVec3(gl, "light.position", light.getPosition());
-    shader.setVec3(gl, "light.ambient", light.getMaterial().getAmbient());
-    shader.setVec3(gl, "light.diffuse", light.getMaterial().getDiffuse());
-    shader.setVec3(gl, "light.specular", light.getMaterial().getSpecular());
-
-    shader.setVec3(gl, "spotlight.position", spotlight.getPosition());
-    shader.setVec3(gl, "spotlight.ambient", spotlight.getMaterial().getAmbient());
-    shader.setVec3(gl, "spotlight.diffuse", spotlight.getMaterial().getDiffuse());
-    shader.setVec3(gl, "spotlight.specular", spotlight.getMaterial().getSpecular());
-    shader.setFloat(gl, "spotlight.cuttoff", spotlight.getCutoff());
-    shader.setFloat(gl, "spotlight.outerCuttoff", spotlight.getOuterCutoff());
-    shader.setVec3(gl, "spotlight.direction", spotlight.getDirection());
+    shader.setFloatArray(gl, "model", modelMatrix.toFloatArrayForGLSL(modelMatrixGLSL));
+    shader.setMat3Array(gl, "normalMatrix", modelMatrix.toNormalMatrixForGLSL(normalMatrixGLSL, 0));
+    setupMaterial(gl, shader);
+  }
 
+  private void setupMaterial(GL3 gl, Shader shader) {
     shader.setVec3(gl, "material.ambient", material.getAmbient());
     shader.setVec3(gl, "material.diffuse", material.getDiffuse());
     shader.setVec3(gl, "material.specular", material.getSpecular());
     shader.setFloat(gl, "material.shininess", material.getShininess());
+    shader.setFloat(gl, "uvTransform", uvTransform[0], uvTransform[1], uvTransform[2], uvTransform[3]);
 
     //Bind textures here, as they aren't going to change
     if (textureId1!=null) {
-      shader.setInt(gl, "first_texture", 0);  // be careful to match these with GL_TEXTURE0 and GL_TEXTURE1
-      gl.glActiveTexture(GL.GL_TEXTURE0);
-      gl.glBindTexture(GL.GL_TEXTURE_2D, textureId1[0]);
+      shader.setInt(gl, "first_texture", 0);  // be careful to match these with texture units 0 and 1
+      GLStateCache.bindTexture(gl, 0, textureId1[0]);
     }
     if (textureId2!=null) {
       shader.setInt(gl, "second_texture", 1);
-      gl.glActiveTexture(GL.GL_TEXTURE1);
-      gl.glBindTexture(GL.GL_TEXTURE_2D, textureId2[0]);
+      GLStateCache.bindTexture(gl, 1, textureId2[0]);
     }
   }
 
@@ -96,9 +169,10 @@ public class Model {
   }
 
   public void dispose(GL3 gl) {
-    mesh.dispose(gl);
-    if (textureId1!=null) gl.glDeleteBuffers(1, textureId1, 0);
-    if (textureId2!=null) gl.glDeleteBuffers(1, textureId2, 0);
+    MeshLibrary.release(gl, mesh);
+    if (lod != null) lod.release(gl);
+    if (textureId1!=null) TextureLibrary.release(gl, textureId1);
+    if (textureId2!=null) TextureLibrary.release(gl, textureId2);
   }
 
 }
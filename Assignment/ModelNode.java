@@ -1,8 +1,11 @@
+import gmaths.*;
+import java.util.ArrayList;
 import com.jogamp.opengl.*;
 
 public class ModelNode extends SGNode {
 
   protected Model model;
+  private BoundingSphere modelBounds = new BoundingSphere();  // scratch, the model's own bounds
 
   public ModelNode(String name, Model m) {
     super(name);
@@ -16,4 +19,28 @@ public class ModelNode extends SGNode {
     }
   }
 
+  // The subtree's bounds also enclose this node's model
+  protected void updateBounds() {
+    super.updateBounds();
+    model.getMesh().getBoundingSphere().transformInto(worldTransform, modelBounds);
+    worldBounds.enclose(modelBounds);
+  }
+
+  public void collectModelNodes(ArrayList<ModelNode> nodes) {
+    nodes.add(this);
+    super.collectModelNodes(nodes);
+  }
+
+  public Model getModel() {
+    return model;
+  }
+
+  public void draw(RenderQueue queue) {
+    if (!queue.isVisible(this)) return;
+    queue.add(model, worldTransform);
+    for (int i=0; i<children.size(); i++) {
+      children.get(i).draw(queue);
+    }
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,427 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Reads Wavefront OBJ files: v, vt and vn lines, and f lines with any number of vertices,
+   which are split into triangles. Every other line (materials, groups, smoothing) is ignored.
+   Each distinct position/texture/normal combination used by a face becomes one vertex.
+   Faces without normals or texture coordinates get zeros for them.
+
+   The file is memory mapped and cut into chunks at line ends, and the chunks are parsed in
+   parallel on the common fork-join pool. Each chunk keeps its values in primitive arrays; the
+   chunks are then joined, and the corners of the faces are turned into vertices and indices
+   using an open addressing hash table of ints, so no values are boxed. Files must be under 2GB. */
+
+public final class ObjLoader {
+
+  private static final int CHUNK_BYTES = 1 << 20;
+
+  // Flags for each face corner, see Chunk.corners
+  private static final int RELATIVE_POSITION = 1;
+  private static final int RELATIVE_TEXCOORD = 2;
+  private static final int RELATIVE_NORMAL = 4;
+  private static final int NO_TEXCOORD = 8;
+  private static final int NO_NORMAL = 16;
+
+  public static MeshData load(String filename) throws IOException {
+    ByteBuffer file;
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) throw new IOException(filename + " is too large");
+      file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    Chunk[] chunks = split(file);
+    ForkJoinPool.commonPool().invoke(new ParseTask(chunks, 0, chunks.length));
+    for (Chunk c : chunks) {
+      if (c.error != null) throw new IOException(filename + ": " + c.error);
+    }
+
+    // Join the chunks, noting where each chunk's values start so relative references can be resolved
+    int positionCount = 0, texCoordCount = 0, normalCount = 0, cornerCount = 0;
+    for (Chunk c : chunks) {
+      c.positionBase = positionCount;
+      c.texCoordBase = texCoordCount;
+      c.normalBase = normalCount;
+      positionCount += c.positions.size/3;
+      texCoordCount += c.texCoords.size/2;
+      normalCount += c.normals.size/3;
+      cornerCount += c.cornerFlags.size;
+    }
+    float[] positions = new float[positionCount*3];
+    float[] texCoords = new float[texCoordCount*2];
+    float[] normals = new float[normalCount*3];
+    int[] corners = new int[cornerCount*3];
+    int corner = 0;
+    for (Chunk c : chunks) {
+      System.arraycopy(c.positions.values, 0, positions, c.positionBase*3, c.positions.size);
+      System.arraycopy(c.texCoords.values, 0, texCoords, c.texCoordBase*2, c.texCoords.size);
+      System.arraycopy(c.normals.values, 0, normals, c.normalBase*3, c.normals.size);
+      for (int i=0; i<c.cornerFlags.size; ++i, ++corner) {
+        int flags = c.cornerFlags.values[i];
+        int p = c.corners.values[i*3];
+        int t = c.corners.values[i*3+1];
+        int n = c.corners.values[i*3+2];
+        corners[corner*3]   = ((flags & RELATIVE_POSITION) != 0) ? c.positionBase+p : p;
+        corners[corner*3+1] = ((flags & NO_TEXCOORD) != 0) ? -1 : ((flags & RELATIVE_TEXCOORD) != 0) ? c.texCoordBase+t : t;
+        corners[corner*3+2] = ((flags & NO_NORMAL) != 0) ? -1 : ((flags & RELATIVE_NORMAL) != 0) ? c.normalBase+n : n;
+        if (corners[corner*3] < 0 || corners[corner*3] >= positionCount
+            || corners[corner*3+1] >= texCoordCount || corners[corner*3+2] >= normalCount
+            || (corners[corner*3+1] < 0 && (flags & NO_TEXCOORD) == 0)
+            || (corners[corner*3+2] < 0 && (flags & NO_NORMAL) == 0)) {
+          throw new IOException(filename + ": a face refers to a vertex that does not exist");
+        }
+      }
+    }
+    return buildMesh(positions, texCoords, normals, corners);
+  }
+
+  //---------------------------CHUNKS----------------------------------
+
+  private static Chunk[] split(ByteBuffer file) {
+    int size = file.capacity();
+    Chunk[] chunks = new Chunk[Math.max(1, (size + CHUNK_BYTES-1) / CHUNK_BYTES)];
+    int count = 0;
+    int start = 0;
+    while (start < size || count == 0) {
+      int end = Math.min(size, start + CHUNK_BYTES);
+      while (end < size && file.get(end-1) != '\n') end++;   // finish the line
+      chunks[count++] = new Chunk(file, start, end);
+      start = end;
+    }
+    return Arrays.copyOf(chunks, count);
+  }
+
+  private static final class ParseTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Chunk[] chunks;
+    private final int from, to;
+
+    ParseTask(Chunk[] chunks, int from, int to) {
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    protected void compute() {
+      if (to-from == 1) {
+        chunks[from].parse();
+        return;
+      }
+      int middle = (from+to) >>> 1;
+      invokeAll(new ParseTask(chunks, from, middle), new ParseTask(chunks, middle, to));
+    }
+  }
+
+  private static final class Chunk {
+    private final ByteBuffer file;
+    private final int start, end;
+    private int at;   // the parse position
+
+    final FloatArray positions = new FloatArray();
+    final FloatArray texCoords = new FloatArray();
+    final FloatArray normals = new FloatArray();
+    // Three ints per face corner, already split into triangles: position, texture and normal index.
+    // Indices are from 0. Negative OBJ indices count back from the current end of a list, and may
+    // reach into earlier chunks, so they are stored relative to the start of this chunk and flagged.
+    final IntArray corners = new IntArray();
+    final IntArray cornerFlags = new IntArray();
+    int positionBase, texCoordBase, normalBase;
+    String error;
+
+    private int[] face = new int[4*16];   // flags, p, t, n for each corner of the current face
+    private boolean relative;             // set by parseIndex
+
+    Chunk(ByteBuffer file, int start, int end) {
+      this.file = file;
+      this.start = start;
+      this.end = end;
+    }
+
+    void parse() {
+      at = start;
+      try {
+        while (at < end) {
+          skipSpaces();
+          if (at >= end) break;
+          byte b0 = file.get(at);
+          byte b1 = (at+1 < end) ? file.get(at+1) : (byte)'\n';
+          if (b0 == 'v' && isSpace(b1)) {
+            at += 2;
+            positions.add(parseFloat(), parseFloat(), parseFloat());
+          } else if (b0 == 'v' && b1 == 't') {
+            at += 2;
+            texCoords.add(parseFloat(), parseFloat());
+          } else if (b0 == 'v' && b1 == 'n') {
+            at += 2;
+            normals.add(parseFloat(), parseFloat(), parseFloat());
+          } else if (b0 == 'f' && isSpace(b1)) {
+            at += 2;
+            parseFace();
+          }
+          skipLine();
+        }
+      }
+      catch (RuntimeException e) {
+        error = "cannot read the line at byte " + lineStart(at) + " (" + e.getMessage() + ")";
+      }
+    }
+
+    private void parseFace() {
+      int count = 0;
+      while (true) {
+        skipSpaces();
+        if (at >= end || isLineEnd(file.get(at))) break;
+        if (face.length < (count+1)*4) face = Arrays.copyOf(face, face.length*2);
+        int flags = 0;
+        int p = parseIndex(positions.size/3);
+        if (relative) flags |= RELATIVE_POSITION;
+        int t = 0, n = 0;
+        flags |= NO_TEXCOORD | NO_NORMAL;
+        if (at < end && file.get(at) == '/') {
+          at++;
+          if (at < end && file.get(at) != '/') {
+            t = parseIndex(texCoords.size/2);
+            flags &= ~NO_TEXCOORD;
+            if (relative) flags |= RELATIVE_TEXCOORD;
+          }
+          if (at < end && file.get(at) == '/') {
+            at++;
+            n = parseIndex(normals.size/3);
+            flags &= ~NO_NORMAL;
+            if (relative) flags |= RELATIVE_NORMAL;
+          }
+        }
+        face[count*4] = flags; face[count*4+1] = p; face[count*4+2] = t; face[count*4+3] = n;
+        count++;
+      }
+      if (count < 3) throw new IllegalArgumentException("a face needs at least three vertices");
+      for (int i=1; i+1<count; ++i) {   // a fan of triangles
+        addCorner(0);
+        addCorner(i);
+        addCorner(i+1);
+      }
+    }
+
+    private void addCorner(int i) {
+      cornerFlags.add(face[i*4]);
+      corners.add(face[i*4+1]);
+      corners.add(face[i*4+2]);
+      corners.add(face[i*4+3]);
+    }
+
+    // An OBJ index as an index from 0. Negative indices count back from localCount, the number
+    // of values so far in this chunk; for these relative is set and the index is from the start
+    // of the chunk, so it may be negative.
+    private int parseIndex(int localCount) {
+      boolean negative = false;
+      if (at < end && file.get(at) == '-') {
+        negative = true;
+        at++;
+      }
+      int value = 0;
+      int digits = 0;
+      while (at < end) {
+        byte b = file.get(at);
+        if (b < '0' || b > '9') break;
+        value = value*10 + (b-'0');
+        at++;
+        digits++;
+      }
+      if (digits == 0 || value == 0) throw new IllegalArgumentException("bad index");
+      relative = negative;
+      return negative ? localCount - value : value-1;
+    }
+
+    // Decimal numbers with an optional sign, fraction and exponent, and nan or inf
+    private float parseFloat() {
+      skipSpaces();
+      boolean negative = false;
+      byte b = (at < end) ? file.get(at) : (byte)'\n';
+      if (b == '-' || b == '+') {
+        negative = (b == '-');
+        at++;
+      }
+      long mantissa = 0;
+      int exponent = 0;
+      int digits = 0;
+      boolean point = false;
+      while (at < end) {
+        b = file.get(at);
+        if (b >= '0' && b <= '9') {
+          if (mantissa < 100_000_000_000_000_000L) {
+            mantissa = mantissa*10 + (b-'0');
+            if (point) exponent--;
+          } else if (!point) {
+            exponent++;   // digits beyond a long's precision
+          }
+          digits++;
+        } else if (b == '.' && !point) {
+          point = true;
+        } else {
+          break;
+        }
+        at++;
+      }
+      if (digits == 0) return parseSpecial(negative);
+      if (at < end && (file.get(at) == 'e' || file.get(at) == 'E')) {
+        at++;
+        boolean negativeExponent = false;
+        if (at < end && (file.get(at) == '-' || file.get(at) == '+')) {
+          negativeExponent = file.get(at) == '-';
+          at++;
+        }
+        int e = 0;
+        while (at < end && file.get(at) >= '0' && file.get(at) <= '9') {
+          e = Math.min(e*10 + (file.get(at) - '0'), 1000);
+          at++;
+        }
+        exponent += negativeExponent ? -e : e;
+      }
+      double value = mantissa;
+      if (exponent < 0) {
+        value = (exponent >= -22) ? value / POWERS_OF_TEN[-exponent] : value * Math.pow(10, exponent);
+      } else if (exponent > 0) {
+        value = (exponent <= 22) ? value * POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+      }
+      return (float)(negative ? -value : value);
+    }
+
+    private float parseSpecial(boolean negative) {
+      int from = at;
+      while (at < end && Character.isLetter(file.get(at))) at++;
+      byte[] word = new byte[at-from];
+      for (int i=0; i<word.length; ++i) word[i] = file.get(from+i);
+      String s = new String(word).toLowerCase();
+      if (s.equals("nan")) return Float.NaN;
+      if (s.equals("inf") || s.equals("infinity")) return negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+      throw new IllegalArgumentException("bad number");
+    }
+
+    private void skipSpaces() {
+      while (at < end) {
+        byte b = file.get(at);
+        if (b != ' ' && b != '\t') break;
+        at++;
+      }
+    }
+
+    private void skipLine() {
+      while (at < end && file.get(at) != '\n') at++;
+      at++;
+    }
+
+    private int lineStart(int position) {
+      int i = Math.min(position, end-1);
+      while (i > start && file.get(i-1) != '\n') i--;
+      return i;
+    }
+
+    private static boolean isSpace(byte b) {
+      return b == ' ' || b == '\t';
+    }
+
+    private static boolean isLineEnd(byte b) {
+      return b == '\n' || b == '\r' || b == '#';
+    }
+  }
+
+  private static final double[] POWERS_OF_TEN = new double[23];   // all exactly representable
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i=1; i<POWERS_OF_TEN.length; ++i) POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1]*10;
+  }
+
+  //---------------------------VERTICES----------------------------------
+
+  // Gives each distinct position/texture/normal triple a vertex, in order of first use
+  private static MeshData buildMesh(float[] positions, float[] texCoords, float[] normals, int[] corners) {
+    int cornerCount = corners.length/3;
+    int capacity = Integer.highestOneBit(Math.max(4, cornerCount*2-1)) << 1;   // at most half full
+    int mask = capacity-1;
+    int[] table = new int[capacity];    // vertex number + 1, or 0 if empty
+    int[] vertexCorner = new int[cornerCount];   // for each vertex, the first corner that used it
+    int[] indices = new int[cornerCount];
+    int vertexCount = 0;
+    for (int c=0; c<cornerCount; ++c) {
+      int p = corners[c*3], t = corners[c*3+1], n = corners[c*3+2];
+      int slot = hash(p, t, n) & mask;
+      while (true) {
+        int entry = table[slot];
+        if (entry == 0) {
+          table[slot] = vertexCount+1;
+          vertexCorner[vertexCount] = c;
+          indices[c] = vertexCount++;
+          break;
+        }
+        int first = vertexCorner[entry-1]*3;
+        if (corners[first] == p && corners[first+1] == t && corners[first+2] == n) {
+          indices[c] = entry-1;
+          break;
+        }
+        slot = (slot+1) & mask;
+      }
+    }
+
+    float[] vertices = new float[vertexCount*VertexLayout.SOURCE_FLOATS];
+    for (int v=0; v<vertexCount; ++v) {
+      int c = vertexCorner[v]*3;
+      int p = corners[c], t = corners[c+1], n = corners[c+2];
+      int o = v*VertexLayout.SOURCE_FLOATS;
+      vertices[o]   = positions[p*3];
+      vertices[o+1] = positions[p*3+1];
+      vertices[o+2] = positions[p*3+2];
+      if (n >= 0) {
+        vertices[o+3] = normals[n*3];
+        vertices[o+4] = normals[n*3+1];
+        vertices[o+5] = normals[n*3+2];
+      }
+      if (t >= 0) {
+        vertices[o+6] = texCoords[t*2];
+        vertices[o+7] = texCoords[t*2+1];
+      }
+    }
+    return new MeshData(vertices, indices);
+  }
+
+  private static int hash(int p, int t, int n) {
+    int h = p*0x9E3779B1 + t*0x85EBCA77 + n*0xC2B2AE3D;
+    return h ^ (h >>> 15);
+  }
+
+  //---------------------------GROWABLE ARRAYS----------------------------------
+  // Like ArrayList, but without boxing every value
+
+  private static final class FloatArray {
+    float[] values = new float[1024];
+    int size = 0;
+
+    void add(float a, float b) {
+      if (size+2 > values.length) values = Arrays.copyOf(values, values.length*2);
+      values[size++] = a;
+      values[size++] = b;
+    }
+
+    void add(float a, float b, float c) {
+      if (size+3 > values.length) values = Arrays.copyOf(values, values.length*2);
+      values[size++] = a;
+      values[size++] = b;
+      values[size++] = c;
+    }
+  }
+
+  private static final class IntArray {
+    int[] values = new int[1024];
+    int size = 0;
+
+    void add(int v) {
+      if (size == values.length) values = Arrays.copyOf(values, size*2);
+      values[size++] = v;
+    }
+  }
+
+}
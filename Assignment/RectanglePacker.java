@@ -0,0 +1,166 @@
+import java.util.Arrays;
+
+/* Packs rectangles into one larger rectangle with the skyline bottom-left method: the packer keeps
+   the outline of the top of everything placed so far, as a list of horizontal segments, and puts
+   each rectangle where its top would be lowest. Rectangles are placed tallest first.
+
+   pack tries each power of two width that could hold the rectangles and keeps the one with
+   the smallest area. Positions and sizes are rounded up to ALIGNMENT, so that no 4x4 block of
+   a compressed texture holds texels from two rectangles. */
+
+public final class RectanglePacker {
+
+  public static final int ALIGNMENT = 4;
+
+  /* Where pack put each rectangle, in the order they were given */
+  public static final class Packing {
+    public final int width, height;
+    public final int[] x, y;
+
+    private Packing(int width, int height, int[] x, int[] y) {
+      this.width = width;
+      this.height = height;
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  private final int binWidth;
+  private int[] segmentX = new int[16];   // the skyline, left to right
+  private int[] segmentY = new int[16];
+  private int[] segmentWidth = new int[16];
+  private int segments;
+  private int usedHeight = 0;
+
+  /* An empty packer, as wide as given and as tall as needed */
+  public RectanglePacker(int binWidth) {
+    this.binWidth = binWidth;
+    segmentX[0] = 0;
+    segmentY[0] = 0;
+    segmentWidth[0] = binWidth;
+    segments = 1;
+  }
+
+  /* Places a rectangle of the given size, already aligned, and returns its position as x << 32 | y,
+     or -1 if it is wider than the packer */
+  public long insert(int width, int height) {
+    int bestSegment = -1, bestX = 0, bestY = 0, bestTop = Integer.MAX_VALUE;
+    for (int i=0; i<segments; ++i) {
+      int y = fit(i, width);
+      if (y >= 0 && y+height < bestTop) {
+        bestSegment = i;
+        bestX = segmentX[i];
+        bestY = y;
+        bestTop = y+height;
+      }
+    }
+    if (bestSegment < 0) return -1;
+    addSegment(bestSegment, bestX, bestTop, width);
+    usedHeight = Math.max(usedHeight, bestTop);
+    return ((long)bestX << 32) | bestY;
+  }
+
+  public int getUsedHeight() {
+    return usedHeight;
+  }
+
+  // The lowest y a rectangle of this width can sit at when its left edge is at segment i; -1 if it does not fit
+  private int fit(int i, int width) {
+    if (segmentX[i] + width > binWidth) return -1;
+    int y = 0;
+    int remaining = width;
+    for (int j=i; remaining > 0; ++j) {
+      y = Math.max(y, segmentY[j]);
+      remaining -= segmentWidth[j];
+    }
+    return y;
+  }
+
+  // Adds the top of a newly placed rectangle to the skyline, trimming the segments it covers
+  private void addSegment(int index, int x, int y, int width) {
+    if (segments == segmentX.length) {
+      segmentX = Arrays.copyOf(segmentX, segments*2);
+      segmentY = Arrays.copyOf(segmentY, segments*2);
+      segmentWidth = Arrays.copyOf(segmentWidth, segments*2);
+    }
+    System.arraycopy(segmentX, index, segmentX, index+1, segments-index);
+    System.arraycopy(segmentY, index, segmentY, index+1, segments-index);
+    System.arraycopy(segmentWidth, index, segmentWidth, index+1, segments-index);
+    segmentX[index] = x;
+    segmentY[index] = y;
+    segmentWidth[index] = width;
+    segments++;
+
+    int end = x + width;
+    int i = index+1;
+    while (i < segments && segmentX[i] < end) {
+      int right = segmentX[i] + segmentWidth[i];
+      if (right <= end) {
+        remove(i);
+      } else {
+        segmentWidth[i] = right - end;
+        segmentX[i] = end;
+        break;
+      }
+    }
+    // Join neighbours at the same height
+    for (int j=0; j+1<segments; ) {
+      if (segmentY[j] == segmentY[j+1]) {
+        segmentWidth[j] += segmentWidth[j+1];
+        remove(j+1);
+      } else {
+        j++;
+      }
+    }
+  }
+
+  private void remove(int i) {
+    System.arraycopy(segmentX, i+1, segmentX, i, segments-i-1);
+    System.arraycopy(segmentY, i+1, segmentY, i, segments-i-1);
+    System.arraycopy(segmentWidth, i+1, segmentWidth, i, segments-i-1);
+    segments--;
+  }
+
+  public static int align(int size) {
+    return (size + ALIGNMENT-1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  /* Packs every rectangle into the smallest area no more than maxSize on either side, or returns
+     null if they cannot all fit. Each rectangle gets a border of padding on all four sides,
+     which is included in the position returned; the rectangle itself starts at x+padding, y+padding. */
+  public static Packing pack(int[] widths, int[] heights, int padding, int maxSize) {
+    int count = widths.length;
+    Integer[] order = new Integer[count];
+    int widest = 1;
+    long area = 0;
+    for (int i=0; i<count; ++i) {
+      order[i] = i;
+      widest = Math.max(widest, align(widths[i] + 2*padding));
+      area += (long)align(widths[i] + 2*padding) * align(heights[i] + 2*padding);
+    }
+    Arrays.sort(order, (a, b) -> (heights[a] != heights[b]) ? heights[b]-heights[a] : widths[b]-widths[a]);
+
+    Packing best = null;
+    long bestArea = Long.MAX_VALUE;
+    int narrowest = 1;
+    while (narrowest < widest) narrowest *= 2;
+    for (int binWidth = narrowest; binWidth <= maxSize; binWidth *= 2) {
+      if ((long)binWidth*maxSize < area) continue;
+      RectanglePacker packer = new RectanglePacker(binWidth);
+      int[] x = new int[count], y = new int[count];
+      for (int i : order) {
+        long position = packer.insert(align(widths[i] + 2*padding), align(heights[i] + 2*padding));
+        x[i] = (int)(position >>> 32);
+        y[i] = (int)position;
+      }
+      int binHeight = packer.getUsedHeight();
+      long binArea = (long)binWidth*binHeight;
+      if (binHeight <= maxSize && (binArea < bestArea || binArea == bestArea && binWidth <= binHeight)) {
+        best = new Packing(binWidth, binHeight, x, y);
+        bestArea = binArea;
+      }
+    }
+    return best;
+  }
+
+}
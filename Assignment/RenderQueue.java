@@ -0,0 +1,191 @@
+import gmaths.*;
+import java.util.Arrays;
+import com.jogamp.opengl.*;
+
+/* Collects the models to be drawn in a frame, then draws them sorted by a 64-bit key so that
+   models sharing a shader, texture and mesh are drawn together, and opaque models are drawn
+   front to back within each group so that the depth test can reject hidden fragments early.
+
+   Key layout, most significant bit first:
+     1 bit   transparent (opaque models first)
+     9 bits  shader program id
+     12 bits texture id
+     9 bits  mesh id
+     16 bits depth (front to back for opaque models, back to front for transparent ones)
+     17 bits index of the item in this queue, so sorting the keys alone orders the items
+
+   Models that can be drawn instanced use their model id in place of the depth, so that all
+   their copies end up next to each other and are drawn with one instanced call.
+
+   Models, and scene graph subtrees, whose bounding spheres are outside the camera's view
+   are not queued at all. Models with a MeshLOD are drawn with the level that suits the size
+   of their bounding sphere on screen. */
+
+public class RenderQueue {
+
+  private static final int INDEX_BITS = 17;
+  private static final int MAX_ITEMS = 1 << INDEX_BITS;
+  private static final float MAX_DEPTH = 100f;   // matches the default far clip plane
+
+  private Model[] models = new Model[64];
+  private Mesh[] meshes = new Mesh[64];
+  private Mat4[] worldMatrices = new Mat4[64];
+  private long[] keys = new long[64];
+  private int count = 0;
+  private float[] instanceMatrices = new float[64*Mesh.INSTANCE_FLOATS];
+
+  private float cameraX, cameraY, cameraZ;
+  private Frustum frustum = new Frustum();
+  private BoundingSphere modelBounds = new BoundingSphere();  // scratch for add
+  private int culledCount = 0;
+  private int drawnCount = 0;
+  private int viewportHeight = 1;
+  private float pixelsPerUnit;  // projected size in pixels of 1 unit at a distance of 1
+
+  /* Starts a new frame. The camera position is used to work out each item's depth,
+     and its view to decide what is visible. */
+  public void clear(Camera camera) {
+    for (int i=0; i<count; ++i) {
+      models[i] = null;
+      meshes[i] = null;
+    }
+    count = 0;
+    culledCount = 0;
+    drawnCount = 0;
+    frustum.set(camera.getViewProjectionMatrix());
+    pixelsPerUnit = camera.getPerspectiveMatrix().get(1,1) * viewportHeight/2;
+    Vec3 p = camera.getPosition();
+    cameraX = p.x;
+    cameraY = p.y;
+    cameraZ = p.z;
+  }
+
+  /* Called when the window is resized, so that the on screen size of models can be worked out */
+  public void setViewportHeight(int height) {
+    viewportHeight = Math.max(height, 1);
+  }
+
+  /* The camera's view volume, as of the last clear */
+  public Frustum getFrustum() {
+    return frustum;
+  }
+
+  /* Tests a scene graph subtree against the camera's view, counting it as culled if it is outside */
+  public boolean isVisible(SGNode node) {
+    if (frustum.intersects(node.getWorldBounds())) return true;
+    culledCount++;
+    return false;
+  }
+
+  /* Adds a model to be drawn with the given world matrix, unless it is outside the camera's view.
+     The matrix is copied. */
+  public void add(Model model, Mat4 worldMatrix) {
+    model.getMesh().getBoundingSphere().transformInto(worldMatrix, modelBounds);
+    if (!frustum.intersects(modelBounds)) {
+      culledCount++;
+      return;
+    }
+    if (count == MAX_ITEMS) {
+      System.err.println("[error] Render queue full, model not drawn");
+      return;
+    }
+    if (count == models.length) grow();
+    if (worldMatrices[count] == null) worldMatrices[count] = new Mat4(1);
+    models[count] = model;
+    meshes[count] = selectMesh(model, modelBounds);
+    worldMatrices[count].set(worldMatrix);
+    keys[count] = makeKey(model, meshes[count], worldMatrices[count], count);
+    count++;
+    drawnCount++;
+  }
+
+  private Mesh selectMesh(Model model, BoundingSphere bounds) {
+    MeshLOD lod = model.getLOD();
+    if (lod == null) return model.getMesh();
+    float dx = bounds.x - cameraX;
+    float dy = bounds.y - cameraY;
+    float dz = bounds.z - cameraZ;
+    float distance = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+    if (distance <= bounds.radius) return lod.getFinest();
+    return lod.select(bounds.radius * pixelsPerUnit / distance);
+  }
+
+  public int size() {
+    return count;
+  }
+
+  /* The number of models and subtrees skipped this frame for being out of view.
+     A skipped subtree counts once, however many models it holds. */
+  public int getCulledCount() {
+    return culledCount;
+  }
+
+  public int getDrawnCount() {
+    return drawnCount;
+  }
+
+  /* Sorts the queued models and draws them */
+  public void submit(GL3 gl) {
+    Arrays.sort(keys, 0, count);
+    int i = 0;
+    while (i < count) {
+      Model model = models[indexOf(keys[i])];
+      Mesh mesh = meshes[indexOf(keys[i])];
+      int end = i+1;
+      if (model.canRenderInstanced()) {
+        while (end < count && models[indexOf(keys[end])] == model && meshes[indexOf(keys[end])] == mesh) end++;
+      }
+      if (end-i > 1) {
+        renderInstanced(gl, model, mesh, i, end);
+      } else {
+        model.render(gl, worldMatrices[indexOf(keys[i])], mesh);
+      }
+      i = end;
+    }
+  }
+
+  private void renderInstanced(GL3 gl, Model model, Mesh mesh, int start, int end) {
+    int instances = end-start;
+    if (instanceMatrices.length < instances*Mesh.INSTANCE_FLOATS) {
+      instanceMatrices = new float[Math.max(instances*Mesh.INSTANCE_FLOATS, instanceMatrices.length*2)];
+    }
+    for (int i=start; i<end; ++i) {
+      Mat4 m = worldMatrices[indexOf(keys[i])];
+      int offset = (i-start)*Mesh.INSTANCE_FLOATS;
+      m.toFloatArrayForGLSL(instanceMatrices, offset);
+      m.toNormalMatrixForGLSL(instanceMatrices, offset+16);
+    }
+    model.renderInstanced(gl, mesh, instanceMatrices, instances);
+  }
+
+  private static int indexOf(long key) {
+    return (int)(key & (MAX_ITEMS-1));
+  }
+
+  private long makeKey(Model model, Mesh mesh, Mat4 worldMatrix, int index) {
+    float dx = worldMatrix.get(0,3) - cameraX;
+    float dy = worldMatrix.get(1,3) - cameraY;
+    float dz = worldMatrix.get(2,3) - cameraZ;
+    float distance = (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+    long depth = (long)(Math.min(distance / MAX_DEPTH, 1f) * 0xFFFF);
+    long transparent = model.isTransparent() ? 1 : 0;
+    if (transparent == 1) depth = 0xFFFF - depth;
+    if (model.canRenderInstanced()) depth = model.getId() & 0xFFFF;
+    long key = (transparent << 63)
+             | ((long)(model.getShader().getID() & 0x1FF) << 54)
+             | ((long)(model.getTextureId() & 0xFFF) << 42)
+             | ((long)(mesh.getId() & 0x1FF) << 33)
+             | (depth << INDEX_BITS)
+             | index;
+    return key ^ Long.MIN_VALUE;   // so that a signed sort gives the unsigned order
+  }
+
+  private void grow() {
+    int size = models.length * 2;
+    models = Arrays.copyOf(models, size);
+    meshes = Arrays.copyOf(meshes, size);
+    worldMatrices = Arrays.copyOf(worldMatrices, size);
+    keys = Arrays.copyOf(keys, size);
+  }
+
+}
@@ -1,34 +1,158 @@
 import gmaths.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import com.jogamp.opengl.*;
 
 public class SGNode {
 
   protected String name;
+  protected SGNode parent;
   protected ArrayList<SGNode> children;
   protected Mat4 worldTransform;
+  protected BoundingSphere worldBounds;  // encloses every model in this subtree, see updateBounds
+
+  // Only subtrees that have changed since the last update are recomputed.
+  // dirty: this node (and so everything below it) needs a new world transform.
+  // dirtyDescendant: some node further down the tree is dirty.
+  protected boolean dirty = true;
+  protected boolean dirtyDescendant = false;
+
+  // update(pool) hands groups of subtrees holding at least this many nodes to other threads;
+  // smaller groups take less time to update than to pass between threads
+  public static final int PARALLEL_THRESHOLD = 512;
+  protected int subtreeSize = 1;  // this node and all below it
 
   public SGNode(String name) {
     children = new ArrayList<SGNode>();
     this.name = name;
     worldTransform = new Mat4(1);
+    worldBounds = new BoundingSphere();
   }
 
   public void addChild(SGNode child) {
     children.add(child);
+    child.parent = this;
+    for (SGNode n = this; n != null; n = n.parent) {
+      n.subtreeSize += child.subtreeSize;
+    }
+    child.markDirty();
+  }
+
+  protected void markDirty() {
+    dirty = true;
+    for (SGNode n = parent; n != null && !n.dirtyDescendant; n = n.parent) {
+      n.dirtyDescendant = true;
+    }
   }
   
   public void update() {
-    update(worldTransform);
+    update(worldTransform, false);
   }
   
-  protected void update(Mat4 t) {
-    worldTransform = t;
+  protected void update(Mat4 t, boolean parentChanged) {
+    boolean changed = parentChanged || dirty;
+    updateChildren(updateTransform(t, changed), changed);
+    dirty = false;
+  }
+
+  // Sets this node's world transform from its parent's, t, if changed, and returns the transform for its children
+  protected Mat4 updateTransform(Mat4 t, boolean changed) {
+    if (changed) {
+      worldTransform.set(t);
+    }
+    return worldTransform;
+  }
+
+  /* As update(), but large parts of the tree are updated in parallel on the pool.
+     Nothing else may change the tree while this runs. */
+  public void update(ForkJoinPool pool) {
+    updateAll(pool, this);
+  }
+
+  /* Updates several separate scene graphs at once, as update(pool) */
+  public static void updateAll(ForkJoinPool pool, SGNode... roots) {
+    pool.invoke(new UpdateTask(Arrays.asList(roots), 0, roots.length, null, false));
+  }
+
+  // As update(t, parentChanged), with the children split between tasks
+  private void updateParallel(Mat4 t, boolean parentChanged) {
+    boolean changed = parentChanged || dirty;
+    Mat4 childTransform = updateTransform(t, changed);
+    if (changed || dirtyDescendant) {
+      new UpdateTask(children, 0, children.size(), childTransform, changed).compute();
+      updateBounds();
+    }
+    dirtyDescendant = false;
+    dirty = false;
+  }
+
+  /* Updates a run of sibling subtrees: in this thread if they are small between them,
+     else by splitting the run in two, by size, and updating the halves in parallel */
+  private static final class UpdateTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final List<SGNode> nodes;
+    private final int from, to;
+    private final Mat4 t;   // the parent's transform; null for roots, which use their own
+    private final boolean changed;
+
+    UpdateTask(List<SGNode> nodes, int from, int to, Mat4 t, boolean changed) {
+      this.nodes = nodes;
+      this.from = from;
+      this.to = to;
+      this.t = t;
+      this.changed = changed;
+    }
+
+    protected void compute() {
+      int size = 0;
+      for (int i=from; i<to; ++i) {
+        size += nodes.get(i).subtreeSize;
+      }
+      if (size < PARALLEL_THRESHOLD) {
+        for (int i=from; i<to; ++i) {
+          SGNode node = nodes.get(i);
+          node.update((t != null) ? t : node.worldTransform, changed);
+        }
+      } else if (to-from == 1) {
+        SGNode node = nodes.get(from);
+        node.updateParallel((t != null) ? t : node.worldTransform, changed);
+      } else {
+        int middle = from+1;
+        for (int half = nodes.get(from).subtreeSize; middle < to-1 && half < size/2; ++middle) {
+          half += nodes.get(middle).subtreeSize;
+        }
+        invokeAll(new UpdateTask(nodes, from, middle, t, changed), new UpdateTask(nodes, middle, to, t, changed));
+      }
+    }
+  }
+
+  protected void updateChildren(Mat4 t, boolean changed) {
+    if (changed || dirtyDescendant) {
+      for (int i=0; i<children.size(); i++) {
+        children.get(i).update(t, changed);
+      }
+      updateBounds();
+    }
+    dirtyDescendant = false;
+  }
+
+  // Called once the children are up to date, so their bounds can be combined.
+  // Only subtrees that moved get here, so unchanged parts of the tree keep their bounds.
+  protected void updateBounds() {
+    worldBounds.setEmpty();
     for (int i=0; i<children.size(); i++) {
-      children.get(i).update(t);
+      worldBounds.enclose(children.get(i).worldBounds);
     }
   }
 
+  public BoundingSphere getWorldBounds() {
+    return worldBounds;
+  }
+
   protected String getIndentString(int indent) {
     String s = ""+indent+" ";
     for (int i=0; i<indent; ++i) {
@@ -54,4 +178,24 @@ public class SGNode {
     }
   }
 
+  /* As draw(gl), but adds the models to a queue to be sorted and drawn later.
+     Subtrees that are outside the camera's view are skipped as a whole. */
+  public void draw(RenderQueue queue) {
+    if (!queue.isVisible(this)) return;
+    for (int i=0; i<children.size(); i++) {
+      children.get(i).draw(queue);
+    }
+  }
+
+  /* Adds every ModelNode in this subtree to the list, in the order draw visits them */
+  public void collectModelNodes(ArrayList<ModelNode> nodes) {
+    for (int i=0; i<children.size(); i++) {
+      children.get(i).collectModelNodes(nodes);
+    }
+  }
+
+  public Mat4 getWorldTransform() {
+    return worldTransform;
+  }
+
 }
\ No newline at end of file
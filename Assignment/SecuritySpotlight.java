@@ -5,8 +5,6 @@ import com.jogamp.opengl.*;
 
 public class SecuritySpotlight {
 
-  private Spotlight spotlight;
-
   private SGNode spotlightRoot;
   private Model metal;
 
@@ -20,23 +18,27 @@ public class SecuritySpotlight {
   private static float SPOTLIGHT_ROTATION_Z = 40f;
   private static final float SPOTLIGHT_ROTATION_SPEED = 90f;
 
-  public SecuritySpotlight(GL3 gl, Camera camera, Light mainLight, Spotlight spotlight){
-   this.spotlight = spotlight;
-   setupModels(gl, camera, mainLight);
-   setupSpotlightSceneGraph();
+  //Where the lamp is and which way it points. The simulation thread changes these, and the render
+  //thread moves the spotlight to match once they reach it in a FrameState.
+  private Vec3 lampPosition = new Vec3(spotlightLampBaseX, spotlightLampBaseY, spotlightLampBaseZ);
+  private Vec3 lampDirection = new Vec3(0, -1, 0);
+  private Vec3 lampRotation = new Vec3(1, 1, 1);
 
-   programStartTime = getSeconds();
-   lastTime = getSeconds();
+  public SecuritySpotlight(GL3 gl, Camera camera, Light mainLight, Spotlight spotlight, FrameClock clock){
+   this.clock = clock;
+   setupModels(gl, camera, mainLight, spotlight);
+   setupSpotlightSceneGraph();
   }
 
-  private void setupModels(GL3 gl, Camera camera, Light mainLight) {
+  private void setupModels(GL3 gl, Camera camera, Light mainLight, Spotlight spotlight) {
     int[] spotlightTexture = TextureLibrary.loadTexture(gl, "textures/metal.jpg");
 
-    Mesh mesh = new Mesh(gl, Cube.vertices.clone(), Cube.indices.clone());
+    Mesh mesh = MeshLibrary.get(gl, Cube.vertices, Cube.indices);
     Shader shader = new Shader(gl, "vs_main.txt", "fs_main.txt");
     Material material = new Material(new Vec3(0.8f, 0.8f, 0.9f), new Vec3(0.8f, 0.8f, 0.9f), new Vec3(0.9f, 0.9f, 0.9f), 32.0f);
     Mat4 modelMatrix = new Mat4(1);
     metal = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, spotlightTexture);
+    metal.setInstancedShader(new Shader(gl, "vs_instanced.txt", "fs_main.txt"));
   }
 
   private void setupSpotlightSceneGraph() {
@@ -55,8 +57,6 @@ public class SecuritySpotlight {
     TransformNode scaleSpotlightPole2 = new TransformNode("Scale spotlight pole 2", Mat4Transform.scale(5f, 0.4f, 0.4f));
     ModelNode spotlightPole2Node = new ModelNode("Spotlight Pole2 ", metal);
 
-    spotlight.setPosition(new Vec3(spotlightLampBaseX, spotlightLampBaseY, spotlightLampBaseZ));
-
     spotlightRoot.addChild(spotlightPole);
      spotlightPole.addChild(makeSpotlightPole);
        makeSpotlightPole.addChild(scaleSpotlightPole);
@@ -69,16 +69,14 @@ public class SecuritySpotlight {
     spotlightRoot.update();
   }
 
+  /* Switches the lamp, and its rotation, on or off */
   public void toggle(){
-    spotlight.toggle();
     spotlightActive = !spotlightActive;
   }
 
   private void rotateSpotlight() {
-    double deltaTime = getSeconds() - lastTime;
-    rotateSpotlightAngle += SPOTLIGHT_ROTATION_SPEED * deltaTime;
+    rotateSpotlightAngle += SPOTLIGHT_ROTATION_SPEED * clock.getStep();
     rotateSpotlight.setTransform(Mat4Transform.rotateAroundY(rotateSpotlightAngle));
-    spotlightRoot.update();
 
     float xDir = (float)Math.sin(Math.toRadians(rotateSpotlightAngle + 90));
     float zDir = (float)Math.cos(Math.toRadians(rotateSpotlightAngle + 90));
@@ -89,7 +87,9 @@ public class SecuritySpotlight {
     xDir = xDir * horizontalComponent;
     zDir = zDir * horizontalComponent;
 
-    spotlight.setDirection(xDir, -1, zDir);
+    lampDirection.x = xDir;
+    lampDirection.y = -1;
+    lampDirection.z = zDir;
     rotateSpotlightLamp();
   }
 
@@ -98,26 +98,46 @@ public class SecuritySpotlight {
     float y = spotlightLampBaseY;
     float z = spotlightLampBaseZ - 3.75f*(float)(Math.cos(Math.toRadians(rotateSpotlightAngle - 90)));
 
-    spotlight.setPosition(x, y, z);
-    spotlight.setRotation(0, rotateSpotlightAngle, SPOTLIGHT_ROTATION_Z);
+    lampPosition.x = x;
+    lampPosition.y = y;
+    lampPosition.z = z;
+    lampRotation.x = 0;
+    lampRotation.y = rotateSpotlightAngle;
+    lampRotation.z = SPOTLIGHT_ROTATION_Z;
   }
 
    //TIME------
-  private double lastTime;
-  private double programStartTime;
+  private FrameClock clock;
 
-  private double getSeconds() {
-    return System.currentTimeMillis()/1000.0;
-  }
-
-
-  public void draw(GL3 gl){
+  /* Advances the rotation; call once per tick, then update getRoot() */
+  public void update(){
     if (spotlightActive) {
       rotateSpotlight();
     }
-    lastTime = getSeconds();
+  }
+
+  public boolean isActive() {
+    return spotlightActive;
+  }
+
+  public Vec3 getLampPosition() {
+    return lampPosition;
+  }
+
+  public Vec3 getLampDirection() {
+    return lampDirection;
+  }
+
+  public Vec3 getLampRotation() {
+    return lampRotation;
+  }
+
+  public SGNode getRoot(){
+    return spotlightRoot;
+  }
 
-    spotlightRoot.draw(gl);
+  public void draw(RenderQueue queue){
+    spotlightRoot.draw(queue);
   }
 
   /* Clean up memory, if necessary */
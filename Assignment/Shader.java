@@ -3,8 +3,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import com.jogamp.opengl.*;
-import com.jogamp.opengl.util.glsl.*;  
   
 public class Shader {
   
@@ -13,6 +14,8 @@ public class Shader {
   private int ID;
   private String vertexShaderSource;
   private String fragmentShaderSource;
+  private HashMap<String, Integer> uniformLocations = new HashMap<String, Integer>();
+  private float[][] uniformValues;  // last value sent to each location, so unchanged values are not re-sent
   
   /* The constructor */
   public Shader(GL3 gl, String vertexPath, String fragmentPath) {
@@ -25,6 +28,19 @@ public class Shader {
     }
     if (DISPLAY_SHADERS) display();
     ID = compileAndLink(gl);
+    setUpProgram(gl);
+  }
+  
+  /* For a program that has already been compiled and linked */
+  public Shader(GL3 gl, int program) {
+    ID = program;
+    setUpProgram(gl);
+  }
+  
+  private void setUpProgram(GL3 gl) {
+    findUniformLocations(gl);
+    bindUniformBlock(gl, FrameUniforms.CAMERA_BLOCK, FrameUniforms.CAMERA_BINDING);
+    bindUniformBlock(gl, FrameUniforms.LIGHT_BLOCK, FrameUniforms.LIGHT_BINDING);
   }
   
   public int getID() {
@@ -32,42 +48,148 @@ public class Shader {
   }
   
   public void use(GL3 gl) {
-    gl.glUseProgram(ID);
+    GLStateCache.useProgram(gl, ID);
+  }
+  
+  /* Returns the location of a uniform, looking it up in the table built after linking.
+     Names not in the table (e.g. later elements of an array) are queried once and then remembered. */
+  public int getUniformLocation(GL3 gl, String name) {
+    Integer location = uniformLocations.get(name);
+    if (location == null) {
+      location = gl.glGetUniformLocation(ID, name);
+      uniformLocations.put(name, location);
+    }
+    return location;
   }
   
   public void setInt(GL3 gl, String name, int value) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform1i(location, value);
+    setInt(gl, getUniformLocation(gl, name), value);
   }
   
   public void setFloat(GL3 gl, String name, float value) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform1f(location, value);
+    setFloat(gl, getUniformLocation(gl, name), value);
   }
   
   public void setFloat(GL3 gl, String name, float f1, float f2) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform2f(location, f1, f2);
+    setFloat(gl, getUniformLocation(gl, name), f1, f2);
   }
   
   public void setFloat(GL3 gl, String name, float f1, float f2, float f3) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform3f(location, f1, f2, f3);
+    setFloat(gl, getUniformLocation(gl, name), f1, f2, f3);
   }
   
   public void setFloat(GL3 gl, String name, float f1, float f2, float f3, float f4) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform4f(location, f1, f2, f3, f4);
+    setFloat(gl, getUniformLocation(gl, name), f1, f2, f3, f4);
   }
   
   public void setFloatArray(GL3 gl, String name, float[] f) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniformMatrix4fv(location, 1, false, f, 0);
+    setFloatArray(gl, getUniformLocation(gl, name), f);
   }
   
   public void setVec3(GL3 gl, String name, Vec3 v) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform3f(location, v.x, v.y, v.z);
+    setVec3(gl, getUniformLocation(gl, name), v);
+  }
+  
+  public void setMat3Array(GL3 gl, String name, float[] f) {
+    setMat3Array(gl, getUniformLocation(gl, name), f);
+  }
+  
+  /* Setters taking a location from getUniformLocation, for callers that resolve their uniforms once */
+  
+  public void setInt(GL3 gl, int location, int value) {
+    if (changed(location, Float.intBitsToFloat(value), 0, 0, 0, 1)) gl.glUniform1i(location, value);
+  }
+  
+  public void setFloat(GL3 gl, int location, float value) {
+    if (changed(location, value, 0, 0, 0, 1)) gl.glUniform1f(location, value);
+  }
+  
+  public void setFloat(GL3 gl, int location, float f1, float f2) {
+    if (changed(location, f1, f2, 0, 0, 2)) gl.glUniform2f(location, f1, f2);
+  }
+  
+  public void setFloat(GL3 gl, int location, float f1, float f2, float f3) {
+    if (changed(location, f1, f2, f3, 0, 3)) gl.glUniform3f(location, f1, f2, f3);
+  }
+  
+  public void setFloat(GL3 gl, int location, float f1, float f2, float f3, float f4) {
+    if (changed(location, f1, f2, f3, f4, 4)) gl.glUniform4f(location, f1, f2, f3, f4);
+  }
+  
+  public void setFloatArray(GL3 gl, int location, float[] f) {
+    if (changed(location, f)) gl.glUniformMatrix4fv(location, 1, false, f, 0);
+  }
+  
+  public void setVec3(GL3 gl, int location, Vec3 v) {
+    if (changed(location, v.x, v.y, v.z, 0, 3)) gl.glUniform3f(location, v.x, v.y, v.z);
+  }
+  
+  public void setMat3Array(GL3 gl, int location, float[] f) {  // 9 floats, column by row
+    if (changed(location, f)) gl.glUniformMatrix3fv(location, 1, false, f, 0);
+  }
+  
+  /* Compares against, and then records, the last value sent to a location.
+     Values are compared bit for bit, so that e.g. NaN and -0 are always sent correctly. */
+  private boolean changed(int location, float f1, float f2, float f3, float f4, int n) {
+    if (location == -1) {   // not an active uniform, so GL would ignore the call anyway
+      GLStateCache.countSkipped();
+      return false;
+    }
+    float[] last = lastValue(location, n);
+    if (last == null) {
+      GLStateCache.countIssued();
+      return true;
+    }
+    if (same(last[0], f1) && same(last[1], f2) && same(last[2], f3) && same(last[3], f4)) {
+      GLStateCache.countSkipped();
+      return false;
+    }
+    last[0] = f1;
+    last[1] = f2;
+    last[2] = f3;
+    last[3] = f4;
+    GLStateCache.countIssued();
+    return true;
+  }
+  
+  private boolean changed(int location, float[] f) {
+    if (location == -1) {
+      GLStateCache.countSkipped();
+      return false;
+    }
+    float[] last = lastValue(location, f.length);
+    if (last == null) {
+      GLStateCache.countIssued();
+      return true;
+    }
+    boolean same = true;
+    for (int i=0; i<f.length && same; ++i) {
+      same = same(last[i], f[i]);
+    }
+    if (same) {
+      GLStateCache.countSkipped();
+      return false;
+    }
+    System.arraycopy(f, 0, last, 0, f.length);
+    GLStateCache.countIssued();
+    return true;
+  }
+  
+  /* Returns the stored value for a location, or null if the location is not tracked */
+  private float[] lastValue(int location, int n) {
+    if (location < 0 || location >= uniformValues.length) return null;
+    float[] last = uniformValues[location];
+    if (last == null || last.length < n) {
+      // first use of this location: NaN bits that no real value will match
+      last = new float[Math.max(n, 4)];
+      java.util.Arrays.fill(last, Float.intBitsToFloat(0x7fc00001));
+      uniformValues[location] = last;
+    }
+    return last;
+  }
+  
+  private static boolean same(float a, float b) {
+    return Float.floatToRawIntBits(a) == Float.floatToRawIntBits(b);
   }
   
   private void display() {
@@ -77,26 +199,87 @@ public class Shader {
     System.out.println(fragmentShaderSource);
   }
   
+  /* Compiles and links with GL directly, printing GL's log for any stage that fails */
   private int compileAndLink(GL3 gl) {
-    String[][] sources = new String[1][1];
-    sources[0] = new String[]{ vertexShaderSource };
-    ShaderCode vertexShaderCode = new ShaderCode(GL3.GL_VERTEX_SHADER, sources.length, sources);
-    boolean compiled = vertexShaderCode.compile(gl, System.err);
-    if (!compiled)
-      System.err.println("[error] Unable to compile vertex shader: " + sources);
-    sources[0] = new String[]{ fragmentShaderSource };
-    ShaderCode fragmentShaderCode = new ShaderCode(GL3.GL_FRAGMENT_SHADER, sources.length, sources);
-    compiled = fragmentShaderCode.compile(gl, System.err);
-    if (!compiled)
-      System.err.println("[error] Unable to compile fragment shader: " + sources);
-    ShaderProgram program = new ShaderProgram();
-    program.init(gl);
-    program.add(vertexShaderCode);
-    program.add(fragmentShaderCode);
-    program.link(gl, System.out);
-    if (!program.validateProgram(gl, System.out))
-      System.err.println("[error] Unable to link program");
-    return program.program();
+    int vertexShader = compile(gl, GL3.GL_VERTEX_SHADER, vertexShaderSource, "vertex");
+    int fragmentShader = compile(gl, GL3.GL_FRAGMENT_SHADER, fragmentShaderSource, "fragment");
+    int program = gl.glCreateProgram();
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    gl.glLinkProgram(program);
+    int[] status = new int[1];
+    gl.glGetProgramiv(program, GL3.GL_LINK_STATUS, status, 0);
+    if (status[0] == GL.GL_FALSE)
+      System.err.println("[error] Unable to link program: " + programLog(gl, program));
+    gl.glValidateProgram(program);
+    gl.glGetProgramiv(program, GL3.GL_VALIDATE_STATUS, status, 0);
+    if (status[0] == GL.GL_FALSE)
+      System.err.println("[error] Program is not valid: " + programLog(gl, program));
+    // The linked program no longer needs the shaders
+    gl.glDetachShader(program, vertexShader);
+    gl.glDetachShader(program, fragmentShader);
+    gl.glDeleteShader(vertexShader);
+    gl.glDeleteShader(fragmentShader);
+    return program;
+  }
+  
+  private static int compile(GL3 gl, int type, String source, String stage) {
+    int shader = gl.glCreateShader(type);
+    gl.glShaderSource(shader, 1, new String[] {source}, new int[] {source.length()}, 0);
+    gl.glCompileShader(shader);
+    int[] status = new int[1];
+    gl.glGetShaderiv(shader, GL3.GL_COMPILE_STATUS, status, 0);
+    if (status[0] == GL.GL_FALSE)
+      System.err.println("[error] Unable to compile " + stage + " shader: " + shaderLog(gl, shader));
+    return shader;
+  }
+  
+  private static String shaderLog(GL3 gl, int shader) {
+    int[] length = new int[1];
+    gl.glGetShaderiv(shader, GL3.GL_INFO_LOG_LENGTH, length, 0);
+    byte[] log = new byte[Math.max(length[0], 1)];
+    gl.glGetShaderInfoLog(shader, log.length, length, 0, log, 0);
+    return new String(log, 0, length[0], StandardCharsets.US_ASCII);
+  }
+  
+  private static String programLog(GL3 gl, int program) {
+    int[] length = new int[1];
+    gl.glGetProgramiv(program, GL3.GL_INFO_LOG_LENGTH, length, 0);
+    byte[] log = new byte[Math.max(length[0], 1)];
+    gl.glGetProgramInfoLog(program, log.length, length, 0, log, 0);
+    return new String(log, 0, length[0], StandardCharsets.US_ASCII);
+  }
+  
+  /* Connects a uniform block, if the program uses it, to the buffer at the given binding point */
+  private void bindUniformBlock(GL3 gl, String blockName, int binding) {
+    int index = gl.glGetUniformBlockIndex(ID, blockName);
+    if (index != GL3.GL_INVALID_INDEX) {
+      gl.glUniformBlockBinding(ID, index, binding);
+    }
+  }
+  
+  /* Builds the name to location table from the active uniforms of the linked program */
+  private void findUniformLocations(GL3 gl) {
+    int[] count = new int[1];
+    int[] maxLength = new int[1];
+    gl.glGetProgramiv(ID, GL3.GL_ACTIVE_UNIFORMS, count, 0);
+    gl.glGetProgramiv(ID, GL3.GL_ACTIVE_UNIFORM_MAX_LENGTH, maxLength, 0);
+    byte[] nameBytes = new byte[Math.max(maxLength[0], 1)];
+    int[] length = new int[1];
+    int[] size = new int[1];
+    int[] type = new int[1];
+    int maxLocation = -1;
+    for (int i=0; i<count[0]; ++i) {
+      gl.glGetActiveUniform(ID, i, nameBytes.length, length, 0, size, 0, type, 0, nameBytes, 0);
+      String name = new String(nameBytes, 0, length[0], StandardCharsets.US_ASCII);
+      int location = gl.glGetUniformLocation(ID, name);
+      uniformLocations.put(name, location);
+      if (name.endsWith("[0]")) {   // arrays are also addressed by their bare name
+        uniformLocations.put(name.substring(0, name.length()-3), location);
+      }
+      maxLocation = Math.max(maxLocation, location);
+    }
+    uniformValues = new float[maxLocation+1][];
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/* Runs the animations on a thread of their own, so that a slow frame or a pause on the render thread
+   does not hold them up, and the two can run on separate cores. The thread ticks whenever the
+   FrameClock has a whole step due, TICK_RATE times a second of simulated time, and sleeps between.
+
+   After each tick the simulation copies what the render thread needs into a FrameState and
+   publishes it. There are three states: one the render thread is drawing, one the simulation is
+   writing, and one holding the latest tick published. Publishing, and taking the latest, swap the
+   index of that third state with an atomic exchange, so neither thread waits for the other and
+   a state is never written while it is being drawn.
+
+   Once started, the snowman, the security spotlight, the background's animation and their scene
+   graphs belong to the simulation thread. Other threads change them by passing a command to post. */
+
+public class Simulation {
+
+  public static final int TICK_RATE = 60;   // the step to make the FrameClock with
+  private static final int FRESH = 4;   // set with the latest index until the render thread takes it
+
+  private final FrameClock clock;
+  private final Snowman snowman;
+  private final SecuritySpotlight securitySpotlight;
+  private final AnimatedModel background;
+  private final SGNode[] sceneGraphs;
+  private final ModelNode[] modelNodes;
+
+  private final FrameState[] states = new FrameState[3];
+  private final AtomicInteger latest = new AtomicInteger(1);
+  private int writing = 2;   // only used by the simulation thread
+  private int published = -1;   // the state written last, which the next one is drawn from; simulation thread only
+  private int drawing = 0;   // only used by the render thread
+
+  private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
+  private volatile Thread thread;
+  private volatile boolean running = false;
+
+  public Simulation(FrameClock clock, Snowman snowman, SecuritySpotlight securitySpotlight, AnimatedModel background) {
+    this.clock = clock;
+    this.snowman = snowman;
+    this.securitySpotlight = securitySpotlight;
+    this.background = background;
+    sceneGraphs = new SGNode[] {snowman.getRoot(), securitySpotlight.getRoot()};
+
+    ArrayList<ModelNode> nodes = new ArrayList<ModelNode>();
+    int[] graphStarts = new int[sceneGraphs.length+1];
+    for (int g=0; g<sceneGraphs.length; ++g) {
+      graphStarts[g] = nodes.size();
+      sceneGraphs[g].collectModelNodes(nodes);
+    }
+    graphStarts[sceneGraphs.length] = nodes.size();
+    modelNodes = nodes.toArray(new ModelNode[nodes.size()]);
+    Model[] models = new Model[modelNodes.length];
+    for (int i=0; i<models.length; ++i) {
+      models[i] = modelNodes[i].getModel();
+    }
+    for (int i=0; i<states.length; ++i) {
+      states[i] = new FrameState(models, graphStarts);
+    }
+
+    //Publish the starting state, so there is something to draw before the first tick
+    SGNode.updateAll(ForkJoinPool.commonPool(), sceneGraphs);
+    publish();
+  }
+
+  public void start() {
+    running = true;
+    thread = new Thread(this::run, "Simulation");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /* Stops the thread, and waits for it to finish its tick */
+  public void stop() {
+    running = false;
+    if (thread == null) return;
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /* Runs a command on the simulation thread before its next tick; the thread is woken to run it */
+  public void post(Runnable command) {
+    commands.add(command);
+    Thread t = thread;
+    if (t != null) LockSupport.unpark(t);
+  }
+
+  /* The state published by the most recent tick. It stays valid until the next call. */
+  public FrameState getLatest() {
+    if ((latest.get() & FRESH) != 0) {
+      drawing = latest.getAndSet(drawing) & 3;
+    }
+    return states[drawing];
+  }
+
+  private void run() {
+    while (running) {
+      for (Runnable command = commands.poll(); command != null; command = commands.poll()) {
+        command.run();
+      }
+      for (int steps = clock.advance(); steps > 0 && running; --steps) {
+        tick();
+      }
+      LockSupport.parkNanos(clock.getNanosToNextStep());
+    }
+  }
+
+  private void tick() {
+    clock.step();
+    snowman.update();
+    securitySpotlight.update();
+    background.animate();
+    SGNode.updateAll(ForkJoinPool.commonPool(), sceneGraphs);
+    publish();
+  }
+
+  private void publish() {
+    FrameState previous = (published >= 0) ? states[published] : null;
+    states[writing].capture(modelNodes, sceneGraphs, securitySpotlight, background, clock.getTime(), clock.getTickNanos(), previous);
+    published = writing;
+    writing = latest.getAndSet(writing | FRESH) & 3;
+  }
+
+}
@@ -47,52 +47,73 @@ public class Snowman {
   private float rotateAllAngleStart = 0, rotateAllAngle = rotateAllAngleStart;
   private float rollHeadAngleStart = 0, rollHeadAngle = rollHeadAngleStart;
 
-  public Snowman(GL3 gl, Camera camera, Light mainLight, Spotlight spotlight){
+  public Snowman(GL3 gl, Camera camera, Light mainLight, Spotlight spotlight, FrameClock clock){
+   this.clock = clock;
    setupModels(gl, camera, mainLight, spotlight);
    setupSnowmanSceneGraph();
   }
 
   private void setupModels(GL3 gl, Camera camera, Light mainLight, Spotlight spotlight) {
-    int[] snowTexture = TextureLibrary.loadTexture(gl, "textures/snow.jpg");
-    int[] stoneRoughTexture = TextureLibrary.loadTexture(gl, "textures/stone.jpg");
-    int[] stoneSmoothTexture = TextureLibrary.loadTexture(gl, "textures/stoneSmooth.jpg");
-    int[] topHatMainTexture = TextureLibrary.loadTexture(gl, "textures/hatMain.jpg");
-    int[] topHatBandTexture = TextureLibrary.loadTexture(gl, "textures/ribbon.jpg");
+    //All the snowman's textures are packed into one, so the whole snowman is drawn without changing texture
+    TextureAtlas atlas = TextureLibrary.loadAtlas(gl, "textures/snow.jpg", "textures/stone.jpg", "textures/stoneSmooth.jpg",
+                                                      "textures/hatMain.jpg", "textures/ribbon.jpg");
+    int[] atlasTexture = atlas.getTextureId();
 
     //------------Body & Head--------------
 
-    Mesh mesh = new Mesh(gl, Sphere.vertices.clone(), Sphere.indices.clone());
+    Mesh mesh = MeshLibrary.get(gl, Sphere.vertices, Sphere.indices);
     Shader shader = new Shader(gl, "vs_main.txt", "fs_main.txt");
     Material material = new Material(new Vec3(0.7f, 0.7f, 0.7f), new Vec3(0.7f, 0.7f, 0.7f), new Vec3(0.2f, 0.2f, 0.2f), 32.0f);
     Mat4 modelMatrix = new Mat4(1);
-    snowball = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, snowTexture);
+    snowball = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, atlasTexture);
+    snowball.setUVTransform(atlas.getUVTransform("textures/snow.jpg"));
 
     //------------Nose & Mouth---------------
 
     //Smoth, polished stone, so we should have a greater specular
     material = new Material(new Vec3(0.7f, 0.7f, 0.7f), new Vec3(0.7f, 0.7f, 0.7f), new Vec3(0.7f, 0.7f, 0.7f), 32.0f);
-    smoothStone = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, stoneSmoothTexture);
+    smoothStone = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, atlasTexture);
+    smoothStone.setUVTransform(atlas.getUVTransform("textures/stoneSmooth.jpg"));
 
     //------------Eyes and buttons---------------
 
     //Rough stone, so less specular
     material = new Material(new Vec3(0.85f, 0.85f, 0.85f), new Vec3(0.7f, 0.7f, 0.7f), new Vec3(0, 0, 0), 32.0f);
-    roughStone = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, stoneRoughTexture);
+    roughStone = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, atlasTexture);
+    roughStone.setUVTransform(atlas.getUVTransform("textures/stone.jpg"));
+
+    //Small or distant balls are drawn with fewer triangles
+    MeshLOD sphereLOD = MeshLOD.sphere(gl);
+    snowball.setLOD(sphereLOD);
+    smoothStone.setLOD(sphereLOD);
+    roughStone.setLOD(sphereLOD);
 
     //------------Top hat cylinders
 
-    mesh = new Mesh(gl, Cube.vertices.clone(), Cube.indices.clone());
+    mesh = MeshLibrary.get(gl, Cube.vertices, Cube.indices);
     shader = new Shader(gl, "vs_main.txt", "fs_main.txt");
     //Top hat material should have little specular
     material = new Material(new Vec3(1, 1, 1), new Vec3(1, 1, 1), new Vec3(0.1f, 0.1f, 0.1f), 32.0f);
-    topHatMain = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, topHatMainTexture);
+    topHatMain = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, atlasTexture);
+    topHatMain.setUVTransform(atlas.getUVTransform("textures/hatMain.jpg"));
 
     //Top hat ribon should have lots of specular
     material = new Material(new Vec3(0.5f, 0.5f, 0.5f), new Vec3(0.7f, 0.7f, 0.7f), new Vec3(0.9f, 0.9f, 0.9f), 32.0f);
-    topHatRibbon = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, topHatBandTexture);
+    topHatRibbon = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, atlasTexture);
+    topHatRibbon.setUVTransform(atlas.getUVTransform("textures/ribbon.jpg"));
 
     material = new Material(new Vec3(0.8f, 0.8f, 0.5f), new Vec3(0.8f, 0.8f, 0.5f), new Vec3(0.9f, 0.9f, 0.9f), 32.0f);
-    topHatLetter = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, topHatBandTexture);
+    topHatLetter = new Model(gl, camera, mainLight, spotlight, shader, material, modelMatrix, mesh, atlasTexture);
+    topHatLetter.setUVTransform(atlas.getUVTransform("textures/ribbon.jpg"));
+
+    //The buttons, eyes, letter lines etc. repeat the same model, so allow them to be drawn instanced
+    Shader instancedShader = new Shader(gl, "vs_instanced.txt", "fs_main.txt");
+    snowball.setInstancedShader(instancedShader);
+    smoothStone.setInstancedShader(instancedShader);
+    roughStone.setInstancedShader(instancedShader);
+    topHatMain.setInstancedShader(instancedShader);
+    topHatRibbon.setInstancedShader(instancedShader);
+    topHatLetter.setInstancedShader(instancedShader);
   }
 
   private void setupSnowmanSceneGraph() {
@@ -307,14 +328,14 @@ public class Snowman {
         } else {
           //If an animation was selected, and we aren't already animating
           this.currentAnimation = newAnimationSelection;
-          animationStartTime = getSeconds(); //Reset the start time so the animation doesn't start with a jump
+          animationStartTime = clock.getTime(); //Reset the start time so the animation doesn't start with a jump
         }
       }
     }
   }
 
   private void animate() {
-    elapsedTime = getSeconds() - animationStartTime;
+    elapsedTime = clock.getTime() - animationStartTime;
 
     //If we're not stopping, and not yet at full speed
     if (!stoppingAnimation && currentAnimationSpeed < MAXIMUM_ANIMATION_SPEED) {
@@ -369,7 +390,6 @@ public class Snowman {
         slide();
         break;
     }
-    snowmanRoot.update(); // IMPORTANT – the scene graph has changed
   }
 
   private void rock() {
@@ -490,7 +510,7 @@ public class Snowman {
 
   public void resetAnimations() {
     stoppingAnimation = false;
-    animationStartTime = getSeconds();
+    animationStartTime = clock.getTime();
 
     animationSpeedAtTimeOfStop = -1;
     currentAnimationSpeed = 0;
@@ -507,13 +527,10 @@ public class Snowman {
   }
 
   //TIME------
+  private FrameClock clock;
   private double elapsedTime;
   private double animationStartTime = -1;
 
-  private double getSeconds() {
-    return System.currentTimeMillis()/1000.0;
-  }
-
   /* Clean up memory, if necessary */
   public void dispose(GLAutoDrawable drawable) {
     GL3 gl = drawable.getGL().getGL3();
@@ -525,11 +542,19 @@ public class Snowman {
     topHatLetter.dispose(gl);
   }
 
-  public void draw(GL3 gl){
+  /* Advances the current animation; call once per tick, then update getRoot() */
+  public void update(){
     if (currentAnimation != AnimationSelections.None) {
       animate();
     }
-    snowmanRoot.draw(gl);
+  }
+
+  public SGNode getRoot(){
+    return snowmanRoot;
+  }
+
+  public void draw(RenderQueue queue){
+    snowmanRoot.draw(queue);
   }
 
 }
@@ -8,30 +8,32 @@ public final class Sphere {
   private static final int XLONG = 30;
   private static final int YLAT = 30;
   
-  public static final float[] vertices = createVertices();
-  public static final int[] indices = createIndices();
+  public static final float[] vertices = createVertices(XLONG, YLAT);
+  public static final int[] indices = createIndices(XLONG, YLAT);
 
-  private static float[] createVertices() {
+  // The same sphere at other resolutions, see MeshLOD. longitudes and latitudes are the number of
+  // vertices around and from pole to pole; the first and last of each ring are in the same place.
+  public static float[] createVertices(int longitudes, int latitudes) {
     double r = 0.5;
     int step = 8;
     //float[] 
-    float[] vertices = new float[XLONG*YLAT*step];
-    for (int j = 0; j<YLAT; ++j) {
-      double b = Math.toRadians(-90+180*(double)(j)/(YLAT-1));
-      for (int i = 0; i<XLONG; ++i) {
-        double a = Math.toRadians(360*(double)(i)/(XLONG-1));
+    float[] vertices = new float[longitudes*latitudes*step];
+    for (int j = 0; j<latitudes; ++j) {
+      double b = Math.toRadians(-90+180*(double)(j)/(latitudes-1));
+      for (int i = 0; i<longitudes; ++i) {
+        double a = Math.toRadians(360*(double)(i)/(longitudes-1));
         double z = Math.cos(b) * Math.cos(a);
         double x = Math.cos(b) * Math.sin(a);
         double y = Math.sin(b);
-        int base = j*XLONG*step;
+        int base = j*longitudes*step;
         vertices[base + i*step+0] = (float)(r*x);
         vertices[base + i*step+1] = (float)(r*y);
         vertices[base + i*step+2] = (float)(r*z); 
         vertices[base + i*step+3] = (float)x;
         vertices[base + i*step+4] = (float)y;
         vertices[base + i*step+5] = (float)z;
-        vertices[base + i*step+6] = (float)(i)/(float)(XLONG-1);
-        vertices[base + i*step+7] = (float)(j)/(float)(YLAT-1);
+        vertices[base + i*step+6] = (float)(i)/(float)(longitudes-1);
+        vertices[base + i*step+7] = (float)(j)/(float)(latitudes-1);
       }
     }
     return vertices;
@@ -42,17 +44,17 @@ public final class Sphere {
     //}
   }
   
-  private static int[] createIndices() {
-    int[] indices = new int[(XLONG-1)*(YLAT-1)*6];
-    for (int j = 0; j<YLAT-1; ++j) {
-      for (int i = 0; i<XLONG-1; ++i) {
-        int base = j*(XLONG-1)*6;
-        indices[base + i*6+0] = j*XLONG+i;
-        indices[base + i*6+1] = j*XLONG+i+1;
-        indices[base + i*6+2] = (j+1)*XLONG+i+1;
-        indices[base + i*6+3] = j*XLONG+i;
-        indices[base + i*6+4] = (j+1)*XLONG+i+1;
-        indices[base + i*6+5] = (j+1)*XLONG+i;
+  public static int[] createIndices(int longitudes, int latitudes) {
+    int[] indices = new int[(longitudes-1)*(latitudes-1)*6];
+    for (int j = 0; j<latitudes-1; ++j) {
+      for (int i = 0; i<longitudes-1; ++i) {
+        int base = j*(longitudes-1)*6;
+        indices[base + i*6+0] = j*longitudes+i;
+        indices[base + i*6+1] = j*longitudes+i+1;
+        indices[base + i*6+2] = (j+1)*longitudes+i+1;
+        indices[base + i*6+3] = j*longitudes+i;
+        indices[base + i*6+4] = (j+1)*longitudes+i+1;
+        indices[base + i*6+5] = (j+1)*longitudes+i;
       }
     }
     return indices;
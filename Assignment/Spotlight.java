@@ -9,6 +9,7 @@ public class Spotlight extends Light {
   private Vec3 rotation = new Vec3(1, 1, 1);
   private float cutoff;
   private float outerCutoff;
+  private Mat4 step = new Mat4(1);  // scratch for building the model matrix
 
   public Spotlight(GL3 gl, Vec3 ambient, Vec3 diffuse, Vec3 specular, float cutoff, float outerCutoff) {
     super(gl, ambient, diffuse, specular);
@@ -26,6 +27,10 @@ public class Spotlight extends Light {
     changeMaterialColourIntensities();
   }
 
+  public boolean isOn() {
+    return intensity != 0;
+  }
+
   public void setDirection(float x, float y, float z) {
     direction.x = x;
     direction.y = y;
@@ -56,11 +61,10 @@ public class Spotlight extends Light {
 
   @Override
   public void render(GL3 gl) {
-    Mat4 model = new Mat4(1);
-    model = Mat4.multiply(Mat4Transform.scale(0.6f,0.1f,0.6f), model);
-    model = Mat4.multiply(Mat4Transform.rotateAroundZ(rotation.z), model);
-    model = Mat4.multiply(Mat4Transform.rotateAroundY(rotation.y), model);
-    model = Mat4.multiply(Mat4Transform.translate(position), model);
+    Mat4Transform.scaleInto(0.6f,0.1f,0.6f, model);
+    model.premul(Mat4Transform.rotateAroundZInto(rotation.z, step));
+    model.premul(Mat4Transform.rotateAroundYInto(rotation.y, step));
+    model.premul(Mat4Transform.translateInto(position.x, position.y, position.z, step));
     renderModel(gl, model);
   }
 
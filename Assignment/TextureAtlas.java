@@ -0,0 +1,134 @@
+/* Several images packed into one texture, so that models using any of them can be drawn without
+   binding another texture. Made with TextureLibrary.loadAtlas.
+
+   Each image keeps its own texture coordinates from 0 to 1; a model using it passes the image's
+   UV transform to Model.setUVTransform, and the vertex shader maps the coordinates into the image's
+   region. Each region has a border of PADDING texels copied from the image's edges, so filtering
+   and the smaller mipmaps do not pick up colour from the next image. Images cannot repeat across
+   a model, so this only suits meshes whose coordinates stay within 0 to 1. */
+
+public final class TextureAtlas {
+
+  public static final int PADDING = 8;
+  public static final int MAX_MIP_LEVEL = 3;   // below this the borders are less than a texel wide
+  public static final int MAX_SIZE = 4096;
+
+  private final String[] names;
+  private final int[] widths, heights;
+  private final int[] x, y;   // where each image starts, inside its border
+  private final int width, height;
+  private int[] textureId;
+
+  /* Packs images of the given sizes. Throws IllegalArgumentException if they cannot fit in MAX_SIZE. */
+  public TextureAtlas(String[] names, int[] widths, int[] heights) {
+    RectanglePacker.Packing packing = RectanglePacker.pack(widths, heights, PADDING, MAX_SIZE);
+    if (packing == null) throw new IllegalArgumentException("Images do not fit in a " + MAX_SIZE + " texture atlas");
+    this.names = names.clone();
+    this.widths = widths.clone();
+    this.heights = heights.clone();
+    width = packing.width;
+    height = packing.height;
+    x = new int[names.length];
+    y = new int[names.length];
+    for (int i=0; i<names.length; ++i) {
+      x[i] = packing.x[i] + PADDING;
+      y[i] = packing.y[i] + PADDING;
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getImageCount() {
+    return names.length;
+  }
+
+  public String getName(int image) {
+    return names[image];
+  }
+
+  public int getImageWidth(int image) {
+    return widths[image];
+  }
+
+  public int getImageHeight(int image) {
+    return heights[image];
+  }
+
+  public int getImageX(int image) {
+    return x[image];
+  }
+
+  public int getImageY(int image) {
+    return y[image];
+  }
+
+  /* The handle of the texture holding the atlas, as TextureLibrary.loadTexture returns */
+  public int[] getTextureId() {
+    return textureId;
+  }
+
+  void setTextureId(int[] textureId) {
+    this.textureId = textureId;
+  }
+
+  /* The part of the atlas covered by images rather than borders or empty space, from 0 to 1 */
+  public float getEfficiency() {
+    long used = 0;
+    for (int i=0; i<names.length; ++i) {
+      used += (long)widths[i]*heights[i];
+    }
+    return (float)used / ((long)width*height);
+  }
+
+  /* Scale u, scale v, offset u, offset v: a texture coordinate t within the image is at t*scale + offset in the atlas */
+  public float[] getUVTransform(String name) {
+    for (int i=0; i<names.length; ++i) {
+      if (names[i].equals(name)) return getUVTransform(i);
+    }
+    throw new IllegalArgumentException(name + " is not in the atlas");
+  }
+
+  public float[] getUVTransform(int image) {
+    return new float[] {(float)widths[image]/width, (float)heights[image]/height,
+                        (float)x[image]/width, (float)y[image]/height};
+  }
+
+  /* A string that differs whenever the images or their places do, for naming cached copies of the atlas */
+  public String getLayoutKey() {
+    StringBuilder key = new StringBuilder().append(width).append('x').append(height);
+    for (int i=0; i<names.length; ++i) {
+      key.append(' ').append(names[i]).append(' ').append(widths[i]).append('x').append(heights[i])
+         .append('@').append(x[i]).append(',').append(y[i]);
+    }
+    return key.toString();
+  }
+
+  /* The atlas as RGB, 3 bytes a texel, from the images as RGB in the order of the names.
+     A null image, one that could not be read, is left grey. Empty space is black. */
+  public byte[] compose(byte[][] images) {
+    byte[] atlas = new byte[width*height*3];
+    for (int i=0; i<names.length; ++i) {
+      byte[] image = images[i];
+      int w = widths[i], h = heights[i];
+      for (int row=-PADDING; row<h+PADDING; ++row) {
+        int sourceRow = Math.min(Math.max(row, 0), h-1);   // borders repeat the edge
+        int destination = ((y[i]+row)*width + x[i]-PADDING)*3;
+        for (int column=-PADDING; column<w+PADDING; ++column) {
+          int sourceColumn = Math.min(Math.max(column, 0), w-1);
+          int source = (sourceRow*w + sourceColumn)*3;
+          for (int c=0; c<3; ++c) {
+            atlas[destination++] = (image != null) ? image[source+c] : (byte)128;
+          }
+        }
+      }
+    }
+    return atlas;
+  }
+
+}
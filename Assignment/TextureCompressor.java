@@ -0,0 +1,289 @@
+import java.util.stream.IntStream;
+
+/* Makes mipmaps on the CPU and compresses them to BC1 (also called DXT1), which stores each
+   4x4 block of texels in 8 bytes: two RGB565 end colours and a 2 bit index per texel choosing
+   one of the end colours or one of the two colours a third and two thirds of the way between.
+   That is 4 bits a texel, against the 32 an RGB texture usually takes on the GPU.
+
+   Images are RGB, 3 bytes a texel, rows in the order GL takes them. Rows of mipmaps and of
+   blocks are processed in parallel, so large images use every core.
+
+   Each block's end colours are first placed along the block's principal axis, then refined
+   by least squares for the indices they give, keeping whichever pair has the smaller error. */
+
+public final class TextureCompressor {
+
+  public static final int BLOCK_BYTES = 8;
+  private static final int REFINE_ITERATIONS = 2;
+
+  // Weight of the first end colour for each index, in thirds: index 0 is colour 0, 1 is colour 1
+  private static final int[] WEIGHT0 = {3, 0, 2, 1};
+
+  /* Every level from the image down to 1x1, each half the size of the one before, by averaging 2x2 texels.
+     Odd sizes round down, as GL's do, with the last row or column repeated where needed. */
+  public static byte[][] buildMipChain(byte[] rgb, int width, int height) {
+    int levels = mipLevels(width, height);
+    byte[][] chain = new byte[levels][];
+    chain[0] = rgb;
+    for (int level=1; level<levels; ++level) {
+      chain[level] = downsample(chain[level-1], mipSize(width, level-1), mipSize(height, level-1));
+    }
+    return chain;
+  }
+
+  public static int mipLevels(int width, int height) {
+    return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+  }
+
+  public static int mipSize(int size, int level) {
+    return Math.max(1, size >> level);
+  }
+
+  private static byte[] downsample(byte[] src, int width, int height) {
+    int w = Math.max(1, width/2);
+    int h = Math.max(1, height/2);
+    byte[] dst = new byte[w*h*3];
+    IntStream.range(0, h).parallel().forEach(y -> {
+      int row0 = Math.min(2*y, height-1) * width;
+      int row1 = Math.min(2*y+1, height-1) * width;
+      for (int x=0; x<w; ++x) {
+        int x0 = Math.min(2*x, width-1);
+        int x1 = Math.min(2*x+1, width-1);
+        for (int c=0; c<3; ++c) {
+          int sum = (src[(row0+x0)*3+c] & 0xFF) + (src[(row0+x1)*3+c] & 0xFF)
+                  + (src[(row1+x0)*3+c] & 0xFF) + (src[(row1+x1)*3+c] & 0xFF);
+          dst[(y*w+x)*3+c] = (byte)((sum+2) >> 2);
+        }
+      }
+    });
+    return dst;
+  }
+
+  public static int compressedSize(int width, int height) {
+    return ((width+3)/4) * ((height+3)/4) * BLOCK_BYTES;
+  }
+
+  /* Blocks in rows, each block little endian: colour 0, colour 1, then the indices, texel 0 in the low bits.
+     Blocks past the edge of the image repeat its last row and column. */
+  public static byte[] encodeBC1(byte[] rgb, int width, int height) {
+    int blocksX = (width+3)/4;
+    int blocksY = (height+3)/4;
+    byte[] out = new byte[blocksX*blocksY*BLOCK_BYTES];
+    IntStream.range(0, blocksY).parallel().forEach(by -> {
+      int[] block = new int[16*3];
+      int[] indices = new int[16];
+      int[] best = new int[16];
+      int[] palette = new int[12];
+      float[] ends = new float[6];
+      for (int bx=0; bx<blocksX; ++bx) {
+        for (int i=0; i<16; ++i) {
+          int x = Math.min(bx*4 + (i&3), width-1);
+          int y = Math.min(by*4 + (i>>2), height-1);
+          int p = (y*width+x)*3;
+          block[i*3] = rgb[p] & 0xFF;
+          block[i*3+1] = rgb[p+1] & 0xFF;
+          block[i*3+2] = rgb[p+2] & 0xFF;
+        }
+        long encoded = encodeBlock(block, indices, best, palette, ends);
+        int o = (by*blocksX+bx)*BLOCK_BYTES;
+        for (int b=0; b<BLOCK_BYTES; ++b) {
+          out[o+b] = (byte)(encoded >>> (8*b));
+        }
+      }
+    });
+    return out;
+  }
+
+  // The block as 8 bytes in a long, least significant first
+  private static long encodeBlock(int[] block, int[] indices, int[] best, int[] palette, float[] ends) {
+    principalAxisEnds(block, ends);
+    int c0 = to565(ends[0], ends[1], ends[2]);
+    int c1 = to565(ends[3], ends[4], ends[5]);
+    long bestError = chooseIndices(block, c0, c1, best, palette);
+    int best0 = c0, best1 = c1;
+    for (int iteration=0; iteration<REFINE_ITERATIONS && bestError > 0; ++iteration) {
+      System.arraycopy(best, 0, indices, 0, 16);
+      if (!leastSquaresEnds(block, indices, ends)) break;
+      c0 = to565(ends[0], ends[1], ends[2]);
+      c1 = to565(ends[3], ends[4], ends[5]);
+      long error = chooseIndices(block, c0, c1, indices, palette);
+      if (error >= bestError) break;
+      bestError = error;
+      best0 = c0;
+      best1 = c1;
+      System.arraycopy(indices, 0, best, 0, 16);
+    }
+    // Colour 0 must be the greater, else the block is read in the 3 colour mode
+    if (best0 < best1) {
+      int t = best0; best0 = best1; best1 = t;
+      for (int i=0; i<16; ++i) best[i] ^= 1;   // swaps 0 with 1 and 2 with 3
+    } else if (best0 == best1) {
+      for (int i=0; i<16; ++i) best[i] = 0;
+    }
+    long bits = 0;
+    for (int i=0; i<16; ++i) {
+      bits |= (long)best[i] << (2*i);
+    }
+    return best0 | ((long)best1 << 16) | (bits << 32);
+  }
+
+  // The extremes of the texels projected onto the direction they vary most in
+  private static void principalAxisEnds(int[] block, float[] ends) {
+    float mr = 0, mg = 0, mb = 0;
+    for (int i=0; i<16; ++i) {
+      mr += block[i*3];
+      mg += block[i*3+1];
+      mb += block[i*3+2];
+    }
+    mr /= 16; mg /= 16; mb /= 16;
+    float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+    for (int i=0; i<16; ++i) {
+      float r = block[i*3]-mr, g = block[i*3+1]-mg, b = block[i*3+2]-mb;
+      rr += r*r; rg += r*g; rb += r*b;
+      gg += g*g; gb += g*b; bb += b*b;
+    }
+    // Power iteration for the covariance's largest eigenvector, starting from the row of the
+    // channel that varies most, which cannot be at right angles to it
+    float ar = rr, ag = rg, ab = rb;
+    if (gg > rr && gg >= bb) {
+      ar = rg; ag = gg; ab = gb;
+    } else if (bb > rr && bb > gg) {
+      ar = rb; ag = gb; ab = bb;
+    }
+    if (ar == 0 && ag == 0 && ab == 0) ar = ag = ab = 1;   // a flat block
+    for (int k=0; k<8; ++k) {
+      float nr = rr*ar + rg*ag + rb*ab;
+      float ng = rg*ar + gg*ag + gb*ab;
+      float nb = rb*ar + gb*ag + bb*ab;
+      float length = Math.max(Math.abs(nr), Math.max(Math.abs(ng), Math.abs(nb)));
+      if (length < 1e-6f) break;
+      ar = nr/length; ag = ng/length; ab = nb/length;
+    }
+    float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+    for (int i=0; i<16; ++i) {
+      float t = (block[i*3]-mr)*ar + (block[i*3+1]-mg)*ag + (block[i*3+2]-mb)*ab;
+      min = Math.min(min, t);
+      max = Math.max(max, t);
+    }
+    float lengthSquared = ar*ar + ag*ag + ab*ab;
+    min /= lengthSquared;
+    max /= lengthSquared;
+    ends[0] = mr + ar*max; ends[1] = mg + ag*max; ends[2] = mb + ab*max;
+    ends[3] = mr + ar*min; ends[4] = mg + ag*min; ends[5] = mb + ab*min;
+  }
+
+  // The end colours that best fit the texels for the given indices; false if they cannot be found
+  private static boolean leastSquaresEnds(int[] block, int[] indices, float[] ends) {
+    float a = 0, b = 0, c = 0;
+    float r0 = 0, g0 = 0, b0 = 0, r1 = 0, g1 = 0, b1 = 0;
+    for (int i=0; i<16; ++i) {
+      float w0 = WEIGHT0[indices[i]]/3f;
+      float w1 = 1-w0;
+      a += w0*w0; b += w0*w1; c += w1*w1;
+      r0 += w0*block[i*3]; g0 += w0*block[i*3+1]; b0 += w0*block[i*3+2];
+      r1 += w1*block[i*3]; g1 += w1*block[i*3+1]; b1 += w1*block[i*3+2];
+    }
+    float det = a*c - b*b;
+    if (Math.abs(det) < 1e-6f) return false;
+    ends[0] = (c*r0 - b*r1) / det;
+    ends[1] = (c*g0 - b*g1) / det;
+    ends[2] = (c*b0 - b*b1) / det;
+    ends[3] = (a*r1 - b*r0) / det;
+    ends[4] = (a*g1 - b*g0) / det;
+    ends[5] = (a*b1 - b*b0) / det;
+    return true;
+  }
+
+  // Sets each texel's index to the nearest of the four colours and returns the total squared error
+  private static long chooseIndices(int[] block, int c0, int c1, int[] indices, int[] palette) {
+    palette(c0, c1, palette);
+    long total = 0;
+    for (int i=0; i<16; ++i) {
+      int bestError = Integer.MAX_VALUE;
+      for (int p=0; p<4; ++p) {
+        int dr = block[i*3]-palette[p*3], dg = block[i*3+1]-palette[p*3+1], db = block[i*3+2]-palette[p*3+2];
+        int error = dr*dr + dg*dg + db*db;
+        if (error < bestError) {
+          bestError = error;
+          indices[i] = p;
+        }
+      }
+      total += bestError;
+    }
+    return total;
+  }
+
+  // The four colours a block in 4 colour mode can use, 3 ints each
+  private static void palette(int c0, int c1, int[] palette) {
+    expand565(c0, palette, 0);
+    expand565(c1, palette, 3);
+    for (int ch=0; ch<3; ++ch) {
+      palette[6+ch] = (2*palette[ch] + palette[3+ch]) / 3;
+      palette[9+ch] = (palette[ch] + 2*palette[3+ch]) / 3;
+    }
+  }
+
+  private static int to565(float r, float g, float b) {
+    int r5 = Math.round(clamp(r) * 31 / 255f);
+    int g6 = Math.round(clamp(g) * 63 / 255f);
+    int b5 = Math.round(clamp(b) * 31 / 255f);
+    return (r5 << 11) | (g6 << 5) | b5;
+  }
+
+  private static float clamp(float v) {
+    return Math.max(0f, Math.min(255f, v));
+  }
+
+  private static void expand565(int c, int[] rgb, int offset) {
+    int r = (c >> 11) & 31, g = (c >> 5) & 63, b = c & 31;
+    rgb[offset] = (r << 3) | (r >> 2);
+    rgb[offset+1] = (g << 2) | (g >> 4);
+    rgb[offset+2] = (b << 3) | (b >> 2);
+  }
+
+  /* The RGB image a GPU would read from BC1 data, for checking quality and for GPUs that cannot read BC1 */
+  public static byte[] decodeBC1(byte[] data, int offset, int width, int height) {
+    int blocksX = (width+3)/4;
+    int blocksY = (height+3)/4;
+    byte[] rgb = new byte[width*height*3];
+    int[] palette = new int[12];
+    for (int by=0; by<blocksY; ++by) {
+      for (int bx=0; bx<blocksX; ++bx) {
+        int o = offset + (by*blocksX+bx)*BLOCK_BYTES;
+        int c0 = (data[o] & 0xFF) | (data[o+1] & 0xFF) << 8;
+        int c1 = (data[o+2] & 0xFF) | (data[o+3] & 0xFF) << 8;
+        int bits = (data[o+4] & 0xFF) | (data[o+5] & 0xFF) << 8 | (data[o+6] & 0xFF) << 16 | (data[o+7] & 0xFF) << 24;
+        palette(c0, c1, palette);
+        if (c0 <= c1) {   // 3 colour mode: index 2 is the midpoint and 3 is black
+          for (int ch=0; ch<3; ++ch) {
+            palette[6+ch] = (palette[ch] + palette[3+ch]) / 2;
+            palette[9+ch] = 0;
+          }
+        }
+        for (int i=0; i<16; ++i) {
+          int x = bx*4 + (i&3), y = by*4 + (i>>2);
+          if (x >= width || y >= height) continue;
+          int p = (bits >>> (2*i)) & 3;
+          int t = (y*width+x)*3;
+          rgb[t] = (byte)palette[p*3];
+          rgb[t+1] = (byte)palette[p*3+1];
+          rgb[t+2] = (byte)palette[p*3+2];
+        }
+      }
+    }
+    return rgb;
+  }
+
+  /* Peak signal to noise ratio between two RGB images of the same size, in dB; higher is closer */
+  public static double psnr(byte[] a, byte[] b) {
+    double sum = 0;
+    for (int i=0; i<a.length; ++i) {
+      int d = (a[i] & 0xFF) - (b[i] & 0xFF);
+      sum += d*d;
+    }
+    if (sum == 0) return Double.POSITIVE_INFINITY;
+    double mse = sum / a.length;
+    return 10*Math.log10(255.0*255.0/mse);
+  }
+
+}
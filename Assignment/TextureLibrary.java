@@ -1,11 +1,98 @@
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.*;
+import com.jogamp.common.nio.Buffers;
 import com.jogamp.opengl.*;
 import com.jogamp.opengl.util.texture.spi.JPEGImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/* Loads and shares textures. A file loaded again with the same sampler parameters gives back
+   the same handle, so it is decoded and uploaded once.
+
+   Every Model holding a texture counts as one reference to it: the Model constructor calls
+   retain and Model.dispose calls release, as for MeshLibrary. A texture that is no longer
+   referenced stays on the GPU in case it is loaded again, until the textures held go over
+   the budget, when the least recently used unreferenced ones are deleted. Referenced textures
+   are never deleted, so the budget can be exceeded by textures that are in use.
+
+   Handles are one-element arrays holding the GL texture id; the id never changes.
+
+   Where the GPU can read BC1, textures are stored compressed, with mipmaps made on the CPU by
+   TextureCompressor. The result is kept in a KTX file in a cache folder next to the image, and
+   later loads read that instead while it is newer than the image.
+
+   Images can also be packed together into a TextureAtlas with loadAtlas, which is loaded,
+   cached and shared in the same way as a single image. */
 
 public final class TextureLibrary {
     
   // only deals with rgb jpg files
+
+  // Images are decoded on worker threads, one per core, so that loading does not hold up the
+  // GL thread. Each texture is created straight away with a grey placeholder image, and the
+  // decoded image replaces it when uploadPending is next called, so models can be made with
+  // the texture id before the image is ready.
+  private static final long UPLOAD_BYTES_PER_FRAME = 8L << 20;   // at least one image is uploaded each frame
+  private static final long PLACEHOLDER_BYTES = 4;
+  private static final boolean COMPRESS = true;
+  private static final String CACHE_FOLDER = "cache";
+
+  private static final ExecutorService decoders = Executors.newFixedThreadPool(
+    Runtime.getRuntime().availableProcessors(), runnable -> {
+      Thread t = new Thread(runnable, "Texture decoder");
+      t.setDaemon(true);   // so a load in progress does not stop the program exiting
+      return t;
+    });
+  private static final ConcurrentLinkedQueue<DecodedImage> decoded = new ConcurrentLinkedQueue<DecodedImage>();
+  private static int pending = 0;   // loads not yet uploaded or failed; only used on the GL thread
+  private static final ByteBuffer placeholder = Buffers.newDirectByteBuffer(new byte[] {(byte)128, (byte)128, (byte)128});
+  private static Boolean compressionSupported = null;   // found on the first load, as it needs the GL context
+
+  // In access order, so iteration starts at the least recently used texture
+  private static LinkedHashMap<String, Texture> textures = new LinkedHashMap<String, Texture>(16, 0.75f, true);
+  private static HashMap<Integer, Texture> texturesById = new HashMap<Integer, Texture>();
+  private static long budgetBytes = 256L << 20;
+  private static long residentBytes = 0;
+  private static int hits = 0;
+  private static int misses = 0;
+  private static int evictions = 0;
+
+  private static final class Texture {
+    final String key;
+    final int[] textureId;
+    int references = 0;
+    long bytes = PLACEHOLDER_BYTES;   // estimated GPU memory
+    boolean deleted = false;
+    TextureAtlas atlas;   // null unless loaded with loadAtlas
+
+    Texture(String key, int[] textureId) {
+      this.key = key;
+      this.textureId = textureId;
+    }
+  }
+
+  private static final class DecodedImage {
+    final Texture texture;
+    final int width, height;
+    final ByteBuffer[] levels;   // every mipmap if compressed, else just the image; null if it could not be read
+    final boolean compressed;
+
+    DecodedImage(Texture texture, int width, int height, ByteBuffer[] levels, boolean compressed) {
+      this.texture = texture;
+      this.width = width;
+      this.height = height;
+      this.levels = levels;
+      this.compressed = compressed;
+    }
+  }
   
   public static int[] loadTexture(GL3 gl, String filename) {
     return loadTexture(gl, filename, GL.GL_REPEAT, GL.GL_REPEAT,
@@ -15,25 +102,312 @@ public final class TextureLibrary {
   
   public static int[] loadTexture(GL3 gl, String filename, 
                                   int wrappingS, int wrappingT, int filterS, int filterT) {
+    String key = filename + " " + wrappingS + " " + wrappingT + " " + filterS + " " + filterT;
+    Texture texture = textures.get(key);
+    if (texture != null) {
+      hits++;
+      return texture.textureId;
+    }
+    misses++;
+    Texture created = createTexture(gl, key, wrappingS, wrappingT, filterS, filterT);
+    boolean compress = compressionSupported;
+    decodeInBackground(created, () -> compress ? decodeCompressed(filename, created) : decode(filename, created));
+    return created.textureId;
+  }
+
+  /* Packs the images into one texture. The images are found by name in the atlas returned. */
+  public static TextureAtlas loadAtlas(GL3 gl, String... filenames) {
+    String key = "atlas " + String.join(" ", filenames);
+    Texture texture = textures.get(key);
+    if (texture != null) {
+      hits++;
+      return texture.atlas;
+    }
+    misses++;
+    // Only the sizes are read now, so that the layout is known straight away
+    int[] widths = new int[filenames.length];
+    int[] heights = new int[filenames.length];
+    for (int i=0; i<filenames.length; ++i) {
+      readSize(filenames[i], widths, heights, i);
+    }
+    TextureAtlas atlas = new TextureAtlas(filenames, widths, heights);
+    Texture created = createTexture(gl, key, GL.GL_CLAMP_TO_EDGE, GL.GL_CLAMP_TO_EDGE, GL.GL_LINEAR, GL.GL_LINEAR);
+    created.atlas = atlas;
+    atlas.setTextureId(created.textureId);
+    boolean compress = compressionSupported;
+    decodeInBackground(created, () -> decodeAtlas(atlas, created, compress));
+    return atlas;
+  }
+
+  // A missing or unreadable image gets a small region, and is left grey
+  private static void readSize(String filename, int[] widths, int[] heights, int i) {
+    widths[i] = heights[i] = 1;
+    try (ImageInputStream in = ImageIO.createImageInputStream(new File(filename))) {
+      Iterator<ImageReader> readers = (in != null) ? ImageIO.getImageReaders(in) : null;
+      if (readers == null || !readers.hasNext()) throw new IOException();
+      ImageReader reader = readers.next();
+      reader.setInput(in);
+      widths[i] = reader.getWidth(0);
+      heights[i] = reader.getHeight(0);
+      reader.dispose();
+    }
+    catch (IOException e) {
+      System.out.println("Error loading texture " + filename);
+    }
+  }
+
+  // A texture showing the placeholder until its image is uploaded
+  private static Texture createTexture(GL3 gl, String key, int wrappingS, int wrappingT, int filterS, int filterT) {
+    if (compressionSupported == null) {
+      compressionSupported = COMPRESS && gl.isExtensionAvailable("GL_EXT_texture_compression_s3tc");
+    }
+
     int[] textureId = new int[1];
-    try {
-      File f = new File(filename);      
-      JPEGImage img = JPEGImage.read(new FileInputStream(f));
-      gl.glGenTextures(1, textureId, 0);
-      gl.glBindTexture(GL.GL_TEXTURE_2D, textureId[0]);
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, wrappingS);
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, wrappingT);      
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, filterS);
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, filterT);
-      gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGB, img.getWidth(), img.getHeight(), 0, GL.GL_RGB, GL.GL_UNSIGNED_BYTE, img.getData());
-      gl.glGenerateMipmap(GL.GL_TEXTURE_2D);
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL2.GL_TEXTURE_MIN_FILTER, GL2.GL_LINEAR_MIPMAP_LINEAR);
-      gl.glBindTexture(GL.GL_TEXTURE_2D, 0); 
+    gl.glGenTextures(1, textureId, 0);
+    GLStateCache.bindTexture(gl, 0, textureId[0]);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, wrappingS);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, wrappingT);      
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, filterS);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, filterT);
+    gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGB, 1, 1, 0, GL.GL_RGB, GL.GL_UNSIGNED_BYTE, placeholder);
+    GLStateCache.bindTexture(gl, 0, 0);
+
+    Texture texture = new Texture(key, textureId);
+    textures.put(key, texture);
+    texturesById.put(textureId[0], texture);
+    residentBytes += texture.bytes;
+    return texture;
+  }
+
+  private static void decodeInBackground(Texture texture, Callable<DecodedImage> decoder) {
+    pending++;
+    decoders.execute(() -> {
+      DecodedImage image = new DecodedImage(texture, 0, 0, null, false);   // counts as failed if decoding throws
+      try {
+        image = decoder.call();
+      } catch (Exception e) {
+        e.printStackTrace();
+      } finally {
+        decoded.add(image);
+      }
+    });
+  }
+
+  // Runs on a decoder thread
+  private static DecodedImage decode(String filename, Texture texture) {
+    try (FileInputStream in = new FileInputStream(new File(filename))) {
+      JPEGImage img = JPEGImage.read(in);
+      return new DecodedImage(texture, img.getWidth(), img.getHeight(), new ByteBuffer[] {img.getData()}, false);
     }
     catch(Exception e) {
       System.out.println("Error loading texture " + filename); 
+      return new DecodedImage(texture, 0, 0, null, false);
+    }
+  }
+
+  // Runs on a decoder thread. Reads the cached KTX file if it is up to date, else makes and writes it.
+  private static DecodedImage decodeCompressed(String filename, Texture texture) {
+    File source = new File(filename);
+    File cache = new File(new File(source.getParentFile(), CACHE_FOLDER), source.getName() + ".ktx");
+    DecodedImage image = readCache(cache, texture, source);
+    if (image != null) return image;
+    image = decode(filename, texture);
+    if (image.levels == null) return image;
+    return compress(toArray(image.levels[0]), image.width, image.height, cache, texture);
+  }
+
+  // Runs on a decoder thread
+  private static DecodedImage decodeAtlas(TextureAtlas atlas, Texture texture, boolean compress) {
+    File[] sources = new File[atlas.getImageCount()];
+    for (int i=0; i<sources.length; ++i) {
+      sources[i] = new File(atlas.getName(i));
+    }
+    File cache = new File(new File(sources[0].getParentFile(), CACHE_FOLDER),
+                          "atlas-" + Integer.toHexString(atlas.getLayoutKey().hashCode()) + ".ktx");
+    if (compress) {
+      DecodedImage image = readCache(cache, texture, sources);
+      if (image != null) return image;
+    }
+    byte[][] images = new byte[sources.length][];
+    for (int i=0; i<sources.length; ++i) {
+      DecodedImage image = decode(atlas.getName(i), texture);
+      if (image.levels == null) continue;
+      if (image.width != atlas.getImageWidth(i) || image.height != atlas.getImageHeight(i)) {
+        System.out.println("Error loading texture " + atlas.getName(i) + ": size changed while loading");
+        continue;
+      }
+      images[i] = toArray(image.levels[0]);
+    }
+    byte[] rgb = atlas.compose(images);
+    if (compress) return compress(rgb, atlas.getWidth(), atlas.getHeight(), cache, texture);
+    return new DecodedImage(texture, atlas.getWidth(), atlas.getHeight(), new ByteBuffer[] {ByteBuffer.wrap(rgb)}, false);
+  }
+
+  private static byte[] toArray(ByteBuffer pixels) {
+    byte[] rgb = new byte[pixels.remaining()];
+    pixels.duplicate().get(rgb);
+    return rgb;
+  }
+
+  // The cached file, if it is newer than every source and can be read; else null
+  private static DecodedImage readCache(File cache, Texture texture, File... sources) {
+    long modified = cache.lastModified();   // 0 if missing
+    for (File source : sources) {
+      if (modified < source.lastModified()) return null;
+    }
+    try {
+      KTXFile.Contents c = KTXFile.read(cache.getPath());
+      if (c.internalFormat == GL.GL_COMPRESSED_RGB_S3TC_DXT1_EXT) {
+        return new DecodedImage(texture, c.width, c.height, c.levels, true);
+      }
+    }
+    catch (IOException e) {
+      System.out.println("Remaking damaged texture cache " + cache);
+    }
+    return null;
+  }
+
+  // Makes the mipmaps, compresses them, and writes them to the cache
+  private static DecodedImage compress(byte[] rgb, int width, int height, File cache, Texture texture) {
+    byte[][] mipmaps = TextureCompressor.buildMipChain(rgb, width, height);
+    byte[][] compressed = new byte[mipmaps.length][];
+    ByteBuffer[] levels = new ByteBuffer[mipmaps.length];
+    for (int level=0; level<mipmaps.length; ++level) {
+      compressed[level] = TextureCompressor.encodeBC1(mipmaps[level],
+        TextureCompressor.mipSize(width, level), TextureCompressor.mipSize(height, level));
+      levels[level] = ByteBuffer.wrap(compressed[level]);
+    }
+    try {
+      cache.getParentFile().mkdirs();
+      KTXFile.write(cache.getPath(), GL.GL_COMPRESSED_RGB_S3TC_DXT1_EXT, GL.GL_RGB, width, height, compressed);
+    }
+    catch (IOException e) {
+      System.out.println("Could not write texture cache " + cache);   // still usable, just made again next time
+    }
+    return new DecodedImage(texture, width, height, levels, true);
+  }
+
+  /* Uploads images that have finished decoding, up to UPLOAD_BYTES_PER_FRAME. Call once per frame on the GL thread. */
+  public static void uploadPending(GL3 gl) {
+    long uploaded = 0;
+    DecodedImage image;
+    while (uploaded < UPLOAD_BYTES_PER_FRAME && (image = decoded.poll()) != null) {
+      pending--;
+      Texture texture = image.texture;
+      if (image.levels == null || texture.deleted) continue;   // failed, so keeps the placeholder, or no longer wanted
+      GLStateCache.bindTexture(gl, 0, texture.textureId[0]);
+      long bytes;
+      if (image.compressed) {
+        bytes = 0;
+        int levels = (texture.atlas != null) ? Math.min(image.levels.length, TextureAtlas.MAX_MIP_LEVEL+1) : image.levels.length;
+        for (int level=0; level<levels; ++level) {
+          ByteBuffer data = image.levels[level];
+          gl.glCompressedTexImage2D(GL.GL_TEXTURE_2D, level, GL.GL_COMPRESSED_RGB_S3TC_DXT1_EXT,
+            TextureCompressor.mipSize(image.width, level), TextureCompressor.mipSize(image.height, level), 0, data.remaining(), data);
+          bytes += data.remaining();
+        }
+        gl.glTexParameteri(GL.GL_TEXTURE_2D, GL2ES3.GL_TEXTURE_MAX_LEVEL, levels-1);
+        uploaded += bytes;
+      } else {
+        gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGB, image.width, image.height, 0, GL.GL_RGB, GL.GL_UNSIGNED_BYTE, image.levels[0]);
+        gl.glGenerateMipmap(GL.GL_TEXTURE_2D);
+        if (texture.atlas != null) gl.glTexParameteri(GL.GL_TEXTURE_2D, GL2ES3.GL_TEXTURE_MAX_LEVEL, TextureAtlas.MAX_MIP_LEVEL);
+        uploaded += (long)image.width*image.height*3;
+        // Drivers usually pad RGB to 4 bytes a texel, and the mipmaps add a third
+        bytes = (long)image.width*image.height*4*4/3;
+      }
+      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL2.GL_TEXTURE_MIN_FILTER, GL2.GL_LINEAR_MIPMAP_LINEAR);
+      GLStateCache.bindTexture(gl, 0, 0);
+      residentBytes -= texture.bytes;
+      texture.bytes = bytes;
+      residentBytes += texture.bytes;
+    }
+    if (uploaded > 0) evict(gl);
+  }
+
+  /* The number of textures still showing their placeholder */
+  public static int getPendingCount() {
+    return pending;
+  }
+
+  /* Textures made directly, rather than through this library, are not counted */
+  public static void retain(int[] textureId) {
+    Texture texture = texturesById.get(textureId[0]);
+    if (texture != null) texture.references++;
+  }
+
+  /* Textures made directly, rather than through this library, are deleted straight away */
+  public static void release(GL3 gl, int[] textureId) {
+    Texture texture = texturesById.get(textureId[0]);
+    if (texture == null) {
+      gl.glDeleteTextures(1, textureId, 0);
+      GLStateCache.forgetTexture(textureId[0]);
+      return;
+    }
+    if (texture.references > 0) texture.references--;
+    if (texture.references == 0) {
+      textures.get(texture.key);   // now the most recently used
+      evict(gl);
+    }
+  }
+
+  /* The estimated GPU memory, in bytes, above which unreferenced textures are deleted */
+  public static void setBudget(GL3 gl, long bytes) {
+    budgetBytes = bytes;
+    evict(gl);
+  }
+
+  // Deletes unreferenced textures, least recently used first, until within budget
+  private static void evict(GL3 gl) {
+    if (residentBytes <= budgetBytes) return;
+    ArrayList<Texture> unused = new ArrayList<Texture>();
+    for (Texture texture : textures.values()) {
+      if (texture.references == 0) unused.add(texture);
+    }
+    for (int i=0; i<unused.size() && residentBytes > budgetBytes; ++i) {
+      delete(gl, unused.get(i));
+      evictions++;
+    }
+  }
+
+  private static void delete(GL3 gl, Texture texture) {
+    gl.glDeleteTextures(1, texture.textureId, 0);
+    GLStateCache.forgetTexture(texture.textureId[0]);
+    texture.deleted = true;
+    textures.remove(texture.key);
+    texturesById.remove(texture.textureId[0]);
+    residentBytes -= texture.bytes;
+  }
+
+  /* The number of distinct textures held */
+  public static int size() {
+    return textures.size();
+  }
+
+  /* Estimated GPU memory taken by the textures held, in bytes */
+  public static long getResidentBytes() {
+    return residentBytes;
+  }
+
+  /* Loads answered with a texture already held */
+  public static int getHits() {
+    return hits;
+  }
+
+  public static int getMisses() {
+    return misses;
+  }
+
+  /* Unreferenced textures deleted to stay within budget */
+  public static int getEvictions() {
+    return evictions;
+  }
+
+  /* Deletes every texture held, whether or not it is still referenced */
+  public static void dispose(GL3 gl) {
+    for (Texture texture : new ArrayList<Texture>(textures.values())) {
+      delete(gl, texture);
     }
-    return textureId;
   }
   
-}
\ No newline at end of file
+}
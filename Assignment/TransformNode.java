@@ -4,22 +4,25 @@ import com.jogamp.opengl.*;
 public class TransformNode extends SGNode {
 
   private Mat4 transform;
+  private Mat4 childTransform;  // worldTransform*transform, reused on every update
 
   public TransformNode(String name, Mat4 t) {
     super(name);
     transform = new Mat4(t);
+    childTransform = new Mat4(1);
   }
 
   public void setTransform(Mat4 m) {
-    transform = new Mat4(m);
+    transform.set(m);
+    markDirty();
   }
 
-  protected void update(Mat4 t) {
-    worldTransform = t;
-    t = Mat4.multiply(worldTransform, transform);
-    for (int i=0; i<children.size(); i++) {
-      children.get(i).update(t);
+  protected Mat4 updateTransform(Mat4 t, boolean changed) {
+    if (changed) {
+      worldTransform.set(t);
+      Mat4.multiplyInto(worldTransform, transform, childTransform);
     }
+    return childTransform;
   }
 
   public void print(int indent, boolean inFull) {
@@ -0,0 +1,257 @@
+import java.nio.*;
+import java.util.Arrays;
+import com.jogamp.common.nio.*;
+import com.jogamp.opengl.*;
+
+/* Describes how a mesh's vertices are stored on the GPU, and converts to and from that form.
+   Meshes are always given as 8 floats per vertex (position x,y,z, normal x,y,z, texture s,t),
+   see Cube and Sphere; the layout decides how many bytes each of the three attributes takes.
+   The shaders see the same vec3, vec3, vec2 inputs at locations 0, 1 and 2 whatever the layout.
+
+   STANDARD keeps the floats as they are, 32 bytes per vertex. COMPACT uses 16 bytes:
+     position  3 half floats, padded to 8 bytes   (about 3 significant figures, so only used when
+                                                   that is within HALF_TOLERANCE of the mesh's size)
+     normal    GL_INT_2_10_10_10_REV, 4 bytes     (10 bits signed per component, error < 1/1000)
+     texture   2 unsigned normalised shorts       (error < 1/130000, values must be in 0..1) */
+
+public final class VertexLayout {
+
+  public static final int SOURCE_FLOATS = 8;
+
+  public enum Format {FLOAT, HALF, PACKED_10_10_10, UNORM16};
+
+  public static final VertexLayout STANDARD = new VertexLayout(Format.FLOAT, Format.FLOAT, Format.FLOAT);
+  public static final VertexLayout COMPACT = new VertexLayout(Format.HALF, Format.PACKED_10_10_10, Format.UNORM16);
+
+  private static final float MAX_HALF = 65504f;
+  // Largest rounding error allowed in a half float attribute, as a fraction of the attribute's
+  // extent along its longest axis. A small mesh far from its origin fails this and stays STANDARD.
+  private static final float HALF_TOLERANCE = 1/1024f;
+
+  private final Format[] formats;
+  private final int[] components = {3, 3, 2};
+  private final int[] offsets = new int[3];  // in bytes
+  private final int stride;
+
+  public VertexLayout(Format position, Format normal, Format texCoord) {
+    formats = new Format[] {position, normal, texCoord};
+    if (texCoord == Format.PACKED_10_10_10) {
+      throw new IllegalArgumentException("Texture coordinates have two components and cannot be packed");
+    }
+    int offset = 0;
+    for (int i=0; i<3; ++i) {
+      offsets[i] = offset;
+      offset += bytes(formats[i], components[i]);
+    }
+    stride = offset;
+  }
+
+  // Each attribute starts on a 4 byte boundary
+  private static int bytes(Format format, int components) {
+    switch (format) {
+      case FLOAT: return 4*components;
+      case PACKED_10_10_10: return 4;
+      default: return (2*components+3)/4*4;
+    }
+  }
+
+  public int getStride() {
+    return stride;
+  }
+
+  /* The format of attribute 0 (position), 1 (normal) or 2 (texture coordinates) */
+  public Format getFormat(int attribute) {
+    return formats[attribute];
+  }
+
+  /* The layout to use for some vertices: COMPACT if they fit its ranges and precision, otherwise STANDARD */
+  public static VertexLayout smallestFor(float[] vertices) {
+    return COMPACT.canEncode(vertices) ? COMPACT : STANDARD;
+  }
+
+  /* Whether every value is in range for this layout, and half float attributes are within
+     HALF_TOLERANCE. Values out of range would be clamped. */
+  public boolean canEncode(float[] vertices) {
+    float[] min = new float[SOURCE_FLOATS];
+    float[] max = new float[SOURCE_FLOATS];
+    Arrays.fill(min, Float.POSITIVE_INFINITY);
+    Arrays.fill(max, Float.NEGATIVE_INFINITY);
+    for (int v=0; v<vertices.length; v+=SOURCE_FLOATS) {
+      int source = v;
+      for (int a=0; a<3; ++a) {
+        for (int c=0; c<components[a]; ++c) {
+          float f = vertices[source+c];
+          min[source-v+c] = Math.min(min[source-v+c], f);
+          max[source-v+c] = Math.max(max[source-v+c], f);
+          switch (formats[a]) {
+            case HALF: if (Math.abs(f) > MAX_HALF) return false; break;
+            case PACKED_10_10_10: if (f < -1 || f > 1) return false; break;
+            case UNORM16: if (f < 0 || f > 1) return false; break;
+            default: break;
+          }
+        }
+        source += components[a];
+      }
+    }
+    int first = 0;
+    for (int a=0; a<3; ++a) {
+      if (formats[a] == Format.HALF) {
+        float extent = 0, largest = 0;
+        for (int c=first; c<first+components[a]; ++c) {
+          extent = Math.max(extent, max[c]-min[c]);
+          largest = Math.max(largest, Math.max(Math.abs(min[c]), Math.abs(max[c])));
+        }
+        if (halfError(largest) > extent*HALF_TOLERANCE) return false;
+      }
+      first += components[a];
+    }
+    return true;
+  }
+
+  /* The largest rounding error of a half float for values up to this size: half a unit in the last place */
+  public static float halfError(float size) {
+    return Math.scalb(1f, Math.max(Math.getExponent(size), -14) - 11);
+  }
+
+  //---------------------------ENCODING----------------------------------
+
+  public ByteBuffer encode(float[] vertices) {
+    int count = vertices.length/SOURCE_FLOATS;
+    ByteBuffer buffer = Buffers.newDirectByteBuffer(count*stride);   // native byte order
+    for (int v=0; v<count; ++v) {
+      int source = v*SOURCE_FLOATS;
+      for (int a=0; a<3; ++a) {
+        int at = v*stride + offsets[a];
+        switch (formats[a]) {
+          case FLOAT:
+            for (int c=0; c<components[a]; ++c) buffer.putFloat(at+4*c, vertices[source+c]);
+            break;
+          case HALF:
+            for (int c=0; c<components[a]; ++c) buffer.putShort(at+2*c, floatToHalf(vertices[source+c]));
+            break;
+          case UNORM16:
+            for (int c=0; c<components[a]; ++c) buffer.putShort(at+2*c, floatToUnorm16(vertices[source+c]));
+            break;
+          case PACKED_10_10_10:
+            buffer.putInt(at, pack10(vertices[source], vertices[source+1], vertices[source+2]));
+            break;
+        }
+        source += components[a];
+      }
+    }
+    return buffer;
+  }
+
+  /* Reads encoded vertices back as 8 floats each, as the GPU would see them */
+  public float[] decode(ByteBuffer buffer) {
+    int count = buffer.capacity()/stride;
+    float[] vertices = new float[count*SOURCE_FLOATS];
+    for (int v=0; v<count; ++v) {
+      int dest = v*SOURCE_FLOATS;
+      for (int a=0; a<3; ++a) {
+        int at = v*stride + offsets[a];
+        switch (formats[a]) {
+          case FLOAT:
+            for (int c=0; c<components[a]; ++c) vertices[dest+c] = buffer.getFloat(at+4*c);
+            break;
+          case HALF:
+            for (int c=0; c<components[a]; ++c) vertices[dest+c] = halfToFloat(buffer.getShort(at+2*c));
+            break;
+          case UNORM16:
+            for (int c=0; c<components[a]; ++c) vertices[dest+c] = unorm16ToFloat(buffer.getShort(at+2*c));
+            break;
+          case PACKED_10_10_10:
+            int packed = buffer.getInt(at);
+            for (int c=0; c<3; ++c) vertices[dest+c] = unpack10(packed, c);
+            break;
+        }
+        dest += components[a];
+      }
+    }
+    return vertices;
+  }
+
+  /* Sets up vertex attributes 0, 1 and 2 for the bound vertex array and array buffer */
+  public void setAttribPointers(GL3 gl) {
+    for (int a=0; a<3; ++a) {
+      switch (formats[a]) {
+        case FLOAT:
+          gl.glVertexAttribPointer(a, components[a], GL.GL_FLOAT, false, stride, offsets[a]);
+          break;
+        case HALF:
+          gl.glVertexAttribPointer(a, components[a], GL.GL_HALF_FLOAT, false, stride, offsets[a]);
+          break;
+        case UNORM16:
+          gl.glVertexAttribPointer(a, components[a], GL.GL_UNSIGNED_SHORT, true, stride, offsets[a]);
+          break;
+        case PACKED_10_10_10:   // the packed type always has 4 components; the shader ignores w
+          gl.glVertexAttribPointer(a, 4, GL3ES3.GL_INT_2_10_10_10_REV, true, stride, offsets[a]);
+          break;
+      }
+      gl.glEnableVertexAttribArray(a);
+    }
+  }
+
+  //---------------------------CONVERSIONS----------------------------------
+
+  /* IEEE 754 half precision, rounding to nearest even. Too large values become infinity. */
+  public static short floatToHalf(float f) {
+    int bits = Float.floatToRawIntBits(f);
+    int sign = (bits >>> 16) & 0x8000;
+    int exponent = (bits >>> 23) & 0xFF;
+    int mantissa = bits & 0x7FFFFF;
+    if (exponent == 0xFF) return (short)(sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));  // infinity or NaN
+    int e = exponent - 127 + 15;
+    if (e >= 0x1F) return (short)(sign | 0x7C00);
+    int half;
+    int shift;
+    if (e <= 0) {   // a subnormal half, or zero
+      if (e < -10) return (short)sign;
+      mantissa |= 0x800000;
+      shift = 14 - e;
+      half = mantissa >> shift;
+    } else {
+      shift = 13;
+      half = (e << 10) | (mantissa >> shift);
+    }
+    int rest = mantissa & ((1 << shift) - 1);
+    int middle = 1 << (shift - 1);
+    if (rest > middle || (rest == middle && (half & 1) != 0)) half++;   // may carry into the exponent, which is right
+    return (short)(sign | half);
+  }
+
+  public static float halfToFloat(short h) {
+    int sign = (h & 0x8000) << 16;
+    int exponent = (h >>> 10) & 0x1F;
+    int mantissa = h & 0x3FF;
+    if (exponent == 0) {
+      float f = mantissa * 0x1p-24f;
+      return sign != 0 ? -f : f;
+    }
+    if (exponent == 0x1F) return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+    return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+  }
+
+  public static short floatToUnorm16(float f) {
+    return (short)Math.round(Math.max(0, Math.min(1, f)) * 65535);
+  }
+
+  public static float unorm16ToFloat(short s) {
+    return (s & 0xFFFF) / 65535f;
+  }
+
+  /* x, y and z in the low 30 bits, 10 bits each, as signed normalised values; w is 0 */
+  public static int pack10(float x, float y, float z) {
+    return toSnorm10(x) | (toSnorm10(y) << 10) | (toSnorm10(z) << 20);
+  }
+
+  private static int toSnorm10(float f) {
+    return Math.round(Math.max(-1, Math.min(1, f)) * 511) & 0x3FF;
+  }
+
+  public static float unpack10(int packed, int component) {
+    int c = (packed << (22 - 10*component)) >> 22;   // sign extend the 10 bits
+    return Math.max(c / 511f, -1f);
+  }
+
+}
@@ -0,0 +1,401 @@
+package gmaths;
+
+/**
+ * A bounding volume hierarchy over a fixed number of items, each given an axis aligned box.
+ * Finds the items in a view volume, the first item along a ray and the item nearest a point
+ * without testing every item.
+ *
+ * The tree is built once with the surface area heuristic. Items that move are given new boxes
+ * and the tree is refitted, which keeps its shape, so build again if items have moved a long way.
+ *
+ * Queries reuse internal storage, so a BVH must only be used from one thread at a time.
+ */
+
+public final class BVH {
+
+  private static final int BINS = 12;            // candidate split positions per axis
+  private static final int MAX_LEAF_ITEMS = 4;
+  private static final float TRAVERSAL_COST = 1f;  // cost of visiting a node, relative to testing an item
+
+  private final int itemCount;
+  private final float[] itemBounds;   // 6 floats per item: min x,y,z then max x,y,z
+  private final int[] items;          // item numbers, ordered so that each leaf's items are together
+
+  // Nodes are stored in flat arrays; node 0 is the root and children come in pairs after their parent
+  private final float[] nodeBounds;   // 6 floats per node, as itemBounds
+  private final int[] nodeStart;      // leaf: first position in items. Inner node: left child, the right is next to it
+  private final int[] nodeCount;      // leaf: number of items. Inner node: 0
+  private int nodeTotal = 0;
+
+  private int[] stack = new int[64];
+  private float lastDistance;
+
+  // scratch for build
+  private final float[] binBounds = new float[BINS*6];
+  private final int[] binCount = new int[BINS];
+  private final float[] rightArea = new float[BINS];
+  private final float[] box = new float[6];
+  private final float[] cmin = new float[3];
+  private final float[] cmax = new float[3];
+
+  /**
+   * Constructor. Every item's box must be set with setItemBounds before calling build.
+   *
+   * @param itemCount The number of items, numbered from 0
+   */
+  public BVH(int itemCount) {
+    this.itemCount = itemCount;
+    itemBounds = new float[itemCount*6];
+    items = new int[itemCount];
+    int maxNodes = Math.max(1, 2*itemCount-1);
+    nodeBounds = new float[maxNodes*6];
+    nodeStart = new int[maxNodes];
+    nodeCount = new int[maxNodes];
+  }
+
+  public int getItemCount() {
+    return itemCount;
+  }
+
+  public int getNodeCount() {
+    return nodeTotal;
+  }
+
+  public void setItemBounds(int item, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    int i = item*6;
+    itemBounds[i]   = minX; itemBounds[i+1] = minY; itemBounds[i+2] = minZ;
+    itemBounds[i+3] = maxX; itemBounds[i+4] = maxY; itemBounds[i+5] = maxZ;
+  }
+
+  /**
+   * Sets an item's box to the box around a sphere. An empty sphere gives a box no query will find.
+   */
+  public void setItemBounds(int item, BoundingSphere s) {
+    if (s.isEmpty()) {
+      setItemBounds(item, Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+    } else {
+      setItemBounds(item, s.x-s.radius, s.y-s.radius, s.z-s.radius, s.x+s.radius, s.y+s.radius, s.z+s.radius);
+    }
+  }
+
+  //---------------------------BUILD----------------------------------
+
+  /**
+   * Builds the tree from the current item boxes.
+   */
+  public void build() {
+    for (int i=0; i<itemCount; ++i) {
+      items[i] = i;
+    }
+    nodeTotal = 1;
+    nodeStart[0] = 0;
+    nodeCount[0] = itemCount;
+    computeLeafBounds(0);
+    subdivide(0);
+  }
+
+  private void subdivide(int node) {
+    int start = nodeStart[node];
+    int count = nodeCount[node];
+    if (count <= MAX_LEAF_ITEMS) return;
+
+    // Splits are made on item centres (times two, to save a divide), so find their extent
+    for (int axis=0; axis<3; ++axis) {
+      cmin[axis] = Float.MAX_VALUE;
+      cmax[axis] = -Float.MAX_VALUE;
+    }
+    for (int i=start; i<start+count; ++i) {
+      int b = items[i]*6;
+      for (int axis=0; axis<3; ++axis) {
+        float c = itemBounds[b+axis] + itemBounds[b+3+axis];
+        cmin[axis] = Math.min(cmin[axis], c);
+        cmax[axis] = Math.max(cmax[axis], c);
+      }
+    }
+
+    float bestCost = Float.MAX_VALUE;
+    int bestAxis = -1;
+    int bestSplit = 0;
+    for (int axis=0; axis<3; ++axis) {
+      float extent = cmax[axis] - cmin[axis];
+      if (extent <= 0) continue;
+      float scale = BINS / extent;
+      for (int b=0; b<BINS; ++b) {
+        binCount[b] = 0;
+        setEmpty(binBounds, b*6);
+      }
+      for (int i=start; i<start+count; ++i) {
+        int item = items[i]*6;
+        int b = binIndex(itemBounds[item+axis] + itemBounds[item+3+axis], cmin[axis], scale);
+        binCount[b]++;
+        enclose(binBounds, b*6, itemBounds, item);
+      }
+      // Sweep from the right to get the area of everything right of each split,
+      // then from the left, pricing each split as the expected cost of testing both sides
+      setEmpty(box, 0);
+      int rightCount = 0;
+      for (int b=BINS-1; b>0; --b) {
+        enclose(box, 0, binBounds, b*6);
+        rightCount += binCount[b];
+        rightArea[b] = rightCount == 0 ? 0 : area(box, 0) * rightCount;
+      }
+      setEmpty(box, 0);
+      int leftCount = 0;
+      for (int b=0; b<BINS-1; ++b) {
+        enclose(box, 0, binBounds, b*6);
+        leftCount += binCount[b];
+        if (leftCount == 0 || leftCount == count) continue;
+        float cost = area(box, 0) * leftCount + rightArea[b+1];
+        if (cost < bestCost) {
+          bestCost = cost;
+          bestAxis = axis;
+          bestSplit = b+1;
+        }
+      }
+    }
+    float parentArea = area(nodeBounds, node*6);
+    if (bestAxis < 0 || TRAVERSAL_COST*parentArea + bestCost >= count*parentArea) return;  // cheaper as a leaf
+
+    // Partition the node's items around the chosen split
+    float scale = BINS / (cmax[bestAxis] - cmin[bestAxis]);
+    int i = start;
+    int j = start+count-1;
+    while (i <= j) {
+      int item = items[i]*6;
+      if (binIndex(itemBounds[item+bestAxis] + itemBounds[item+3+bestAxis], cmin[bestAxis], scale) < bestSplit) {
+        i++;
+      } else {
+        int t = items[i]; items[i] = items[j]; items[j] = t;
+        j--;
+      }
+    }
+    int leftCount = i-start;
+
+    int left = nodeTotal;
+    nodeTotal += 2;
+    nodeStart[left] = start;
+    nodeCount[left] = leftCount;
+    nodeStart[left+1] = i;
+    nodeCount[left+1] = count-leftCount;
+    nodeStart[node] = left;
+    nodeCount[node] = 0;
+    computeLeafBounds(left);
+    computeLeafBounds(left+1);
+    subdivide(left);
+    subdivide(left+1);
+  }
+
+  private static int binIndex(float c, float min, float scale) {
+    return Math.min(BINS-1, (int)((c-min)*scale));
+  }
+
+  private void computeLeafBounds(int node) {
+    int n = node*6;
+    setEmpty(nodeBounds, n);
+    for (int i=nodeStart[node]; i<nodeStart[node]+nodeCount[node]; ++i) {
+      enclose(nodeBounds, n, itemBounds, items[i]*6);
+    }
+  }
+
+  /**
+   * Recomputes the node boxes after items have been given new boxes. The shape of the tree is kept.
+   */
+  public void refit() {
+    for (int node=nodeTotal-1; node>=0; --node) {   // children are always after their parent
+      if (nodeCount[node] > 0) {
+        computeLeafBounds(node);
+      } else {
+        int n = node*6;
+        int left = nodeStart[node];
+        setEmpty(nodeBounds, n);
+        enclose(nodeBounds, n, nodeBounds, left*6);
+        enclose(nodeBounds, n, nodeBounds, (left+1)*6);
+      }
+    }
+  }
+
+  //---------------------------QUERIES----------------------------------
+
+  /**
+   * Finds the items whose boxes could be inside a view volume.
+   *
+   * @param frustum The view volume
+   * @param result Receives the item numbers; must have room for getItemCount() items
+   * @return  The number of items found
+   */
+  public int query(Frustum frustum, int[] result) {
+    if (itemCount == 0) return 0;
+    int found = 0;
+    int sp = 0;
+    stack[sp++] = 0;
+    while (sp > 0) {
+      int node = stack[--sp];
+      if (!intersects(frustum, nodeBounds, node*6)) continue;
+      if (nodeCount[node] > 0) {
+        for (int i=nodeStart[node]; i<nodeStart[node]+nodeCount[node]; ++i) {
+          if (intersects(frustum, itemBounds, items[i]*6)) result[found++] = items[i];
+        }
+      } else {
+        sp = push(sp, nodeStart[node]);
+        sp = push(sp, nodeStart[node]+1);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Finds the first item whose box is hit by a ray. The distance along the ray
+   * is then given by getLastDistance.
+   *
+   * @param origin The start of the ray
+   * @param direction The direction of the ray. Distances are in multiples of its length.
+   * @param maxDistance Boxes further along the ray than this are ignored
+   * @return  The item number, or -1 if no box is hit
+   */
+  public int raycast(Vec3 origin, Vec3 direction, float maxDistance) {
+    float invX = 1/direction.x, invY = 1/direction.y, invZ = 1/direction.z;
+    int hit = -1;
+    float best = maxDistance;
+    if (itemCount == 0) return hit;
+    int sp = 0;
+    stack[sp++] = 0;
+    while (sp > 0) {
+      int node = stack[--sp];
+      if (rayDistance(nodeBounds, node*6, origin, invX, invY, invZ) >= best) continue;
+      if (nodeCount[node] > 0) {
+        for (int i=nodeStart[node]; i<nodeStart[node]+nodeCount[node]; ++i) {
+          float t = rayDistance(itemBounds, items[i]*6, origin, invX, invY, invZ);
+          if (t < best) {
+            best = t;
+            hit = items[i];
+          }
+        }
+      } else {
+        // Visit the nearer child first, so that the further one is more likely to be skipped
+        int left = nodeStart[node];
+        float tl = rayDistance(nodeBounds, left*6, origin, invX, invY, invZ);
+        float tr = rayDistance(nodeBounds, (left+1)*6, origin, invX, invY, invZ);
+        if (tl <= tr) {
+          if (tr < best) sp = push(sp, left+1);
+          if (tl < best) sp = push(sp, left);
+        } else {
+          if (tl < best) sp = push(sp, left);
+          if (tr < best) sp = push(sp, left+1);
+        }
+      }
+    }
+    lastDistance = best;
+    return hit;
+  }
+
+  /**
+   * Finds the item whose box is nearest to a point; an item whose box holds the point is at distance 0.
+   * The distance is then given by getLastDistance.
+   *
+   * @return  The item number, or -1 if there are no items
+   */
+  public int nearest(Vec3 point) {
+    int found = -1;
+    float best = Float.POSITIVE_INFINITY;   // squared distance
+    if (itemCount == 0) return found;
+    int sp = 0;
+    stack[sp++] = 0;
+    while (sp > 0) {
+      int node = stack[--sp];
+      if (distanceSquared(nodeBounds, node*6, point) >= best) continue;
+      if (nodeCount[node] > 0) {
+        for (int i=nodeStart[node]; i<nodeStart[node]+nodeCount[node]; ++i) {
+          float d = distanceSquared(itemBounds, items[i]*6, point);
+          if (d < best) {
+            best = d;
+            found = items[i];
+          }
+        }
+      } else {
+        int left = nodeStart[node];
+        float dl = distanceSquared(nodeBounds, left*6, point);
+        float dr = distanceSquared(nodeBounds, (left+1)*6, point);
+        if (dl <= dr) {
+          sp = push(sp, left+1);
+          sp = push(sp, left);
+        } else {
+          sp = push(sp, left);
+          sp = push(sp, left+1);
+        }
+      }
+    }
+    lastDistance = (float)Math.sqrt(best);
+    return found;
+  }
+
+  /**
+   * The distance found by the last call to raycast or nearest.
+   */
+  public float getLastDistance() {
+    return lastDistance;
+  }
+
+  private int push(int sp, int node) {
+    if (sp == stack.length) stack = java.util.Arrays.copyOf(stack, sp*2);
+    stack[sp] = node;
+    return sp+1;
+  }
+
+  //---------------------------BOX HELPERS----------------------------------
+
+  private static void setEmpty(float[] b, int i) {
+    b[i] = b[i+1] = b[i+2] = Float.MAX_VALUE;
+    b[i+3] = b[i+4] = b[i+5] = -Float.MAX_VALUE;
+  }
+
+  private static void enclose(float[] b, int i, float[] other, int j) {
+    b[i]   = Math.min(b[i],   other[j]);
+    b[i+1] = Math.min(b[i+1], other[j+1]);
+    b[i+2] = Math.min(b[i+2], other[j+2]);
+    b[i+3] = Math.max(b[i+3], other[j+3]);
+    b[i+4] = Math.max(b[i+4], other[j+4]);
+    b[i+5] = Math.max(b[i+5], other[j+5]);
+  }
+
+  // Half the surface area, which is all the heuristic needs
+  private static float area(float[] b, int i) {
+    float dx = b[i+3]-b[i], dy = b[i+4]-b[i+1], dz = b[i+5]-b[i+2];
+    if (dx < 0 || dy < 0 || dz < 0) return 0;
+    return dx*dy + dy*dz + dz*dx;
+  }
+
+  private static boolean intersects(Frustum f, float[] b, int i) {
+    return f.intersects(b[i], b[i+1], b[i+2], b[i+3], b[i+4], b[i+5]);
+  }
+
+  // Slab test. Gives the distance at which the ray enters the box (0 if it starts inside),
+  // or infinity if it misses. A ray parallel to a pair of faces that starts exactly on one of
+  // them gives 0*infinity = NaN for that pair; it runs along the face, so that axis does not limit it.
+  // An empty box has its minimum above its maximum, which the slab test would take as the whole of space.
+  private static float rayDistance(float[] b, int i, Vec3 o, float invX, float invY, float invZ) {
+    if (b[i] > b[i+3]) return Float.POSITIVE_INFINITY;
+    float tmin = 0, tmax = Float.POSITIVE_INFINITY;
+    float t1 = (b[i]-o.x)*invX, t2 = (b[i+3]-o.x)*invX;
+    if (!Float.isNaN(t1) && !Float.isNaN(t2)) {
+      tmin = Math.max(tmin, Math.min(t1, t2)); tmax = Math.min(tmax, Math.max(t1, t2));
+    }
+    t1 = (b[i+1]-o.y)*invY; t2 = (b[i+4]-o.y)*invY;
+    if (!Float.isNaN(t1) && !Float.isNaN(t2)) {
+      tmin = Math.max(tmin, Math.min(t1, t2)); tmax = Math.min(tmax, Math.max(t1, t2));
+    }
+    t1 = (b[i+2]-o.z)*invZ; t2 = (b[i+5]-o.z)*invZ;
+    if (!Float.isNaN(t1) && !Float.isNaN(t2)) {
+      tmin = Math.max(tmin, Math.min(t1, t2)); tmax = Math.min(tmax, Math.max(t1, t2));
+    }
+    if (tmax < tmin) return Float.POSITIVE_INFINITY;
+    return tmin;
+  }
+
+  private static float distanceSquared(float[] b, int i, Vec3 p) {
+    float dx = Math.max(0, Math.max(b[i]-p.x, p.x-b[i+3]));
+    float dy = Math.max(0, Math.max(b[i+1]-p.y, p.y-b[i+4]));
+    float dz = Math.max(0, Math.max(b[i+2]-p.z, p.z-b[i+5]));
+    return dx*dx + dy*dy + dz*dz;
+  }
+
+} // end of BVH class
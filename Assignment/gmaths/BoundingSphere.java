@@ -0,0 +1,119 @@
+package gmaths;
+
+/**
+ * A bounding sphere, used to decide whether something can be seen.
+ * A sphere with a negative radius is empty and encloses nothing.
+ */
+
+public final class BoundingSphere {
+  public float x;
+  public float y;
+  public float z;
+  public float radius;
+
+  /**
+   * Constructor. Creates an empty sphere.
+   */
+  public BoundingSphere() {
+    setEmpty();
+  }
+
+  public BoundingSphere(float x, float y, float z, float radius) {
+    set(x, y, z, radius);
+  }
+
+  public BoundingSphere set(float x, float y, float z, float radius) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    this.radius = radius;
+    return this;
+  }
+
+  public BoundingSphere set(BoundingSphere s) {
+    return set(s.x, s.y, s.z, s.radius);
+  }
+
+  public BoundingSphere setEmpty() {
+    return set(0, 0, 0, -1);
+  }
+
+  public boolean isEmpty() {
+    return radius < 0;
+  }
+
+  /**
+   * Creates a sphere around interleaved vertex data, where each vertex starts with its x,y,z position.
+   * The centre is the middle of the vertices' bounding box.
+   *
+   * @param vertices The vertex data
+   * @param stride The number of floats per vertex
+   * @return  The sphere enclosing all the vertices
+   */
+  public static BoundingSphere fromVertices(float[] vertices, int stride) {
+    BoundingSphere s = new BoundingSphere();
+    if (vertices.length < 3) return s;
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+    for (int i=0; i+2<vertices.length; i+=stride) {
+      minX = Math.min(minX, vertices[i]);   maxX = Math.max(maxX, vertices[i]);
+      minY = Math.min(minY, vertices[i+1]); maxY = Math.max(maxY, vertices[i+1]);
+      minZ = Math.min(minZ, vertices[i+2]); maxZ = Math.max(maxZ, vertices[i+2]);
+    }
+    float cx = (minX+maxX)/2, cy = (minY+maxY)/2, cz = (minZ+maxZ)/2;
+    float r2 = 0;
+    for (int i=0; i+2<vertices.length; i+=stride) {
+      float dx = vertices[i]-cx, dy = vertices[i+1]-cy, dz = vertices[i+2]-cz;
+      r2 = Math.max(r2, dx*dx+dy*dy+dz*dz);
+    }
+    return s.set(cx, cy, cz, (float)Math.sqrt(r2));
+  }
+
+  /**
+   * Transforms this sphere by a matrix. The radius is scaled by the largest scale in the matrix,
+   * so the result still encloses the transformed contents even under non-uniform scaling.
+   *
+   * @param m The transformation matrix
+   * @param dest The sphere to write the result to; may be this sphere
+   * @return  dest
+   */
+  public BoundingSphere transformInto(Mat4 m, BoundingSphere dest) {
+    if (isEmpty()) return dest.setEmpty();
+    float cx = m.get(0,0)*x + m.get(0,1)*y + m.get(0,2)*z + m.get(0,3);
+    float cy = m.get(1,0)*x + m.get(1,1)*y + m.get(1,2)*z + m.get(1,3);
+    float cz = m.get(2,0)*x + m.get(2,1)*y + m.get(2,2)*z + m.get(2,3);
+    float sx = m.get(0,0)*m.get(0,0) + m.get(1,0)*m.get(1,0) + m.get(2,0)*m.get(2,0);
+    float sy = m.get(0,1)*m.get(0,1) + m.get(1,1)*m.get(1,1) + m.get(2,1)*m.get(2,1);
+    float sz = m.get(0,2)*m.get(0,2) + m.get(1,2)*m.get(1,2) + m.get(2,2)*m.get(2,2);
+    float scale = (float)Math.sqrt(Math.max(sx, Math.max(sy, sz)));
+    return dest.set(cx, cy, cz, radius*scale);
+  }
+
+  /**
+   * Grows this sphere, as little as possible, so that it also encloses another sphere.
+   *
+   * @param s The sphere to enclose
+   */
+  public void enclose(BoundingSphere s) {
+    if (s.isEmpty()) return;
+    if (isEmpty()) {
+      set(s);
+      return;
+    }
+    float dx = s.x-x, dy = s.y-y, dz = s.z-z;
+    float distance = (float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+    if (distance + s.radius <= radius) return;          // s is already inside
+    if (distance + radius <= s.radius) {                // this is inside s
+      set(s);
+      return;
+    }
+    float newRadius = (distance + radius + s.radius)/2;
+    float t = (newRadius - radius)/distance;
+    set(x + dx*t, y + dy*t, z + dz*t, newRadius);
+  }
+
+  public String toString() {
+    return "(("+x+","+y+","+z+"), r="+radius+")";
+  }
+
+} // end of BoundingSphere class
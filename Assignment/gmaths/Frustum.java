@@ -0,0 +1,68 @@
+package gmaths;
+
+/**
+ * The six clip planes of a view volume, taken from a combined projection and view matrix.
+ * Each plane is stored as a,b,c,d with the normal (a,b,c) pointing into the volume.
+ * See Gribb and Hartmann, "Fast Extraction of Viewing Frustum Planes from the World-View-Projection Matrix".
+ */
+
+public final class Frustum {
+
+  private final float[] planes = new float[24];   // left, right, bottom, top, near, far
+
+  /**
+   * Sets the planes from a projection*view matrix, as given by Camera.getViewProjectionMatrix.
+   *
+   * @param m The combined matrix. The planes are in world coordinates.
+   */
+  public void set(Mat4 m) {
+    for (int i=0; i<3; ++i) {
+      setPlane(i*2,   m, i,  1);   // row3 + row i
+      setPlane(i*2+1, m, i, -1);   // row3 - row i
+    }
+  }
+
+  private void setPlane(int plane, Mat4 m, int row, float sign) {
+    float a = m.get(3,0) + sign*m.get(row,0);
+    float b = m.get(3,1) + sign*m.get(row,1);
+    float c = m.get(3,2) + sign*m.get(row,2);
+    float d = m.get(3,3) + sign*m.get(row,3);
+    float length = (float)Math.sqrt(a*a+b*b+c*c);
+    planes[plane*4]   = a/length;
+    planes[plane*4+1] = b/length;
+    planes[plane*4+2] = c/length;
+    planes[plane*4+3] = d/length;
+  }
+
+  /**
+   * Tests whether any part of a sphere could be inside the volume.
+   * Spheres near a corner may pass without being inside, which only costs a wasted draw.
+   *
+   * @param s The sphere, in world coordinates
+   * @return  false if the sphere is empty or wholly outside one of the planes
+   */
+  public boolean intersects(BoundingSphere s) {
+    if (s.isEmpty()) return false;
+    for (int i=0; i<24; i+=4) {
+      if (planes[i]*s.x + planes[i+1]*s.y + planes[i+2]*s.z + planes[i+3] < -s.radius) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Tests whether any part of an axis aligned box could be inside the volume.
+   * For each plane only the corner furthest along the plane's normal is tested.
+   *
+   * @return  false if the box is wholly outside one of the planes
+   */
+  public boolean intersects(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    for (int i=0; i<24; i+=4) {
+      float x = planes[i]   >= 0 ? maxX : minX;
+      float y = planes[i+1] >= 0 ? maxY : minY;
+      float z = planes[i+2] >= 0 ? maxZ : minZ;
+      if (planes[i]*x + planes[i+1]*y + planes[i+2]*z + planes[i+3] < 0) return false;
+    }
+    return true;
+  }
+
+} // end of Frustum class
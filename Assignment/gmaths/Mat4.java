@@ -2,152 +2,238 @@ package gmaths;
 
 public class Mat4 {   // row column formulation
 
-  private float[][] values;
-  
+  // stored as a single flat array in row-major order, i.e. values[r*4+c]
+  private final float[] values;
+
   public Mat4() {
     this(0);
   }
-  
+
   public Mat4(float f) {
-    values = new float[4][4];
-    makeZero();
+    values = new float[16];
     for (int i=0; i<4; ++i) {
-      values[i][i] = f;
+      values[i*4+i] = f;
     }
   }
-  
+
   public Mat4(Mat4 m) {
-    this.values = new float[4][4];
-    for (int i=0; i<4; ++i) {
-      for (int j=0; j<4; ++j) {
-        this.values[i][j] = m.values[i][j];
-      }
-    }
+    this.values = new float[16];
+    System.arraycopy(m.values, 0, this.values, 0, 16);
   }
-  
+
   public void set(int r, int c, float f) {
-    values[r][c] = f;
+    values[r*4+c] = f;
+  }
+
+  public float get(int r, int c) {
+    return values[r*4+c];
+  }
+
+  public Mat4 set(Mat4 m) {
+    if (m != this) System.arraycopy(m.values, 0, values, 0, 16);
+    return this;
+  }
+
+  public Mat4 set(float m00, float m01, float m02, float m03,
+                  float m10, float m11, float m12, float m13,
+                  float m20, float m21, float m22, float m23,
+                  float m30, float m31, float m32, float m33) {
+    values[0]  = m00; values[1]  = m01; values[2]  = m02; values[3]  = m03;
+    values[4]  = m10; values[5]  = m11; values[6]  = m12; values[7]  = m13;
+    values[8]  = m20; values[9]  = m21; values[10] = m22; values[11] = m23;
+    values[12] = m30; values[13] = m31; values[14] = m32; values[15] = m33;
+    return this;
+  }
+
+  public Mat4 setIdentity() {
+    makeZero();
+    values[0] = values[5] = values[10] = values[15] = 1;
+    return this;
   }
-  
+
   private void makeZero() {
-    for (int i=0; i<4; ++i) {
-      for (int j=0; j<4; ++j) {
-        values[i][j] = 0;
-      }
+    for (int i=0; i<16; ++i) {
+      values[i] = 0;
     }
   }
-  
+
   public void transpose() {
     for (int i=0; i<4; ++i) {
-      for (int j=i; j<4; ++j) {
-        float t = values[i][j];
-        values[i][j] = values[j][i];
-        values[j][i] = t;
+      for (int j=i+1; j<4; ++j) {
+        float t = values[i*4+j];
+        values[i*4+j] = values[j*4+i];
+        values[j*4+i] = t;
       }
     }
   }
-    
+
   public static Mat4 transpose(Mat4 m) {
     Mat4 a = new Mat4(m);
-    for (int i=0; i<4; ++i) {
-      for (int j=i; j<4; ++j) {
-        float t = a.values[i][j];
-        a.values[i][j] = a.values[j][i];
-        a.values[j][i] = t;
-      }
-    }
+    a.transpose();
     return a;
   }
 
   public static Mat4 multiply(Mat4 a, Mat4 b) {
-    Mat4 result = new Mat4();
-    for (int i=0; i<4; ++i) {
-      for (int j=0; j<4; ++j) {
-        for (int k=0; k<4; ++k) {
-          result.values[i][j] += a.values[i][k]*b.values[k][j];
-        }
-      }
+    return multiplyInto(a, b, new Mat4());
+  }
+
+  // dest = a*b. dest may be the same object as a and/or b.
+  public static Mat4 multiplyInto(Mat4 a, Mat4 b, Mat4 dest) {
+    float[] x = a.values;
+    float[] y = b.values;
+    float r00 = x[0]*y[0]  + x[1]*y[4]  + x[2]*y[8]   + x[3]*y[12];
+    float r01 = x[0]*y[1]  + x[1]*y[5]  + x[2]*y[9]   + x[3]*y[13];
+    float r02 = x[0]*y[2]  + x[1]*y[6]  + x[2]*y[10]  + x[3]*y[14];
+    float r03 = x[0]*y[3]  + x[1]*y[7]  + x[2]*y[11]  + x[3]*y[15];
+    float r10 = x[4]*y[0]  + x[5]*y[4]  + x[6]*y[8]   + x[7]*y[12];
+    float r11 = x[4]*y[1]  + x[5]*y[5]  + x[6]*y[9]   + x[7]*y[13];
+    float r12 = x[4]*y[2]  + x[5]*y[6]  + x[6]*y[10]  + x[7]*y[14];
+    float r13 = x[4]*y[3]  + x[5]*y[7]  + x[6]*y[11]  + x[7]*y[15];
+    float r20 = x[8]*y[0]  + x[9]*y[4]  + x[10]*y[8]  + x[11]*y[12];
+    float r21 = x[8]*y[1]  + x[9]*y[5]  + x[10]*y[9]  + x[11]*y[13];
+    float r22 = x[8]*y[2]  + x[9]*y[6]  + x[10]*y[10] + x[11]*y[14];
+    float r23 = x[8]*y[3]  + x[9]*y[7]  + x[10]*y[11] + x[11]*y[15];
+    float r30 = x[12]*y[0] + x[13]*y[4] + x[14]*y[8]  + x[15]*y[12];
+    float r31 = x[12]*y[1] + x[13]*y[5] + x[14]*y[9]  + x[15]*y[13];
+    float r32 = x[12]*y[2] + x[13]*y[6] + x[14]*y[10] + x[15]*y[14];
+    float r33 = x[12]*y[3] + x[13]*y[7] + x[14]*y[11] + x[15]*y[15];
+    return dest.set(r00, r01, r02, r03,
+                    r10, r11, r12, r13,
+                    r20, r21, r22, r23,
+                    r30, r31, r32, r33);
+  }
+
+  // dest = a + (b-a)*t, element by element. dest may be the same object as a and/or b.
+  public static Mat4 lerpInto(Mat4 a, Mat4 b, float t, Mat4 dest) {
+    float[] x = a.values;
+    float[] y = b.values;
+    float[] d = dest.values;
+    for (int i=0; i<16; ++i) {
+      d[i] = x[i] + (y[i]-x[i])*t;
     }
-    return result;
+    return dest;
+  }
+
+  // this = this*m
+  public Mat4 mul(Mat4 m) {
+    return multiplyInto(this, m, this);
+  }
+
+  // this = m*this
+  public Mat4 premul(Mat4 m) {
+    return multiplyInto(m, this, this);
   }
 
-  // See https://www.geometrictools.com/Documentation/LaplaceExpansionTheorem.pdf
   public static Mat4 inverse(Mat4 m) {
-    float s0 = m.values[0][0] * m.values[1][1] - m.values[1][0] * m.values[0][1];
-    float s1 = m.values[0][0] * m.values[1][2] - m.values[1][0] * m.values[0][2];
-    float s2 = m.values[0][0] * m.values[1][3] - m.values[1][0] * m.values[0][3];
-    float s3 = m.values[0][1] * m.values[1][2] - m.values[1][1] * m.values[0][2];
-    float s4 = m.values[0][1] * m.values[1][3] - m.values[1][1] * m.values[0][3];
-    float s5 = m.values[0][2] * m.values[1][3] - m.values[1][2] * m.values[0][3];
-
-    float c5 = m.values[2][2] * m.values[3][3] - m.values[3][2] * m.values[2][3];
-    float c4 = m.values[2][1] * m.values[3][3] - m.values[3][1] * m.values[2][3];
-    float c3 = m.values[2][1] * m.values[3][2] - m.values[3][1] * m.values[2][2];
-    float c2 = m.values[2][0] * m.values[3][3] - m.values[3][0] * m.values[2][3];
-    float c1 = m.values[2][0] * m.values[3][2] - m.values[3][0] * m.values[2][2];
-    float c0 = m.values[2][0] * m.values[3][1] - m.values[3][0] * m.values[2][1];
+    return inverseInto(m, new Mat4());
+  }
+
+  // See https://www.geometrictools.com/Documentation/LaplaceExpansionTheorem.pdf
+  // dest may be the same object as m.
+  public static Mat4 inverseInto(Mat4 m, Mat4 dest) {
+    float[] v = m.values;
+    float s0 = v[0] * v[5] - v[4] * v[1];
+    float s1 = v[0] * v[6] - v[4] * v[2];
+    float s2 = v[0] * v[7] - v[4] * v[3];
+    float s3 = v[1] * v[6] - v[5] * v[2];
+    float s4 = v[1] * v[7] - v[5] * v[3];
+    float s5 = v[2] * v[7] - v[6] * v[3];
+
+    float c5 = v[10] * v[15] - v[14] * v[11];
+    float c4 = v[9]  * v[15] - v[13] * v[11];
+    float c3 = v[9]  * v[14] - v[13] * v[10];
+    float c2 = v[8]  * v[15] - v[12] * v[11];
+    float c1 = v[8]  * v[14] - v[12] * v[10];
+    float c0 = v[8]  * v[13] - v[12] * v[9];
 
     // Should check for 0 determinant
     float invdet = 1.0f / (s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0);
 
-    Mat4 b = new Mat4();
+    return dest.set(
+      ( v[5]  * c5 - v[6]  * c4 + v[7]  * c3) * invdet,
+      (-v[1]  * c5 + v[2]  * c4 - v[3]  * c3) * invdet,
+      ( v[13] * s5 - v[14] * s4 + v[15] * s3) * invdet,
+      (-v[9]  * s5 + v[10] * s4 - v[11] * s3) * invdet,
 
-    b.values[0][0] = ( m.values[1][1] * c5 - m.values[1][2] * c4 + m.values[1][3] * c3) * invdet;
-    b.values[0][1] = (-m.values[0][1] * c5 + m.values[0][2] * c4 - m.values[0][3] * c3) * invdet;
-    b.values[0][2] = ( m.values[3][1] * s5 - m.values[3][2] * s4 + m.values[3][3] * s3) * invdet;
-    b.values[0][3] = (-m.values[2][1] * s5 + m.values[2][2] * s4 - m.values[2][3] * s3) * invdet;
+      (-v[4]  * c5 + v[6]  * c2 - v[7]  * c1) * invdet,
+      ( v[0]  * c5 - v[2]  * c2 + v[3]  * c1) * invdet,
+      (-v[12] * s5 + v[14] * s2 - v[15] * s1) * invdet,
+      ( v[8]  * s5 - v[10] * s2 + v[11] * s1) * invdet,
 
-    b.values[1][0] = (-m.values[1][0] * c5 + m.values[1][2] * c2 - m.values[1][3] * c1) * invdet;
-    b.values[1][1] = ( m.values[0][0] * c5 - m.values[0][2] * c2 + m.values[0][3] * c1) * invdet;
-    b.values[1][2] = (-m.values[3][0] * s5 + m.values[3][2] * s2 - m.values[3][3] * s1) * invdet;
-    b.values[1][3] = ( m.values[2][0] * s5 - m.values[2][2] * s2 + m.values[2][3] * s1) * invdet;
+      ( v[4]  * c4 - v[5]  * c2 + v[7]  * c0) * invdet,
+      (-v[0]  * c4 + v[1]  * c2 - v[3]  * c0) * invdet,
+      ( v[12] * s4 - v[13] * s2 + v[15] * s0) * invdet,
+      (-v[8]  * s4 + v[9]  * s2 - v[11] * s0) * invdet,
 
-    b.values[2][0] = ( m.values[1][0] * c4 - m.values[1][1] * c2 + m.values[1][3] * c0) * invdet;
-    b.values[2][1] = (-m.values[0][0] * c4 + m.values[0][1] * c2 - m.values[0][3] * c0) * invdet;
-    b.values[2][2] = ( m.values[3][0] * s4 - m.values[3][1] * s2 + m.values[3][3] * s0) * invdet;
-    b.values[2][3] = (-m.values[2][0] * s4 + m.values[2][1] * s2 - m.values[2][3] * s0) * invdet;
+      (-v[4]  * c3 + v[5]  * c1 - v[6]  * c0) * invdet,
+      ( v[0]  * c3 - v[1]  * c1 + v[2]  * c0) * invdet,
+      (-v[12] * s3 + v[13] * s1 - v[14] * s0) * invdet,
+      ( v[8]  * s3 - v[9]  * s1 + v[10] * s0) * invdet);
+  }
 
-    b.values[3][0] = (-m.values[1][0] * c3 + m.values[1][1] * c1 - m.values[1][2] * c0) * invdet;
-    b.values[3][1] = ( m.values[0][0] * c3 - m.values[0][1] * c1 + m.values[0][2] * c0) * invdet;
-    b.values[3][2] = (-m.values[3][0] * s3 + m.values[3][1] * s1 - m.values[3][2] * s0) * invdet;
-    b.values[3][3] = ( m.values[2][0] * s3 - m.values[2][1] * s1 + m.values[2][2] * s0) * invdet;
+  public float[] toFloatArrayForGLSL() {  // col by row
+    return toFloatArrayForGLSL(new float[16]);
+  }
 
-    return b; 
+  public float[] toFloatArrayForGLSL(float[] f) {  // col by row, into a caller-owned array
+    return toFloatArrayForGLSL(f, 0);
   }
-  
-  public float[] toFloatArrayForGLSL() {  // col by row
-    float[] f = new float[16];
+
+  public float[] toFloatArrayForGLSL(float[] f, int offset) {  // col by row, starting at f[offset]
     for (int j=0; j<4; ++j) {
       for (int i=0; i<4; ++i) {
-        f[j*4+i] = values[i][j];
+        f[offset+j*4+i] = values[i*4+j];
       }
     }
     return f;
   }
-  
+
+  // The normal matrix mat3(transpose(inverse(m))), col by row, into f[offset] to f[offset+8].
+  // For a model matrix (bottom row 0,0,0,1) the upper 3x3 of inverse(m) is the inverse of the
+  // upper 3x3 of m, so this only needs the cofactors of that 3x3 divided by its determinant.
+  public float[] toNormalMatrixForGLSL(float[] f, int offset) {
+    float[] v = values;
+    float c00 = v[5]*v[10] - v[6]*v[9];
+    float c01 = v[6]*v[8]  - v[4]*v[10];
+    float c02 = v[4]*v[9]  - v[5]*v[8];
+    float c10 = v[2]*v[9]  - v[1]*v[10];
+    float c11 = v[0]*v[10] - v[2]*v[8];
+    float c12 = v[1]*v[8]  - v[0]*v[9];
+    float c20 = v[1]*v[6]  - v[2]*v[5];
+    float c21 = v[2]*v[4]  - v[0]*v[6];
+    float c22 = v[0]*v[5]  - v[1]*v[4];
+    // Should check for 0 determinant
+    float invdet = 1.0f / (v[0]*c00 + v[1]*c01 + v[2]*c02);
+    // transpose(inverse) is the cofactor matrix itself; written column by column
+    f[offset]   = c00*invdet; f[offset+1] = c10*invdet; f[offset+2] = c20*invdet;
+    f[offset+3] = c01*invdet; f[offset+4] = c11*invdet; f[offset+5] = c21*invdet;
+    f[offset+6] = c02*invdet; f[offset+7] = c12*invdet; f[offset+8] = c22*invdet;
+    return f;
+  }
+
   public String asFloatArrayForGLSL() {  // col by row
     String s = "{";
     for (int j=0; j<4; ++j) {
       for (int i=0; i<4; ++i) {
-        s += String.format("%.2f",values[i][j]);
+        s += String.format("%.2f",values[i*4+j]);
         if (!(j==3 && i==3)) s+=",";
       }
     }
     return s;
   }
-  
+
   public String toString() {
     String s = "{";
     for (int i=0; i<4; ++i) {
       s += (i==0) ? "{" : " {";
       for (int j=0; j<4; ++j) {
-        s += String.format("%.2f",values[i][j]);  
+        s += String.format("%.2f",values[i*4+j]);
         if (j<3) s += ", ";
       }
       s += (i==3) ? "}" : "},\n";
-    } 
+    }
     s += "}";
     return s;
   }
-  
+
 } // end of Mat4 class
\ No newline at end of file
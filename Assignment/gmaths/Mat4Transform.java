@@ -33,11 +33,24 @@ public final class Mat4Transform  {   // row column formulation
    * @return  The resulting 4x4 translation matrix, as a Mat4
    */
    public static Mat4 translate(float tx, float ty, float tz) {
-    Mat4 m = new Mat4(1);
-    m.set(0,3, tx);
-    m.set(1,3, ty);
-    m.set(2,3, tz);
-    return m;
+    return translateInto(tx, ty, tz, new Mat4());
+  }
+
+  /**
+   * Writes a 4x4 translation matrix into an existing matrix, so that no new Mat4 is created.
+   * 
+   * @param tx The translation amount for x
+   * @param ty The translation amount for y
+   * @param tz The translation amount for z
+   * @param dest The matrix to overwrite
+   * @return  dest
+   */
+   public static Mat4 translateInto(float tx, float ty, float tz, Mat4 dest) {
+    dest.setIdentity();
+    dest.set(0,3, tx);
+    dest.set(1,3, ty);
+    dest.set(2,3, tz);
+    return dest;
   }
   
   /**
@@ -59,11 +72,24 @@ public final class Mat4Transform  {   // row column formulation
    * @return  The resulting 4x4 scale matrix, as a Mat4
    */
    public static Mat4 scale(float sx, float sy, float sz) {
-    Mat4 m = new Mat4(1);
-    m.set(0,0, sx);
-    m.set(1,1, sy);
-    m.set(2,2, sz);
-    return m;
+    return scaleInto(sx, sy, sz, new Mat4());
+  }
+
+  /**
+   * Writes a 4x4 scale matrix into an existing matrix, so that no new Mat4 is created.
+   * 
+   * @param sx The scale amount for x
+   * @param sy The scale amount for y
+   * @param sz The scale amount for z
+   * @param dest The matrix to overwrite
+   * @return  dest
+   */
+   public static Mat4 scaleInto(float sx, float sy, float sz, Mat4 dest) {
+    dest.setIdentity();
+    dest.set(0,0, sx);
+    dest.set(1,1, sy);
+    dest.set(2,2, sz);
+    return dest;
   }
 
   /**
@@ -73,13 +99,26 @@ public final class Mat4Transform  {   // row column formulation
    * @return  The resulting 4x4 rotation matrix, as a Mat4
    */
    public static Mat4 rotateAroundX(float angle) {   // angle in degrees
-    Mat4 m = new Mat4(1);
+    return rotateAroundXInto(angle, new Mat4());
+  }
+
+  /**
+   * Writes a 4x4 rotation matrix around the X axis into an existing matrix, so that no new Mat4 is created.
+   * 
+   * @param angle The amount of rotation in degrees. Positive values indicate anticlockwise rotation.
+   * @param dest The matrix to overwrite
+   * @return  dest
+   */
+   public static Mat4 rotateAroundXInto(float angle, Mat4 dest) {   // angle in degrees
+    dest.setIdentity();
     angle = (float)(angle*Math.PI/180.0);
-    m.set(1,1, (float)Math.cos(angle));
-    m.set(1,2, -(float)Math.sin(angle));
-    m.set(2,1, (float)Math.sin(angle));
-    m.set(2,2, (float)Math.cos(angle));
-    return m;
+    float c = (float)Math.cos(angle);
+    float s = (float)Math.sin(angle);
+    dest.set(1,1, c);
+    dest.set(1,2, -s);
+    dest.set(2,1, s);
+    dest.set(2,2, c);
+    return dest;
   }
   
   /**
@@ -89,13 +128,26 @@ public final class Mat4Transform  {   // row column formulation
    * @return  The resulting 4x4 rotation matrix, as a Mat4
    */
    public static Mat4 rotateAroundY(float angle) {   // angle in degrees
-    Mat4 m = new Mat4(1);
+    return rotateAroundYInto(angle, new Mat4());
+  }
+
+  /**
+   * Writes a 4x4 rotation matrix around the Y axis into an existing matrix, so that no new Mat4 is created.
+   * 
+   * @param angle The amount of rotation in degrees. Positive values indicate anticlockwise rotation.
+   * @param dest The matrix to overwrite
+   * @return  dest
+   */
+   public static Mat4 rotateAroundYInto(float angle, Mat4 dest) {   // angle in degrees
+    dest.setIdentity();
     angle = (float)(angle*Math.PI/180.0);
-    m.set(0,0, (float)Math.cos(angle));
-    m.set(0,2, (float)Math.sin(angle));
-    m.set(2,0, -(float)Math.sin(angle));
-    m.set(2,2, (float)Math.cos(angle));
-    return m;
+    float c = (float)Math.cos(angle);
+    float s = (float)Math.sin(angle);
+    dest.set(0,0, c);
+    dest.set(0,2, s);
+    dest.set(2,0, -s);
+    dest.set(2,2, c);
+    return dest;
   }
 
   /**
@@ -105,13 +157,26 @@ public final class Mat4Transform  {   // row column formulation
    * @return  The resulting 4x4 rotation matrix, as a Mat4
    */
    public static Mat4 rotateAroundZ(float angle) {   // angle in degrees
-    Mat4 m = new Mat4(1);
+    return rotateAroundZInto(angle, new Mat4());
+  }
+
+  /**
+   * Writes a 4x4 rotation matrix around the Z axis into an existing matrix, so that no new Mat4 is created.
+   * 
+   * @param angle The amount of rotation in degrees. Positive values indicate anticlockwise rotation.
+   * @param dest The matrix to overwrite
+   * @return  dest
+   */
+   public static Mat4 rotateAroundZInto(float angle, Mat4 dest) {   // angle in degrees
+    dest.setIdentity();
     angle = (float)(angle*Math.PI/180.0);
-    m.set(0,0, (float)Math.cos(angle));
-    m.set(0,1, -(float)Math.sin(angle));
-    m.set(1,0, (float)Math.sin(angle));
-    m.set(1,1, (float)Math.cos(angle));
-    return m;
+    float c = (float)Math.cos(angle);
+    float s = (float)Math.sin(angle);
+    dest.set(0,0, c);
+    dest.set(0,1, -s);
+    dest.set(1,0, s);
+    dest.set(1,1, c);
+    return dest;
   }
   
   /**
@@ -159,28 +224,33 @@ public final class Mat4Transform  {   // row column formulation
    * @return  The 4x4 viewing matrix, as a Mat4.
    */
    public static Mat4 lookAt(Vec3 from, Vec3 to, Vec3 worldup) {
-    Vec3 front = Vec3.subtract(to, from);
-    front.normalize();
-    Vec3 right = Vec3.crossProduct(front, worldup);
-    right.normalize();
-    Vec3 up = Vec3.crossProduct(right, front);
-    up.normalize();
-    Mat4 view = new Mat4(1);
-    view.set(0, 0, right.x);
-    view.set(0, 1, right.y);
-    view.set(0, 2, right.z);
-    view.set(1, 0, up.x);
-    view.set(1, 1, up.y);
-    view.set(1, 2, up.z);
-    view.set(2, 0, -front.x);
-    view.set(2, 1, -front.y);
-    view.set(2, 2, -front.z);
-    Mat4 cam = new Mat4(1);
-    cam.set(0, 3, -from.x);
-    cam.set(1, 3, -from.y);
-    cam.set(2, 3, -from.z);
-    Mat4 result = Mat4.multiply(view, cam);
-    return result;
+    return lookAtInto(from, to, worldup, new Mat4());
+  }
+
+  /**
+   * Writes a view matrix into an existing matrix, so that no new Mat4 or Vec3 is created. See lookAt.
+   * 
+   * @param from The camera postion.
+   * @param to The target that the camera is looking at.
+   * @param worldup The up direction for the world. 
+   * @param dest The matrix to overwrite
+   * @return  dest
+   */
+   public static Mat4 lookAtInto(Vec3 from, Vec3 to, Vec3 worldup, Mat4 dest) {
+    float fx = to.x-from.x, fy = to.y-from.y, fz = to.z-from.z;
+    float mag = (float)Math.sqrt(fx*fx+fy*fy+fz*fz);   // fails if mag = 0
+    fx /= mag; fy /= mag; fz /= mag;
+    float rx = fy*worldup.z-fz*worldup.y, ry = fz*worldup.x-fx*worldup.z, rz = fx*worldup.y-fy*worldup.x;
+    mag = (float)Math.sqrt(rx*rx+ry*ry+rz*rz);
+    rx /= mag; ry /= mag; rz /= mag;
+    float ux = ry*fz-rz*fy, uy = rz*fx-rx*fz, uz = rx*fy-ry*fx;
+    mag = (float)Math.sqrt(ux*ux+uy*uy+uz*uz);
+    ux /= mag; uy /= mag; uz /= mag;
+    // the rotation (rows right, up, -front) multiplied by the translation to -from
+    return dest.set( rx,  ry,  rz, -(rx*from.x + ry*from.y + rz*from.z),
+                     ux,  uy,  uz, -(ux*from.x + uy*from.y + uz*from.z),
+                    -fx, -fy, -fz,  (fx*from.x + fy*from.y + fz*from.z),
+                      0,   0,   0,  1);
   }
   
 } // end of class
\ No newline at end of file
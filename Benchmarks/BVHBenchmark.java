@@ -0,0 +1,84 @@
+import gmaths.*;
+import java.util.Random;
+
+/**
+ * Benchmarks for gmaths.BVH over a large scene of small boxes. Run from this folder with:
+ *   javac -cp ../Assignment *.java
+ *   java -cp .;../Assignment BVHBenchmark
+ */
+
+public class BVHBenchmark {
+
+  private static final int INSTANCES = 100_000;
+  private static final float WORLD_SIZE = 1000;
+
+  private static BVH bvh = new BVH(INSTANCES);
+  private static float[] bounds = new float[INSTANCES*6];  // the same boxes, for the linear comparison
+  private static int[] result = new int[INSTANCES];
+  private static Frustum frustum = new Frustum();
+  private static Random random = new Random(1);
+  private static Vec3 origin = new Vec3();
+  private static Vec3 direction = new Vec3();
+
+  public static void main(String[] args) {
+    setRandomBounds();
+    Benchmark.printHeader();
+    Benchmark.run("BVH.build 100k", () -> {
+      bvh.build();
+      return bvh.getNodeCount();
+    });
+    bvh.build();
+    Benchmark.run("BVH.refit 100k", () -> {
+      bvh.refit();
+      return bvh;
+    });
+
+    Mat4 projection = Mat4Transform.perspective(45, 1, 0.1f, 200);
+    Benchmark.run("BVH.query frustum", () -> {
+      float a = random.nextFloat()*360;
+      Mat4 view = Mat4Transform.lookAt(new Vec3(WORLD_SIZE/2, 10, WORLD_SIZE/2),
+                                       new Vec3(WORLD_SIZE/2 + (float)Math.cos(a), 10, WORLD_SIZE/2 + (float)Math.sin(a)),
+                                       new Vec3(0, 1, 0));
+      frustum.set(Mat4.multiply(projection, view));
+      return bvh.query(frustum, result);
+    });
+    Benchmark.run("BVH.raycast", () -> {
+      randomPoint(origin);
+      direction.x = random.nextFloat()-0.5f;
+      direction.y = random.nextFloat()-0.5f;
+      direction.z = random.nextFloat()-0.5f;
+      return bvh.raycast(origin, direction, Float.POSITIVE_INFINITY);
+    });
+    Benchmark.run("BVH.nearest", () -> {
+      randomPoint(origin);
+      return bvh.nearest(origin);
+    });
+
+    // For comparison, the same work without the hierarchy
+    Benchmark.run("Linear frustum test 100k", () -> {
+      int found = 0;
+      for (int i=0; i<INSTANCES; ++i) {
+        if (frustum.intersects(bounds[i*6], bounds[i*6+1], bounds[i*6+2], bounds[i*6+3], bounds[i*6+4], bounds[i*6+5])) found++;
+      }
+      return found;
+    });
+  }
+
+  private static void setRandomBounds() {
+    Vec3 p = new Vec3();
+    for (int i=0; i<INSTANCES; ++i) {
+      randomPoint(p);
+      float size = 0.5f + random.nextFloat()*2;
+      bounds[i*6] = p.x;  bounds[i*6+1] = p.y;  bounds[i*6+2] = p.z;
+      bounds[i*6+3] = p.x+size;  bounds[i*6+4] = p.y+size;  bounds[i*6+5] = p.z+size;
+      bvh.setItemBounds(i, p.x, p.y, p.z, p.x+size, p.y+size, p.z+size);
+    }
+  }
+
+  private static void randomPoint(Vec3 p) {
+    p.x = random.nextFloat()*WORLD_SIZE;
+    p.y = random.nextFloat()*20;
+    p.z = random.nextFloat()*WORLD_SIZE;
+  }
+
+}
@@ -0,0 +1,191 @@
+import gmaths.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks gmaths.BVH against a linear scan of the same boxes: frustum queries, raycasts and nearest
+ * items from seeded random poses, rays that run along box faces and edges, and the same again after
+ * the boxes have moved and the tree has been refitted. Run from this folder with bench.bat.
+ */
+
+public class BVHCheck {
+
+  private static final int ITEMS = 2000;
+  private static final float WORLD_SIZE = 100;
+  private static final int QUERIES = 300;
+
+  private static int checks = 0, failures = 0;
+
+  private static BVH bvh = new BVH(ITEMS);
+  private static float[] bounds = new float[ITEMS*6];
+  private static Random random = new Random(3);
+
+  public static void main(String[] args) {
+    for (int i=0; i<ITEMS; ++i) {
+      float x = random.nextFloat()*WORLD_SIZE, y = random.nextFloat()*WORLD_SIZE/10, z = random.nextFloat()*WORLD_SIZE;
+      float size = 0.5f + random.nextFloat()*4;
+      setBounds(i, x, y, z, x+size, y+size, z+size);
+    }
+    bvh.build();
+    checkAll("after build");
+
+    // Move every box a little, and empty a few, then refit rather than rebuild
+    for (int i=0; i<ITEMS; ++i) {
+      if (i%100 == 0) {
+        bvh.setItemBounds(i, new BoundingSphere());
+        System.arraycopy(new float[] {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                                      -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE}, 0, bounds, i*6, 6);
+        continue;
+      }
+      float dx = (random.nextFloat()-0.5f)*10, dy = (random.nextFloat()-0.5f)*2, dz = (random.nextFloat()-0.5f)*10;
+      int b = i*6;
+      setBounds(i, bounds[b]+dx, bounds[b+1]+dy, bounds[b+2]+dz, bounds[b+3]+dx, bounds[b+4]+dy, bounds[b+5]+dz);
+    }
+    bvh.refit();
+    checkAll("after refit");
+
+    System.out.println(checks + " checks, " + failures + " failed");
+  }
+
+  private static void setBounds(int item, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    int b = item*6;
+    bounds[b] = minX;  bounds[b+1] = minY;  bounds[b+2] = minZ;
+    bounds[b+3] = maxX;  bounds[b+4] = maxY;  bounds[b+5] = maxZ;
+    bvh.setItemBounds(item, minX, minY, minZ, maxX, maxY, maxZ);
+  }
+
+  private static void checkAll(String when) {
+    checkFrustums(when);
+    Vec3 origin = new Vec3(), direction = new Vec3();
+    for (int q=0; q<QUERIES; ++q) {
+      randomPoint(origin);
+      direction.x = random.nextFloat()-0.5f;
+      direction.y = random.nextFloat()-0.5f;
+      direction.z = random.nextFloat()-0.5f;
+      checkRay(when + ", random ray", origin, direction);
+    }
+    checkFaceRays(when);
+    for (int q=0; q<QUERIES; ++q) {
+      randomPoint(origin);
+      checkNearest(when, origin);
+    }
+  }
+
+  private static void checkFrustums(String when) {
+    Frustum frustum = new Frustum();
+    Mat4 projection = Mat4Transform.perspective(45, 1, 0.1f, 60);
+    int[] result = new int[ITEMS];
+    int[] expected = new int[ITEMS];
+    for (int q=0; q<QUERIES; ++q) {
+      Vec3 from = new Vec3();
+      randomPoint(from);
+      Vec3 to = new Vec3();
+      randomPoint(to);
+      frustum.set(Mat4.multiply(projection, Mat4Transform.lookAt(from, to, new Vec3(0, 1, 0))));
+      int found = bvh.query(frustum, result);
+      int expectedCount = 0;
+      for (int i=0; i<ITEMS; ++i) {
+        int b = i*6;
+        if (frustum.intersects(bounds[b], bounds[b+1], bounds[b+2], bounds[b+3], bounds[b+4], bounds[b+5])) expected[expectedCount++] = i;
+      }
+      Arrays.sort(result, 0, found);
+      checks++;
+      if (!Arrays.equals(result, 0, found, expected, 0, expectedCount)) {
+        failures++;
+        System.out.println("[error] " + when + ": frustum query from " + from + " found " + found + " items, expected " + expectedCount);
+      }
+    }
+  }
+
+  // Rays parallel to two axes, starting on the plane of a box's face or on the line of its edge
+  private static void checkFaceRays(String when) {
+    Vec3 origin = new Vec3(), direction = new Vec3();
+    for (int q=0; q<QUERIES; ++q) {
+      int b = random.nextInt(ITEMS)*6;
+      if (bounds[b] > bounds[b+3]) continue;   // emptied
+      float y = bounds[b+1] + random.nextFloat()*(bounds[b+4]-bounds[b+1]);
+      float z = bounds[b+2] + random.nextFloat()*(bounds[b+5]-bounds[b+2]);
+      // along the min x face, in from -z
+      origin.x = bounds[b];  origin.y = y;  origin.z = bounds[b+2]-10;
+      direction.x = 0;  direction.y = 0;  direction.z = 1;
+      checkRay(when + ", ray along a face", origin, direction);
+      // along the max y face, in from +x
+      origin.x = bounds[b+3]+10;  origin.y = bounds[b+4];  origin.z = z;
+      direction.x = -1;  direction.y = 0;  direction.z = 0;
+      checkRay(when + ", ray along a face", origin, direction);
+      // along the edge where the min x and min y faces meet, in from +z
+      origin.x = bounds[b];  origin.y = bounds[b+1];  origin.z = bounds[b+5]+10;
+      direction.x = 0;  direction.y = 0;  direction.z = -2;
+      checkRay(when + ", ray along an edge", origin, direction);
+    }
+  }
+
+  private static void checkRay(String what, Vec3 origin, Vec3 direction) {
+    int hit = bvh.raycast(origin, direction, Float.POSITIVE_INFINITY);
+    float distance = bvh.getLastDistance();
+    int expected = -1;
+    float best = Float.POSITIVE_INFINITY;
+    for (int i=0; i<ITEMS; ++i) {
+      float t = rayDistance(i*6, origin, direction);
+      if (t < best) {
+        best = t;
+        expected = i;
+      }
+    }
+    checks++;
+    // Boxes can be hit at the same distance, so only the distance has to agree
+    if ((hit < 0) != (expected < 0) || (hit >= 0 && !close(distance, best))) {
+      failures++;
+      System.out.println("[error] " + what + " from " + origin + " along " + direction + " hit " + hit + " at " + distance
+        + ", expected " + expected + " at " + best);
+    }
+  }
+
+  // Written without the reciprocal and NaN handling of BVH, as the plain definition:
+  // an axis the ray does not move along only needs the origin between the faces, and an empty box is never hit
+  private static float rayDistance(int b, Vec3 o, Vec3 d) {
+    if (bounds[b] > bounds[b+3]) return Float.POSITIVE_INFINITY;
+    float[] origin = {o.x, o.y, o.z}, dir = {d.x, d.y, d.z};
+    float tmin = 0, tmax = Float.POSITIVE_INFINITY;
+    for (int axis=0; axis<3; ++axis) {
+      float min = bounds[b+axis], max = bounds[b+3+axis];
+      if (dir[axis] == 0) {
+        if (origin[axis] < min || origin[axis] > max) return Float.POSITIVE_INFINITY;
+      } else {
+        float t1 = (min-origin[axis])/dir[axis], t2 = (max-origin[axis])/dir[axis];
+        tmin = Math.max(tmin, Math.min(t1, t2));
+        tmax = Math.min(tmax, Math.max(t1, t2));
+      }
+    }
+    return tmax < tmin ? Float.POSITIVE_INFINITY : tmin;
+  }
+
+  private static void checkNearest(String when, Vec3 point) {
+    int found = bvh.nearest(point);
+    float distance = bvh.getLastDistance();
+    float best = Float.POSITIVE_INFINITY;
+    for (int i=0; i<ITEMS; ++i) {
+      int b = i*6;
+      float dx = Math.max(0, Math.max(bounds[b]-point.x, point.x-bounds[b+3]));
+      float dy = Math.max(0, Math.max(bounds[b+1]-point.y, point.y-bounds[b+4]));
+      float dz = Math.max(0, Math.max(bounds[b+2]-point.z, point.z-bounds[b+5]));
+      best = Math.min(best, (float)Math.sqrt(dx*dx + dy*dy + dz*dz));
+    }
+    checks++;
+    if (found < 0 || !close(distance, best)) {
+      failures++;
+      System.out.println("[error] " + when + ": nearest to " + point + " was " + found + " at " + distance + ", expected " + best);
+    }
+  }
+
+  private static boolean close(float a, float b) {
+    return Math.abs(a-b) <= 1e-4f*Math.max(1, Math.abs(b));
+  }
+
+  private static void randomPoint(Vec3 p) {
+    p.x = random.nextFloat()*WORLD_SIZE;
+    p.y = random.nextFloat()*WORLD_SIZE/10;
+    p.z = random.nextFloat()*WORLD_SIZE;
+  }
+
+}
@@ -0,0 +1,76 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * A small microbenchmark harness. Each benchmark is warmed up, then timed over
+ * several measurement rounds. Reports the average time per operation and the
+ * number of bytes allocated on the heap per operation.
+ *
+ * Allocation is measured with the HotSpot per-thread allocation counter, so
+ * only allocation made by the benchmark thread is counted.
+ *
+ * This is a fallback for running without Maven. It has none of JMH's forking or
+ * statistics, so numbers that matter should come from the JMH benchmarks in jmh/.
+ */
+
+public final class Benchmark {
+
+  public interface Op {
+    Object run();   // return something derived from the work, so that it is not optimised away
+  }
+
+  private static final long WARMUP_NANOS = 1_000_000_000L;
+  private static final long ROUND_NANOS = 500_000_000L;
+  private static final int ROUNDS = 5;
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+    (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+  private static volatile Object sink;
+
+  public static void printHeader() {
+    System.out.println(String.format("%-44s %12s %12s", "Benchmark", "ns/op", "B/op"));
+  }
+
+  public static void run(String name, Op op) {
+    long batch = calibrate(op);
+    double bestNanosPerOp = Double.MAX_VALUE;
+    double bytesPerOp = 0;
+    for (int r=0; r<ROUNDS; ++r) {
+      long ops = 0;
+      long bytes = allocatedBytes();
+      long start = System.nanoTime();
+      long elapsed;
+      do {
+        for (long i=0; i<batch; ++i) {
+          sink = op.run();
+        }
+        ops += batch;
+        elapsed = System.nanoTime() - start;
+      } while (elapsed < ROUND_NANOS);
+      bytes = allocatedBytes() - bytes;
+      bestNanosPerOp = Math.min(bestNanosPerOp, (double)elapsed/ops);
+      bytesPerOp = (double)bytes/ops;
+    }
+    System.out.println(String.format("%-44s %12.2f %12.2f", name, bestNanosPerOp, bytesPerOp));
+  }
+
+  // Runs the warm up and works out how many calls make up roughly a millisecond,
+  // so that the clock is not read on every call.
+  private static long calibrate(Op op) {
+    long batch = 1;
+    long start = System.nanoTime();
+    while (System.nanoTime() - start < WARMUP_NANOS) {
+      long t = System.nanoTime();
+      for (long i=0; i<batch; ++i) {
+        sink = op.run();
+      }
+      if (System.nanoTime() - t < 1_000_000L) batch *= 2;
+    }
+    return batch;
+  }
+
+  private static long allocatedBytes() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+}
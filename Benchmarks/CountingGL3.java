@@ -0,0 +1,152 @@
+import java.lang.reflect.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import com.jogamp.opengl.*;
+
+/**
+ * A GL3 with no context behind it, for checking on the CPU which GL calls the code makes.
+ * It is a java.lang.reflect.Proxy that counts every call by method name, and keeps the
+ * calls made since the last clear with their arguments.
+ *
+ * Just enough of a driver is faked for a Mesh, and a Shader for a program from glCreateProgram,
+ * to be created: names are handed out from 1, and every program has the active uniforms given to
+ * the constructor, at locations 0, 1, 2 ... in that order. Other calls return 0, false or null.
+ * Compiling shader source needs a current GLContext, which this does not have.
+ *
+ * Making the proxy initialises JOGL's buffer classes, so gluegen's native library must be on the
+ * library path, as it is for running the program itself.
+ */
+
+public final class CountingGL3 implements InvocationHandler {
+
+  private final List<String> uniforms;
+  private final Map<String, Integer> counts = new HashMap<String, Integer>();
+  private final Map<String, Integer> locationLookups = new HashMap<String, Integer>();
+  private final List<String> calls = new ArrayList<String>();
+  private int nextName = 1;
+  private final GL3 gl;
+
+  public CountingGL3(String... uniforms) {
+    this.uniforms = Arrays.asList(uniforms);
+    gl = (GL3)Proxy.newProxyInstance(GL3.class.getClassLoader(), new Class<?>[] {GL3.class}, this);
+  }
+
+  public GL3 getGL() {
+    return gl;
+  }
+
+  /* The number of calls to a method since the last clear */
+  public int count(String method) {
+    return counts.getOrDefault(method, 0);
+  }
+
+  /* The number of times glGetUniformLocation was asked for a name since the last clear */
+  public int locationLookups(String name) {
+    return locationLookups.getOrDefault(name, 0);
+  }
+
+  public Map<String, Integer> getLocationLookups() {
+    return locationLookups;
+  }
+
+  /* The calls since the last clear, in order, each as its name and arguments, e.g. glUniform1i(3, 0) */
+  public List<String> getCalls() {
+    return calls;
+  }
+
+  public void clear() {
+    counts.clear();
+    locationLookups.clear();
+    calls.clear();
+  }
+
+  public Object invoke(Object proxy, Method method, Object[] args) {
+    String name = method.getName();
+    if (method.getDeclaringClass() == Object.class) {
+      switch (name) {
+        case "equals": return proxy == args[0];
+        case "hashCode": return System.identityHashCode(proxy);
+        default: return "CountingGL3";
+      }
+    }
+    if (name.startsWith("getGL") && method.getReturnType().isInstance(proxy)) return proxy;   // getGL2ES2 and so on
+    counts.merge(name, 1, Integer::sum);
+    calls.add(name + "(" + describe(args) + ")");
+    switch (name) {
+      case "glCreateShader":
+      case "glCreateProgram":
+        return nextName++;
+      case "glGenBuffers":
+      case "glGenVertexArrays":
+      case "glGenTextures":
+        if (args.length == 3 && args[1] instanceof int[]) {
+          int[] names = (int[])args[1];
+          for (int i=0; i<(Integer)args[0]; ++i) names[(Integer)args[2]+i] = nextName++;
+        }
+        return null;
+      case "glGetShaderiv":
+      case "glGetProgramiv":
+        if (args.length == 4 && args[2] instanceof int[]) {
+          ((int[])args[2])[(Integer)args[3]] = parameter((Integer)args[1]);
+        }
+        return null;
+      case "glGetActiveUniform":
+        if (args.length == 11) {
+          byte[] bytes = uniforms.get((Integer)args[1]).getBytes(StandardCharsets.US_ASCII);
+          System.arraycopy(bytes, 0, (byte[])args[9], (Integer)args[10], bytes.length);
+          ((int[])args[3])[(Integer)args[4]] = bytes.length;
+          ((int[])args[5])[(Integer)args[6]] = 1;
+        }
+        return null;
+      case "glGetUniformLocation":
+        locationLookups.merge((String)args[1], 1, Integer::sum);
+        return uniforms.indexOf(args[1]);
+      case "glGetUniformBlockIndex":
+        return GL3.GL_INVALID_INDEX;
+      default:
+        return defaultValue(method.getReturnType());
+    }
+  }
+
+  private int parameter(int name) {
+    switch (name) {
+      case GL2ES2.GL_COMPILE_STATUS:
+      case GL2ES2.GL_LINK_STATUS:
+      case GL2ES2.GL_VALIDATE_STATUS:
+        return GL.GL_TRUE;
+      case GL2ES2.GL_ACTIVE_UNIFORMS:
+        return uniforms.size();
+      case GL2ES2.GL_ACTIVE_UNIFORM_MAX_LENGTH:
+        int longest = 0;
+        for (String u : uniforms) longest = Math.max(longest, u.length()+1);
+        return longest;
+      default:
+        return 0;
+    }
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == boolean.class) return false;
+    if (type == int.class) return 0;
+    if (type == long.class) return 0L;
+    if (type == float.class) return 0f;
+    if (type == double.class) return 0.0;
+    if (type == short.class) return (short)0;
+    if (type == byte.class) return (byte)0;
+    if (type == char.class) return (char)0;
+    return null;
+  }
+
+  private static String describe(Object[] args) {
+    if (args == null) return "";
+    StringBuilder s = new StringBuilder();
+    for (Object a : args) {
+      if (s.length() > 0) s.append(", ");
+      if (a instanceof float[]) s.append(Arrays.toString((float[])a));
+      else if (a instanceof int[]) s.append(Arrays.toString((int[])a));
+      else s.append(a);
+    }
+    return s.toString();
+  }
+
+}
@@ -0,0 +1,176 @@
+import gmaths.*;
+
+/**
+ * Checks culling decisions on the CPU against fixed camera poses: the two default cameras and a few
+ * turns of yaw and pitch. For each pose the frustum is taken from the camera, as RenderQueue does,
+ * and fixed spheres are tested that are inside, outside or across the edge of the view. Also checks
+ * that a scene graph node's bounds enclose its children's, and that when a node is outside the view
+ * nothing below it is visited. Run from this folder with bench.bat.
+ *
+ * The projection is 45 degrees with an aspect of 1, near 0.1 and far 100, so at distance d the view
+ * reaches d*tan(22.5) = 0.414*d to each side.
+ */
+
+public class CullingCheck {
+
+  private static int checks = 0, failures = 0;
+
+  // Stands in for ModelNode, which needs a GL mesh: bounds a sphere at its world position, and counts visits
+  private static class BoundsNode extends SGNode {
+    private final BoundingSphere local;
+    private BoundingSphere own = new BoundingSphere();
+    int visits = 0;
+
+    BoundsNode(String name, float radius) {
+      super(name);
+      local = new BoundingSphere(0, 0, 0, radius);
+    }
+
+    protected void updateBounds() {
+      super.updateBounds();
+      local.transformInto(worldTransform, own);
+      worldBounds.enclose(own);
+    }
+
+    public void draw(RenderQueue queue) {
+      visits++;
+      super.draw(queue);
+    }
+  }
+
+  public static void main(String[] args) {
+    Camera camera = new Camera(Camera.DEFAULT_POSITION, Camera.DEFAULT_TARGET, Camera.DEFAULT_UP);
+    camera.setPerspectiveMatrix(Mat4Transform.perspective(45, 1));
+    Frustum frustum = new Frustum();
+
+    // Camera X: at 0,0,25 looking down -z
+    camera.setCamera(Camera.CameraType.X);
+    frustum.set(camera.getViewProjectionMatrix());
+    expect("X", frustum, 0, 0, 0, 1, true, "the origin");
+    expect("X", frustum, 0, 0, 50, 1, false, "behind the camera");
+    expect("X", frustum, 0, 0, 25, 0.05f, false, "at the eye, inside the near distance");
+    expect("X", frustum, 0, 0, -200, 1, false, "beyond the far plane");
+    expect("X", frustum, 0, 0, -75, 2, true, "across the far plane");
+    expect("X", frustum, 12, 0, 0, 1, false, "past the right edge");
+    expect("X", frustum, 12, 0, 0, 2, true, "across the right edge");
+    expect("X", frustum, 0, -12, 0, 1, false, "below the bottom edge");
+    expect("X", frustum, 0, -12, 0, 2, true, "across the bottom edge");
+    expect("X", frustum, 10, 10, 0, 0.1f, true, "just inside the top right corner");
+
+    // Camera Z: at 25,0,0 looking down -x
+    camera.setCamera(Camera.CameraType.Z);
+    frustum.set(camera.getViewProjectionMatrix());
+    expect("Z", frustum, 0, 0, 0, 1, true, "the origin");
+    expect("Z", frustum, 50, 0, 0, 1, false, "behind the camera");
+    expect("Z", frustum, 0, 0, 12, 1, false, "past the left edge");
+    expect("Z", frustum, 0, 0, 12, 2, true, "across the left edge");
+    expect("Z", frustum, -200, 0, 0, 1, false, "beyond the far plane");
+
+    // Camera X turned 90 degrees to look down +x
+    camera.setCamera(Camera.CameraType.X);
+    camera.updateYawPitch((float)Math.toRadians(90), 0);
+    frustum.set(camera.getViewProjectionMatrix());
+    expect("X yaw 90", frustum, 0, 0, 0, 1, false, "the origin, now to the side");
+    expect("X yaw 90", frustum, 25, 0, 25, 1, true, "ahead");
+    expect("X yaw 90", frustum, -25, 0, 25, 1, false, "behind the camera");
+
+    // Camera X turned round to look down +z
+    camera.setCamera(Camera.CameraType.X);
+    camera.updateYawPitch((float)Math.toRadians(180), 0);
+    frustum.set(camera.getViewProjectionMatrix());
+    expect("X yaw 180", frustum, 0, 0, 0, 1, false, "the origin, now behind");
+    expect("X yaw 180", frustum, 0, 0, 50, 1, true, "ahead");
+
+    // Camera X looking 30 degrees up: the origin is 30 degrees below the view axis, 7.5 below the edge
+    camera.setCamera(Camera.CameraType.X);
+    camera.updateYawPitch(0, (float)Math.toRadians(30));
+    frustum.set(camera.getViewProjectionMatrix());
+    expect("X pitch 30", frustum, 0, 0, 0, 1, false, "the origin, now below the view");
+    expect("X pitch 30", frustum, 0, 0, 0, 5, true, "a larger sphere at the origin, across the bottom edge");
+    expect("X pitch 30", frustum, 0, 14.43f, 0, 1, true, "on the view axis");
+
+    // Camera X turned 20 degrees right and 10 degrees down
+    camera.setCamera(Camera.CameraType.X);
+    camera.updateYawPitch((float)Math.toRadians(20), (float)Math.toRadians(-10));
+    frustum.set(camera.getViewProjectionMatrix());
+    float d = 25;
+    float x = (float)(d*Math.cos(Math.toRadians(10))*Math.sin(Math.toRadians(20)));
+    float y = (float)(-d*Math.sin(Math.toRadians(10)));
+    float z = 25 - (float)(d*Math.cos(Math.toRadians(10))*Math.cos(Math.toRadians(20)));
+    expect("X yaw 20 pitch -10", frustum, x, y, z, 1, true, "on the view axis");
+    expect("X yaw 20 pitch -10", frustum, -x, -y, z, 1, false, "mirrored across the camera's start direction");
+
+    camera.setCamera(Camera.CameraType.X);
+    checkSubtreeCulling(camera);
+
+    System.out.println(checks + " checks, " + failures + " failed");
+  }
+
+  private static void expect(String pose, Frustum frustum, float x, float y, float z, float radius, boolean visible, String what) {
+    checks++;
+    if (frustum.intersects(new BoundingSphere(x, y, z, radius)) != visible) {
+      failures++;
+      System.out.println("[error] camera " + pose + ": sphere " + what + " at " + x + "," + y + "," + z + " radius " + radius
+        + " should be " + (visible ? "visible" : "culled"));
+    }
+  }
+
+  private static void checkSubtreeCulling(Camera camera) {
+    // Three groups of three spheres: in view, behind the camera, and across the right edge
+    SGNode root = new NameNode("root");
+    BoundsNode[][] groups = new BoundsNode[3][3];
+    float[] groupX = {0, 0, 10};
+    float[] groupZ = {0, 50, 0};
+    TransformNode[] groupNodes = new TransformNode[3];
+    for (int g=0; g<3; ++g) {
+      groupNodes[g] = new TransformNode("group " + g, Mat4Transform.translate(groupX[g], 0, groupZ[g]));
+      root.addChild(groupNodes[g]);
+      for (int i=0; i<3; ++i) {
+        groups[g][i] = new BoundsNode("sphere " + i, 0.5f);
+        TransformNode place = new TransformNode("place " + i, Mat4Transform.translate(i-1, 0, 0));   // x from -1 to 1
+        groupNodes[g].addChild(place);
+        place.addChild(groups[g][i]);
+      }
+    }
+    root.update();
+
+    for (int g=0; g<3; ++g) {
+      BoundingSphere parent = groupNodes[g].getWorldBounds();
+      for (BoundsNode child : groups[g]) {
+        BoundingSphere c = child.getWorldBounds();
+        float dx = c.x-parent.x, dy = c.y-parent.y, dz = c.z-parent.z;
+        checks++;
+        if (Math.sqrt(dx*dx + dy*dy + dz*dz) + c.radius > parent.radius + 1e-4f) {
+          failures++;
+          System.out.println("[error] group " + g + "'s bounds do not enclose " + child.name);
+        }
+      }
+    }
+
+    RenderQueue queue = new RenderQueue();
+    queue.clear(camera);
+    root.draw(queue);
+    expectVisits(groups[0], new int[] {1, 1, 1}, "in view");
+    expectVisits(groups[1], new int[] {0, 0, 0}, "behind the camera, culled as a whole");
+    expectVisits(groups[2], new int[] {1, 1, 0}, "across the right edge");
+    // The group behind is culled once, at its own node. Across the edge, which is at x 10.36, the
+    // group is visited but the sphere at x 11 is wholly past it, and is culled at the node placing it.
+    checks++;
+    if (queue.getCulledCount() != 2) {
+      failures++;
+      System.out.println("[error] " + queue.getCulledCount() + " subtrees culled, expected 2");
+    }
+  }
+
+  private static void expectVisits(BoundsNode[] group, int[] visits, String what) {
+    for (int i=0; i<group.length; ++i) {
+      checks++;
+      if (group[i].visits != visits[i]) {
+        failures++;
+        System.out.println("[error] group " + what + ": " + group[i].name + " visited " + group[i].visits
+          + " times, expected " + visits[i]);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,144 @@
+import gmaths.*;
+import java.util.Arrays;
+import java.util.List;
+import com.jogamp.opengl.*;
+
+/**
+ * Checks on the CPU, with a CountingGL3, that GLStateCache and Shader's uniform cache skip calls
+ * that would not change anything and still send every change: the exact GL calls made after each
+ * step are compared with those expected. Covers programs, vertex arrays, textures on several units,
+ * forgetTexture and invalidate, the issued and skipped counters, and uniforms of each type,
+ * including values that only differ in their bits (NaN and -0) and arrays changed in one element.
+ * Run from this folder with bench.bat.
+ */
+
+public class GLStateCacheCheck {
+
+  private static int checks = 0, failures = 0;
+
+  private static CountingGL3 counting = new CountingGL3("colour", "shininess", "model", "normalMatrix", "first_texture");
+  private static GL3 gl = counting.getGL();
+
+  public static void main(String[] args) {
+    checkBindings();
+    checkUniforms();
+    System.out.println(checks + " checks, " + failures + " failed");
+  }
+
+  private static void checkBindings() {
+    GLStateCache.invalidate();
+    GLStateCache.resetCounters();
+    counting.clear();
+
+    GLStateCache.useProgram(gl, 5);
+    GLStateCache.useProgram(gl, 5);
+    GLStateCache.useProgram(gl, 5);
+    expectCalls("using a program three times", "glUseProgram(5)");
+    GLStateCache.useProgram(gl, 6);
+    GLStateCache.useProgram(gl, 5);
+    expectCalls("switching program and back", "glUseProgram(6)", "glUseProgram(5)");
+
+    GLStateCache.bindVertexArray(gl, 9);
+    GLStateCache.bindVertexArray(gl, 9);
+    GLStateCache.bindVertexArray(gl, 0);
+    expectCalls("binding a vertex array twice then unbinding", "glBindVertexArray(9)", "glBindVertexArray(0)");
+
+    GLStateCache.bindTexture(gl, 0, 10);
+    GLStateCache.bindTexture(gl, 0, 10);
+    expectCalls("binding a texture to unit 0 twice",
+      "glActiveTexture(" + GL.GL_TEXTURE0 + ")", "glBindTexture(" + GL.GL_TEXTURE_2D + ", 10)");
+    GLStateCache.bindTexture(gl, 1, 11);
+    GLStateCache.bindTexture(gl, 1, 12);
+    expectCalls("binding two textures in turn to unit 1",
+      "glActiveTexture(" + (GL.GL_TEXTURE0+1) + ")", "glBindTexture(" + GL.GL_TEXTURE_2D + ", 11)",
+      "glBindTexture(" + GL.GL_TEXTURE_2D + ", 12)");
+    GLStateCache.bindTexture(gl, 0, 10);
+    expectCalls("binding unit 0's texture again, with unit 1 active");
+    GLStateCache.bindTexture(gl, 0, 13);
+    expectCalls("binding a new texture to unit 0",
+      "glActiveTexture(" + GL.GL_TEXTURE0 + ")", "glBindTexture(" + GL.GL_TEXTURE_2D + ", 13)");
+
+    // a deleted texture's name may be handed out again, so binding it must not be skipped
+    GLStateCache.forgetTexture(13);
+    GLStateCache.bindTexture(gl, 0, 13);
+    expectCalls("binding a texture after forgetTexture", "glBindTexture(" + GL.GL_TEXTURE_2D + ", 13)");
+
+    GLStateCache.invalidate();
+    GLStateCache.useProgram(gl, 5);
+    GLStateCache.bindVertexArray(gl, 0);
+    GLStateCache.bindTexture(gl, 0, 13);
+    expectCalls("the same state after invalidate", "glUseProgram(5)", "glBindVertexArray(0)",
+      "glActiveTexture(" + GL.GL_TEXTURE0 + ")", "glBindTexture(" + GL.GL_TEXTURE_2D + ", 13)");
+
+    expect(GLStateCache.getIssuedCalls() + " calls counted as issued, expected 17", GLStateCache.getIssuedCalls() == 17);
+    expect(GLStateCache.getSkippedCalls() + " calls counted as skipped, expected 5", GLStateCache.getSkippedCalls() == 5);
+  }
+
+  private static void checkUniforms() {
+    Shader shader = new Shader(gl, gl.glCreateProgram());
+    Shader other = new Shader(gl, gl.glCreateProgram());
+    counting.clear();
+
+    shader.setInt(gl, "first_texture", 0);
+    shader.setInt(gl, "first_texture", 0);
+    shader.setInt(gl, "first_texture", 1);
+    expectCalls("setting an int, the same again, then another", "glUniform1i(4, 0)", "glUniform1i(4, 1)");
+
+    shader.setFloat(gl, "shininess", 32);
+    shader.setFloat(gl, "shininess", 32);
+    shader.setFloat(gl, "shininess", -0f);
+    shader.setFloat(gl, "shininess", 0f);
+    shader.setFloat(gl, "shininess", Float.NaN);
+    shader.setFloat(gl, "shininess", Float.NaN);
+    expectCalls("setting a float, including -0 then 0, and NaN twice",
+      "glUniform1f(1, 32.0)", "glUniform1f(1, -0.0)", "glUniform1f(1, 0.0)", "glUniform1f(1, NaN)");
+
+    shader.setVec3(gl, "colour", new Vec3(1, 2, 3));
+    shader.setVec3(gl, "colour", new Vec3(1, 2, 3));
+    shader.setFloat(gl, "colour", 1, 2, 3);
+    shader.setVec3(gl, "colour", new Vec3(1, 2, 4));
+    expectCalls("setting a vec3 as a Vec3 and as floats, then changing z",
+      "glUniform3f(0, 1.0, 2.0, 3.0)", "glUniform3f(0, 1.0, 2.0, 4.0)");
+
+    float[] matrix = new Mat4(1).toFloatArrayForGLSL();
+    shader.setFloatArray(gl, "model", matrix);
+    shader.setFloatArray(gl, "model", matrix.clone());
+    matrix[14] = 5;
+    shader.setFloatArray(gl, "model", matrix);
+    expectCalls("setting a mat4, an equal copy, then changing one element",
+      "glUniformMatrix4fv(2, 1, false, " + Arrays.toString(new Mat4(1).toFloatArrayForGLSL()) + ", 0)",
+      "glUniformMatrix4fv(2, 1, false, " + Arrays.toString(matrix) + ", 0)");
+
+    float[] normalMatrix = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+    shader.setMat3Array(gl, "normalMatrix", normalMatrix);
+    shader.setMat3Array(gl, "normalMatrix", normalMatrix);
+    normalMatrix[0] = 2;
+    shader.setMat3Array(gl, "normalMatrix", normalMatrix);
+    expectCalls("setting a mat3, the same again, then changing one element",
+      "glUniformMatrix3fv(3, 1, false, [1.0, 0.0, 0.0, 0.0, 1.0, 0.0, 0.0, 0.0, 1.0], 0)",
+      "glUniformMatrix3fv(3, 1, false, [2.0, 0.0, 0.0, 0.0, 1.0, 0.0, 0.0, 0.0, 1.0], 0)");
+
+    // each program keeps its own uniform values, so the other shader must still be sent the value
+    other.setFloat(gl, "shininess", Float.NaN);
+    expectCalls("setting a value in a second shader that the first already has", "glUniform1f(1, NaN)");
+
+    shader.setFloat(gl, "notInTheProgram", 1);
+    shader.setFloat(gl, "notInTheProgram", 2);
+    expectCalls("setting a uniform the program does not have", "glGetUniformLocation(1, notInTheProgram)");
+  }
+
+  private static void expectCalls(String what, String... expected) {
+    List<String> calls = counting.getCalls();
+    expect(what + " made " + calls + ", expected " + Arrays.asList(expected), calls.equals(Arrays.asList(expected)));
+    counting.clear();
+  }
+
+  private static void expect(String what, boolean passed) {
+    checks++;
+    if (!passed) {
+      failures++;
+      System.out.println("[error] " + what);
+    }
+  }
+
+}
@@ -0,0 +1,57 @@
+import gmaths.*;
+
+/**
+ * Benchmarks for the gmaths package on the small harness in Benchmark.java, for when Maven is not
+ * available. The JMH version in jmh/ is the one to trust; see pom.xml. Run from this folder with
+ * bench.bat or bench.sh, or:
+ *   javac -cp ../Assignment *.java
+ *   java -cp .:../Assignment GMathsBenchmark   (; rather than : on Windows)
+ */
+
+public class GMathsBenchmark {
+
+  // Inputs are non-final fields and every result is returned to the harness, which stores it,
+  // so the JIT cannot treat the work as constant or dead. Only the angles change between calls.
+  private static Mat4 a = Mat4Transform.rotateAroundY(25);
+  private static Mat4 b = Mat4.multiply(Mat4Transform.translate(1, 2, 3), Mat4Transform.scale(2, 2, 2));
+  private static Mat4 dest = new Mat4(1);
+  private static float[] glsl = new float[16];
+  private static Vec3 from = new Vec3(0, 0, 25);
+  private static Vec3 to = new Vec3(0, 0, 0);
+  private static Vec3 up = new Vec3(0, 1, 0);
+  private static Vec3 v = new Vec3(1, 2, 3);
+  private static float angle = 0;
+
+  private static float nextAngle() {
+    angle += 0.1f;
+    if (angle > 360) angle = 0;
+    return angle;
+  }
+
+  public static void main(String[] args) {
+    Benchmark.printHeader();
+    Benchmark.run("Mat4.multiply", () -> Mat4.multiply(a, b));
+    Benchmark.run("Mat4.multiplyInto", () -> Mat4.multiplyInto(a, b, dest));
+    Benchmark.run("Mat4.inverse", () -> Mat4.inverse(b));
+    Benchmark.run("Mat4.inverseInto", () -> Mat4.inverseInto(b, dest));
+    Benchmark.run("Mat4.toFloatArrayForGLSL", () -> a.toFloatArrayForGLSL());
+    Benchmark.run("Mat4.toFloatArrayForGLSL(float[])", () -> a.toFloatArrayForGLSL(glsl));
+    Benchmark.run("Mat4Transform.rotateAroundX", () -> Mat4Transform.rotateAroundX(nextAngle()));
+    Benchmark.run("Mat4Transform.rotateAroundY", () -> Mat4Transform.rotateAroundY(nextAngle()));
+    Benchmark.run("Mat4Transform.rotateAroundZ", () -> Mat4Transform.rotateAroundZ(nextAngle()));
+    Benchmark.run("Mat4Transform.rotateAroundYInto", () -> Mat4Transform.rotateAroundYInto(nextAngle(), dest));
+    Benchmark.run("Mat4Transform.lookAt", () -> {
+      from.x = nextAngle();
+      return Mat4Transform.lookAt(from, to, up);
+    });
+    Benchmark.run("Vec3.normalize", () -> {
+      v.x = nextAngle();
+      return Vec3.normalize(v);
+    });
+    Benchmark.run("Vec3.crossProduct", () -> {
+      v.x = nextAngle();
+      return Vec3.crossProduct(v, from);
+    });
+  }
+
+}
@@ -0,0 +1,77 @@
+import java.io.*;
+
+/**
+ * Compares loading a mesh from a binary MeshFile with parsing the same mesh from OBJ text.
+ * The test files are written to the temporary folder first. Run from this folder with bench.bat.
+ *
+ * Reading a MeshFile only maps it, so the benchmark also reads every byte, as the upload to GL would.
+ */
+
+public class MeshLoadBenchmark {
+
+  private static final int SEGMENTS = 708;   // about a million triangles
+
+  public static void main(String[] args) throws IOException {
+    MeshData mesh = new MeshData(Sphere.createVertices(SEGMENTS+1, SEGMENTS+1), Sphere.createIndices(SEGMENTS+1, SEGMENTS+1));
+    File obj = File.createTempFile("sphere", ".obj");
+    File standard = File.createTempFile("sphere", ".mesh");
+    File compact = File.createTempFile("sphere-compact", ".mesh");
+    obj.deleteOnExit();
+    standard.deleteOnExit();
+    compact.deleteOnExit();
+    writeObj(obj, mesh);
+    MeshFile.write(standard.getPath(), mesh, VertexLayout.STANDARD);
+    MeshFile.write(compact.getPath(), mesh, VertexLayout.COMPACT);
+    System.out.println(mesh.getTriangleCount() + " triangles. OBJ " + obj.length()/1024 + " KB, mesh "
+                       + standard.length()/1024 + " KB, compact mesh " + compact.length()/1024 + " KB");
+
+    Benchmark.printHeader();
+    Benchmark.run("ObjLoader.load", () -> {
+      try {
+        return ObjLoader.load(obj.getPath());
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    Benchmark.run("MeshFile.read", () -> read(standard));
+    Benchmark.run("MeshFile.read compact", () -> read(compact));
+  }
+
+  private static long read(File f) {
+    try {
+      MeshFile.Contents c = MeshFile.read(f.getPath());
+      return checksum(c.vertexData) + checksum(c.indexData);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static long checksum(java.nio.ByteBuffer b) {
+    long sum = 0;
+    int i = 0;
+    for (; i+8<=b.limit(); i+=8) sum += b.getLong(i);
+    for (; i<b.limit(); ++i) sum += b.get(i);
+    return sum;
+  }
+
+  private static void writeObj(File f, MeshData mesh) throws IOException {
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(f)))) {
+      float[] v = mesh.vertices;
+      for (int i=0; i<v.length; i+=8) out.println("v " + v[i] + " " + v[i+1] + " " + v[i+2]);
+      for (int i=0; i<v.length; i+=8) out.println("vt " + v[i+6] + " " + v[i+7]);
+      for (int i=0; i<v.length; i+=8) out.println("vn " + v[i+3] + " " + v[i+4] + " " + v[i+5]);
+      int[] t = mesh.indices;
+      for (int i=0; i<t.length; i+=3) {
+        out.println("f " + corner(t[i]) + " " + corner(t[i+1]) + " " + corner(t[i+2]));
+      }
+    }
+  }
+
+  private static String corner(int index) {
+    int i = index+1;
+    return i + "/" + i + "/" + i;
+  }
+
+}
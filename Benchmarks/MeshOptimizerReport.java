@@ -0,0 +1,45 @@
+/**
+ * Reports how well MeshOptimizer reorders the built in meshes for the vertex cache,
+ * using simulated FIFO caches, so it needs no GPU. Prints an [error] line for any mesh
+ * whose ACMR gets worse. Run from this folder with bench.bat.
+ */
+
+public class MeshOptimizerReport {
+
+  private static final int[] CACHE_SIZES = {16, 32};
+  private static final int FLOATS_PER_VERTEX = 8;
+
+  private static int failures = 0;
+
+  public static void main(String[] args) {
+    System.out.println(String.format("%-20s %6s %10s %10s %10s %10s", "Mesh", "cache", "ACMR", "ACMR opt", "ATVR", "ATVR opt"));
+    report("Cube", Cube.vertices, Cube.indices);
+    report("TwoTriangles", TwoTriangles.vertices, TwoTriangles.indices);
+    report("Sphere 30x30", Sphere.vertices, Sphere.indices);
+    for (int segments : new int[] {8, 16, 32, 64, 256}) {
+      report("Sphere " + segments + " segments", Sphere.createVertices(segments+1, segments+1), Sphere.createIndices(segments+1, segments+1));
+    }
+    System.out.println(failures == 0 ? "No mesh got worse" : failures + " regressions");
+  }
+
+  private static void report(String name, float[] vertices, int[] indices) {
+    int vertexCount = vertices.length/FLOATS_PER_VERTEX;
+    float[] optimisedVertices = vertices.clone();
+    int[] optimisedIndices = indices.clone();
+    long start = System.nanoTime();
+    MeshOptimizer.optimize(optimisedVertices, FLOATS_PER_VERTEX, optimisedIndices);
+    long nanos = System.nanoTime() - start;
+    for (int cacheSize : CACHE_SIZES) {
+      float acmr = MeshOptimizer.acmr(indices, vertexCount, cacheSize);
+      float optimisedAcmr = MeshOptimizer.acmr(optimisedIndices, vertexCount, cacheSize);
+      System.out.println(String.format("%-20s %6d %10.3f %10.3f %10.3f %10.3f", name, cacheSize, acmr, optimisedAcmr,
+        MeshOptimizer.atvr(indices, vertexCount, cacheSize), MeshOptimizer.atvr(optimisedIndices, vertexCount, cacheSize)));
+      if (optimisedAcmr > acmr) {
+        System.err.println("[error] " + name + " ACMR got worse with a cache of " + cacheSize + ": " + acmr + " to " + optimisedAcmr);
+        failures++;
+      }
+    }
+    System.out.println(String.format("%-20s optimised in %.2f ms", "", nanos/1e6));
+  }
+
+}
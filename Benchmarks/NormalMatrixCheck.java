@@ -0,0 +1,83 @@
+import gmaths.*;
+import java.util.Random;
+
+/**
+ * Checks on the CPU that Mat4.toNormalMatrixForGLSL gives mat3(transpose(inverse(m))), which is
+ * what the vertex shaders used to compute for themselves, for rotations, non-uniform scales,
+ * translations, shears and random products of them. Run from this folder with bench.bat.
+ */
+
+public class NormalMatrixCheck {
+
+  private static final float TOLERANCE = 1e-4f;   // relative to the size of the expected value, at least 1
+  private static final int RANDOM_PRODUCTS = 1000;
+
+  private static int checks = 0, failures = 0;
+
+  public static void main(String[] args) {
+    for (float angle : new float[] {0, 25, 90, 137, 180, 270, -45}) {
+      check("rotate x " + angle, Mat4Transform.rotateAroundX(angle));
+      check("rotate y " + angle, Mat4Transform.rotateAroundY(angle));
+      check("rotate z " + angle, Mat4Transform.rotateAroundZ(angle));
+    }
+    check("scale 2,2,2", Mat4Transform.scale(2, 2, 2));
+    check("scale 32,1,24", Mat4Transform.scale(32, 1, 24));
+    check("scale 0.6,12,0.6", Mat4Transform.scale(0.6f, 12, 0.6f));
+    check("scale -1,1,1", Mat4Transform.scale(-1, 1, 1));
+    check("translate 1,2,3", Mat4Transform.translate(1, 2, 3));
+    check("translate -9.5,6,0", Mat4Transform.translate(-9.5f, 6, 0));
+    check("shear xy", shear(0.5f, 0, 0));
+    check("shear xz yz", shear(0, -0.75f, 1.5f));
+    check("translate rotate scale", Mat4.multiply(Mat4.multiply(Mat4Transform.translate(10.5f, 2.9f, 0),
+      Mat4Transform.rotateAroundZ(55)), Mat4Transform.scale(4.2f, 1.7f, 0.4f)));
+    check("shear rotate scale", Mat4.multiply(Mat4.multiply(shear(0.3f, 0.2f, -0.4f),
+      Mat4Transform.rotateAroundY(25)), Mat4Transform.scale(5, 0.4f, 0.4f)));
+
+    Random random = new Random(1);
+    for (int i=0; i<RANDOM_PRODUCTS; ++i) {
+      Mat4 m = new Mat4(1);
+      for (int step=0; step<4; ++step) {
+        m.mul(randomTransform(random));
+      }
+      check("random product " + i, m);
+    }
+    System.out.println(checks + " matrices checked, " + failures + " failed");
+  }
+
+  // The identity with x sheared by y, x by z and y by z
+  private static Mat4 shear(float xy, float xz, float yz) {
+    Mat4 m = new Mat4(1);
+    m.set(0, 1, xy);
+    m.set(0, 2, xz);
+    m.set(1, 2, yz);
+    return m;
+  }
+
+  private static Mat4 randomTransform(Random random) {
+    switch (random.nextInt(4)) {
+      case 0 : return Mat4Transform.rotateAroundX(random.nextFloat()*360);
+      case 1 : return Mat4Transform.rotateAroundY(random.nextFloat()*360);
+      case 2 : return Mat4Transform.scale(0.1f + random.nextFloat()*10, 0.1f + random.nextFloat()*10, 0.1f + random.nextFloat()*10);
+      default : return Mat4.multiply(Mat4Transform.translate(random.nextFloat()*20-10, random.nextFloat()*20-10, random.nextFloat()*20-10),
+                                     shear(random.nextFloat()-0.5f, random.nextFloat()-0.5f, random.nextFloat()-0.5f));
+    }
+  }
+
+  private static void check(String name, Mat4 m) {
+    checks++;
+    Mat4 expected = Mat4.transpose(Mat4.inverse(m));
+    float[] normal = m.toNormalMatrixForGLSL(new float[9], 0);
+    for (int col=0; col<3; ++col) {
+      for (int row=0; row<3; ++row) {
+        float e = expected.get(row, col);
+        if (Math.abs(e - normal[col*3+row]) > TOLERANCE*Math.max(1, Math.abs(e))) {
+          System.out.println("[error] " + name + ": normal matrix differs from transpose(inverse(m)) at row " + row
+            + ", column " + col + ": " + normal[col*3+row] + ", expected " + e);
+          failures++;
+          return;
+        }
+      }
+    }
+  }
+
+}
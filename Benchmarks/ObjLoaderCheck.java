@@ -0,0 +1,108 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Checks ObjLoader.load against meshes worked out by hand. fixture.obj has quads, v//n faces,
+ * negative indices, numbers with exponents and CRLF line ends, and no line end after its last line.
+ * A second file, several megabytes long so it is parsed as several chunks, repeats a block that
+ * only uses negative indices; where a chunk starts in the middle of a block, its faces refer back
+ * into the chunk before. Run from this folder with bench.bat.
+ */
+
+public class ObjLoaderCheck {
+
+  private static final int BLOCKS = 30000;   // about 4.5MB
+
+  private static int checks = 0, failures = 0;
+
+  public static void main(String[] args) throws IOException {
+    checkFixture();
+    checkChunks();
+    System.out.println(checks + " checks, " + failures + " failed");
+  }
+
+  private static void checkFixture() throws IOException {
+    if (!new File("fixture.obj").exists()) {
+      System.out.println("[error] Run from the Benchmarks folder, where fixture.obj is");
+      System.exit(1);
+    }
+    float[] vertices = {
+      // the front quad, with positions, texture coordinates and normals
+      0, 0, 0,      0, 0, 1,   0, 0,
+      1, 0, 0,      0, 0, 1,   1, 0,
+      1, 1, 0,      0, 0, 1,   1, 1,
+      0, 1, -0f,    0, 0, 1,   0, 1,
+      // the back quad, v//n
+      0, 1, -0f,    0, 0, -1,  0, 0,
+      1, 1, 0,      0, 0, -1,  0, 0,
+      1, 0, 0,      0, 0, -1,  0, 0,
+      0, 0, 0,      0, 0, -1,  0, 0,
+      // the triangle with negative indices, whose last two corners are the first two vertices
+      0.25f, -0.25f, 500,   0, 0, 1,   0.5f, 0.5f,
+      // the triangle of positions only
+      0.25f, -0.25f, 500,   0, 0, 0,   0, 0,
+      0, 1, -0f,            0, 0, 0,   0, 0,
+      1, 1, 0,              0, 0, 0,   0, 0
+    };
+    int[] indices = {0, 1, 2,  0, 2, 3,  4, 5, 6,  4, 6, 7,  8, 0, 1,  9, 10, 11};
+    compare("fixture.obj", ObjLoader.load("fixture.obj"), vertices, indices);
+  }
+
+  private static void checkChunks() throws IOException {
+    File file = File.createTempFile("chunks", ".obj");
+    file.deleteOnExit();
+    float[] vertices = new float[BLOCKS*8*8];
+    int[] indices = new int[BLOCKS*12];
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII))) {
+      for (int k=0; k<BLOCKS; ++k) {
+        out.write("v " + k + " 0 0\nv " + (k+1) + " 0 0\nv " + (k+1) + " 1 0\nv " + k + " 1 0\n");
+        out.write("vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\nvn 0 0 1\n");
+        out.write("f -4/-4/-1 -3/-3/-1 -2/-2/-1 -1/-1/-1\n");
+        out.write("f -1//-1 -2//-1 -3//-1 -4//-1\n");
+
+        float[] block = {
+          k, 0, 0,     0, 0, 1,  0, 0,
+          k+1, 0, 0,   0, 0, 1,  1, 0,
+          k+1, 1, 0,   0, 0, 1,  1, 1,
+          k, 1, 0,     0, 0, 1,  0, 1,
+          k, 1, 0,     0, 0, 1,  0, 0,
+          k+1, 1, 0,   0, 0, 1,  0, 0,
+          k+1, 0, 0,   0, 0, 1,  0, 0,
+          k, 0, 0,     0, 0, 1,  0, 0
+        };
+        System.arraycopy(block, 0, vertices, k*block.length, block.length);
+        int[] quads = {0, 1, 2,  0, 2, 3,  4, 5, 6,  4, 6, 7};
+        for (int i=0; i<quads.length; ++i) indices[k*12+i] = k*8 + quads[i];
+      }
+    }
+    compare(file.length()/1024 + " KB of negative indices", ObjLoader.load(file.getPath()), vertices, indices);
+  }
+
+  // Vertices must match bit for bit, so a lost sign on -0 is found too
+  private static void compare(String what, MeshData mesh, float[] vertices, int[] indices) {
+    checks++;
+    if (mesh.vertices.length != vertices.length || mesh.indices.length != indices.length) {
+      failures++;
+      System.out.println("[error] " + what + ": " + mesh.getVertexCount() + " vertices and " + mesh.indices.length
+        + " indices, expected " + vertices.length/8 + " and " + indices.length);
+      return;
+    }
+    for (int i=0; i<vertices.length; ++i) {
+      if (Float.floatToIntBits(mesh.vertices[i]) != Float.floatToIntBits(vertices[i])) {
+        failures++;
+        System.out.println("[error] " + what + ": vertex " + i/8 + " is " + Arrays.toString(Arrays.copyOfRange(mesh.vertices, i/8*8, i/8*8+8))
+          + ", expected " + Arrays.toString(Arrays.copyOfRange(vertices, i/8*8, i/8*8+8)));
+        return;
+      }
+    }
+    for (int i=0; i<indices.length; ++i) {
+      if (mesh.indices[i] != indices[i]) {
+        failures++;
+        System.out.println("[error] " + what + ": index " + i + " is " + mesh.indices[i] + ", expected " + indices[i]);
+        return;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+import gmaths.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks SGNode.update over a scene of many animated rigs, each a small tree like the snowman's,
+ * updated in this thread and then on fork-join pools of increasing size. Every rig moves each frame,
+ * so the whole graph is recomputed. Checks that the parallel updates give the same world transforms
+ * and bounds as the sequential one. Run from this folder with bench.bat.
+ *
+ * Allocation is only counted for the benchmark thread, so the pool's share does not show in B/op.
+ */
+
+public class SceneGraphBenchmark {
+
+  private static final int RIGS = 10_000;
+  private static final int LIMBS = 4;      // each rig: root, body, and LIMBS two-joint limbs ending in a model
+  private static final float SPACING = 5;
+
+  private static SGNode scene;
+  private static TransformNode[] animated;  // one joint in each limb
+  private static Mat4 pose = new Mat4(1);
+  private static float angle = 0;
+
+  // Stands in for ModelNode, which needs a GL mesh: bounds a unit sphere at its world position
+  private static class BoundsNode extends SGNode {
+    private static final BoundingSphere UNIT = new BoundingSphere(0, 0, 0, 1);
+    private BoundingSphere own = new BoundingSphere();
+
+    BoundsNode(String name) {
+      super(name);
+    }
+
+    protected void updateBounds() {
+      super.updateBounds();
+      UNIT.transformInto(worldTransform, own);
+      worldBounds.enclose(own);
+    }
+  }
+
+  public static void main(String[] args) {
+    build();
+    int nodes = RIGS * (2 + LIMBS*3);
+    System.out.println(RIGS + " rigs, " + nodes + " nodes, " + Runtime.getRuntime().availableProcessors() + " processors");
+
+    Benchmark.printHeader();
+    Benchmark.run("SGNode.update sequential", () -> {
+      animate();
+      scene.update();
+      return scene.getWorldBounds();
+    });
+    for (int threads=1; threads<=Runtime.getRuntime().availableProcessors(); threads*=2) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      Benchmark.run("SGNode.update pool of " + threads, () -> {
+        animate();
+        scene.update(pool);
+        return scene.getWorldBounds();
+      });
+      check(pool);
+      pool.shutdown();
+    }
+  }
+
+  private static void build() {
+    scene = new NameNode("scene");
+    animated = new TransformNode[RIGS*LIMBS];
+    int side = (int)Math.ceil(Math.sqrt(RIGS));
+    for (int r=0; r<RIGS; ++r) {
+      TransformNode rig = new TransformNode("rig " + r, Mat4Transform.translate((r%side)*SPACING, 0, (r/side)*SPACING));
+      TransformNode body = new TransformNode("body", Mat4Transform.scale(1, 2, 1));
+      scene.addChild(rig);
+      rig.addChild(body);
+      for (int l=0; l<LIMBS; ++l) {
+        TransformNode shoulder = new TransformNode("shoulder", Mat4Transform.rotateAroundY(l*90));
+        TransformNode elbow = new TransformNode("elbow", Mat4Transform.translate(1, 0, 0));
+        BoundsNode hand = new BoundsNode("hand");
+        body.addChild(shoulder);
+        shoulder.addChild(elbow);
+        elbow.addChild(hand);
+        animated[r*LIMBS+l] = elbow;
+      }
+    }
+    scene.update();
+  }
+
+  private static void animate() {
+    angle += 1;
+    Mat4Transform.rotateAroundZInto(angle, pose);
+    for (int i=0; i<animated.length; ++i) {
+      animated[i].setTransform(pose);
+    }
+  }
+
+  // Updates one frame both ways and compares every rig's bounds
+  private static void check(ForkJoinPool pool) {
+    animate();
+    scene.update(pool);
+    float[] parallel = rigBounds();
+    angle -= 1;
+    animate();
+    scene.update();
+    float[] sequential = rigBounds();
+    if (!java.util.Arrays.equals(parallel, sequential)) {
+      System.out.println("[error] the pool's update differs from the sequential one");
+    }
+  }
+
+  private static float[] rigBounds() {
+    float[] b = new float[RIGS*4];
+    for (int r=0; r<RIGS; ++r) {
+      BoundingSphere s = scene.children.get(r).getWorldBounds();
+      b[r*4] = s.x;
+      b[r*4+1] = s.y;
+      b[r*4+2] = s.z;
+      b[r*4+3] = s.radius;
+    }
+    return b;
+  }
+
+}
@@ -0,0 +1,69 @@
+import gmaths.*;
+import java.util.Map;
+import com.jogamp.opengl.*;
+
+/**
+ * Checks on the CPU, with a CountingGL3, that Shader asks GL for each uniform's location at most
+ * once: the active uniforms when it is created, and any other name the first time it is used.
+ * Three textured models are rendered for a number of frames, setting their uniforms by name as
+ * usual, and names outside the table (a later array element and an unused uniform) are looked up
+ * repeatedly. Run from this folder with bench.bat.
+ */
+
+public class ShaderUniformCheck {
+
+  private static final int FRAMES = 100;
+
+  // The uniforms vs_main.txt and fs_main.txt use outside their blocks, and an array, as GL names them
+  private static final String[] UNIFORMS = {"uvTransform", "model", "normalMatrix", "first_texture", "second_texture",
+    "material.ambient", "material.diffuse", "material.specular", "material.shininess", "weights[0]"};
+
+  private static int failures = 0;
+
+  public static void main(String[] args) {
+    CountingGL3 counting = new CountingGL3(UNIFORMS);
+    GL3 gl = counting.getGL();
+    Shader shader = new Shader(gl, gl.glCreateProgram());
+    for (String name : UNIFORMS) {
+      if (counting.locationLookups(name) != 1) error(name + " looked up " + counting.locationLookups(name) + " times when the shader was made");
+    }
+
+    Mesh mesh = new Mesh(gl, Cube.vertices.clone(), Cube.indices.clone());
+    Model[] models = new Model[3];
+    for (int i=0; i<models.length; ++i) {
+      Material material = new Material();
+      material.setDiffuse(0.2f*i, 0.5f, 0.5f);
+      models[i] = new Model(gl, null, null, null, shader, material, new Mat4(1), mesh, new int[] {100+i}, new int[] {200});
+    }
+    for (int frame=0; frame<FRAMES; ++frame) {
+      for (int i=0; i<models.length; ++i) {
+        models[i].render(gl, Mat4Transform.translate(i, frame*0.1f, 0));
+      }
+      shader.setFloat(gl, "weights", frame);
+      shader.setFloat(gl, "weights[1]", frame);   // not in the table, so queried on first use
+      shader.setFloat(gl, "unused", frame);       // not active: -1, which is remembered too
+    }
+
+    int lookups = 0;
+    for (Map.Entry<String, Integer> e : counting.getLocationLookups().entrySet()) {
+      lookups += e.getValue();
+      if (e.getValue() > 1) error(e.getKey() + " looked up " + e.getValue() + " times");
+    }
+    if (counting.locationLookups("weights[1]") != 1) error("weights[1] was not looked up");
+    if (counting.locationLookups("weights") != 0) error("weights was looked up, but is in the table as weights[0]");
+    System.out.println(String.format("%d frames of %d models: %d glGetUniformLocation calls for %d names, %d glUniform calls",
+      FRAMES, models.length, lookups, counting.getLocationLookups().size(), uniformCalls(counting)));
+    System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+  }
+
+  private static int uniformCalls(CountingGL3 counting) {
+    return counting.count("glUniform1i") + counting.count("glUniform1f") + counting.count("glUniform3f")
+      + counting.count("glUniform4f") + counting.count("glUniformMatrix3fv") + counting.count("glUniformMatrix4fv");
+  }
+
+  private static void error(String message) {
+    failures++;
+    System.out.println("[error] " + message);
+  }
+
+}
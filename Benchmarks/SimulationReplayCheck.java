@@ -0,0 +1,105 @@
+import gmaths.*;
+import java.io.File;
+import com.jogamp.opengl.*;
+
+/**
+ * Checks that the simulation replays exactly: the scene is run twice from the start, each time with
+ * the clock paused and stepped a tick at a time with advanceBy, with the same commands posted at the
+ * same ticks, and the world matrices and background offset published for every tick must match bit
+ * for bit. The background's wind is random, from the same seed each run. The scene is made with a
+ * CountingGL3, so no GPU is needed, but its shader and texture files are read, so this runs from the
+ * Assignment folder, as bench.bat does.
+ */
+
+public class SimulationReplayCheck {
+
+  private static final int TICKS = 900;   // 15 seconds, long enough for the wind to change four times
+  private static final long TIMEOUT_NANOS = 10_000_000_000L;
+
+  private static int failures = 0;
+
+  public static void main(String[] args) {
+    if (!new File("vs_main.txt").exists()) {
+      System.out.println("[error] Run from the Assignment folder, where the shaders are");
+      System.exit(1);
+    }
+    float[][] first = replay();
+    float[][] second = replay();
+
+    int models = first[0].length/16;
+    boolean[] moved = new boolean[models+1];   // the last is the background
+    for (int tick=0; tick<TICKS && failures == 0; ++tick) {
+      for (int i=0; i<first[tick].length; ++i) {
+        String what = (i < models*16) ? "model " + i/16 : "the background";
+        if (Float.floatToIntBits(first[tick][i]) != Float.floatToIntBits(second[tick][i])) {
+          error("tick " + (tick+1) + ", " + what + ": the replay has " + second[tick][i] + " where the first run had " + first[tick][i]);
+          break;
+        }
+        if (tick > 0 && first[tick][i] != first[tick-1][i]) moved[Math.min(i/16, models)] = true;
+      }
+    }
+    int movedCount = 0;
+    for (boolean m : moved) {
+      if (m) movedCount++;
+    }
+    if (movedCount == 0) error("nothing moved, so the replay shows nothing");
+    System.out.println(TICKS + " ticks of " + models + " models and the background, " + movedCount + " of which moved");
+    System.out.println(failures == 0 ? "The replay matched" : failures + " checks failed");
+    System.exit(failures == 0 ? 0 : 1);   // texture decoding may still be running
+  }
+
+  // Returns what was published after each tick: 16 floats per model's world matrix, then the background offset
+  private static float[][] replay() {
+    GL3 gl = new CountingGL3().getGL();
+    FrameClock clock = new FrameClock(1.0/Simulation.TICK_RATE);
+    clock.setPaused(true);
+    Snowman snowman = new Snowman(gl, null, null, null, clock);
+    SecuritySpotlight securitySpotlight = new SecuritySpotlight(gl, null, null, null, clock);
+    AnimatedModel background = new AnimatedModel(gl, null, null, null, new Shader(gl, "vs_animated.txt", "fs_animated.txt"),
+      new Material(), new Mat4(1), MeshLibrary.get(gl, TwoTriangles.vertices, TwoTriangles.indices), null, null, clock);
+    Simulation simulation = new Simulation(clock, snowman, securitySpotlight, background);
+    simulation.start();
+
+    float[][] published = new float[TICKS][];
+    for (int tick=1; tick<=TICKS; ++tick) {
+      switch (tick) {
+        case 1: simulation.post(() -> snowman.selectAnimation(AnimationSelections.SlideRockAndRoll)); break;
+        case 300: simulation.post(securitySpotlight::toggle); break;
+        case 450: simulation.post(() -> snowman.selectAnimation(AnimationSelections.Roll)); break;
+        case 600: simulation.post(securitySpotlight::toggle); break;
+        default: break;
+      }
+      simulation.post(() -> clock.advanceBy(clock.getStep()));
+      FrameState state = waitForTick(simulation, tick*clock.getStep() - clock.getStep()/2);
+      int models = state.getModelCount();
+      published[tick-1] = new float[models*16 + 2];
+      for (int i=0; i<models; ++i) {
+        state.getWorldMatrix(i).toFloatArrayForGLSL(published[tick-1], i*16);
+      }
+      published[tick-1][models*16] = state.getBackgroundOffsetX();
+      published[tick-1][models*16+1] = state.getBackgroundOffsetY();
+    }
+    simulation.stop();
+    return published;
+  }
+
+  private static FrameState waitForTick(Simulation simulation, double time) {
+    long start = System.nanoTime();
+    FrameState state = simulation.getLatest();
+    while (state.getTime() < time) {
+      if (System.nanoTime() - start > TIMEOUT_NANOS) {
+        System.out.println("[error] the simulation did not reach time " + time);
+        System.exit(1);
+      }
+      Thread.yield();
+      state = simulation.getLatest();
+    }
+    return state;
+  }
+
+  private static void error(String message) {
+    failures++;
+    System.out.println("[error] " + message);
+  }
+
+}
@@ -0,0 +1,132 @@
+import java.io.*;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reports how well RectanglePacker fills a texture atlas, for the snowman's textures and for sets
+ * of random rectangles, and checks on the CPU that:
+ *   - no two padded rectangles overlap, all are inside the atlas, and all are aligned to 4 texels
+ *   - every texel of every image lands where its TextureAtlas UV transform says it does
+ *   - the borders repeat each image's edge texels
+ * Run from this folder with bench.bat.
+ */
+
+public class TextureAtlasReport {
+
+  private static final String[] SNOWMAN_TEXTURES = {"snow.jpg", "stone.jpg", "stoneSmooth.jpg", "HatMain.jpg", "ribbon.jpg"};
+  private static final String TEXTURE_FOLDER = "../Assignment/textures/";
+  private static final int[] RANDOM_COUNTS = {10, 50, 200, 500};
+
+  public static void main(String[] args) throws IOException {
+    System.out.println(String.format("%-28s %6s %12s %10s %10s", "Rectangles", "count", "atlas", "filled", "pack ms"));
+
+    int[] widths = new int[SNOWMAN_TEXTURES.length];
+    int[] heights = new int[SNOWMAN_TEXTURES.length];
+    for (int i=0; i<SNOWMAN_TEXTURES.length; ++i) {
+      readSize(new File(TEXTURE_FOLDER + SNOWMAN_TEXTURES[i]), widths, heights, i);
+    }
+    report("Snowman textures", SNOWMAN_TEXTURES, widths, heights);
+
+    Random random = new Random(1);
+    for (int count : RANDOM_COUNTS) {
+      String[] names = new String[count];
+      widths = new int[count];
+      heights = new int[count];
+      for (int i=0; i<count; ++i) {
+        names[i] = "random " + i;
+        widths[i] = 16 + random.nextInt(241);
+        heights[i] = 16 + random.nextInt(241);
+      }
+      report("Random 16 to 256 texels", names, widths, heights);
+    }
+  }
+
+  private static void readSize(File file, int[] widths, int[] heights, int i) throws IOException {
+    try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+      ImageReader reader = ImageIO.getImageReaders(in).next();
+      reader.setInput(in);
+      widths[i] = reader.getWidth(0);
+      heights[i] = reader.getHeight(0);
+      reader.dispose();
+    }
+  }
+
+  private static void report(String name, String[] names, int[] widths, int[] heights) {
+    long start = System.nanoTime();
+    TextureAtlas atlas = new TextureAtlas(names, widths, heights);
+    long nanos = System.nanoTime() - start;
+    System.out.println(String.format("%-28s %6d %12s %9.1f%% %10.2f", name, names.length,
+      atlas.getWidth() + "x" + atlas.getHeight(), 100*atlas.getEfficiency(), nanos/1e6));
+    checkLayout(atlas);
+    checkUVTransforms(atlas);
+  }
+
+  private static void checkLayout(TextureAtlas atlas) {
+    int p = TextureAtlas.PADDING;
+    int n = atlas.getImageCount();
+    for (int i=0; i<n; ++i) {
+      int x0 = atlas.getImageX(i)-p, y0 = atlas.getImageY(i)-p;
+      int x1 = atlas.getImageX(i)+atlas.getImageWidth(i)+p, y1 = atlas.getImageY(i)+atlas.getImageHeight(i)+p;
+      if (x0 < 0 || y0 < 0 || x1 > atlas.getWidth() || y1 > atlas.getHeight()) error(atlas, i, "is outside the atlas");
+      if (x0 % RectanglePacker.ALIGNMENT != 0 || y0 % RectanglePacker.ALIGNMENT != 0) error(atlas, i, "is not aligned");
+      for (int j=i+1; j<n; ++j) {
+        int u0 = atlas.getImageX(j)-p, v0 = atlas.getImageY(j)-p;
+        int u1 = atlas.getImageX(j)+atlas.getImageWidth(j)+p, v1 = atlas.getImageY(j)+atlas.getImageHeight(j)+p;
+        if (x0 < u1 && u0 < x1 && y0 < v1 && v0 < y1) error(atlas, i, "overlaps " + atlas.getName(j));
+      }
+    }
+  }
+
+  // Each image is filled with its number and each texel's position, then found again through its UV transform
+  private static void checkUVTransforms(TextureAtlas atlas) {
+    int n = atlas.getImageCount();
+    byte[][] images = new byte[n][];
+    for (int i=0; i<n; ++i) {
+      int w = atlas.getImageWidth(i), h = atlas.getImageHeight(i);
+      images[i] = new byte[w*h*3];
+      for (int y=0; y<h; ++y) {
+        for (int x=0; x<w; ++x) {
+          images[i][(y*w+x)*3] = (byte)i;
+          images[i][(y*w+x)*3+1] = (byte)x;
+          images[i][(y*w+x)*3+2] = (byte)y;
+        }
+      }
+    }
+    byte[] rgb = atlas.compose(images);
+    for (int i=0; i<n; ++i) {
+      int w = atlas.getImageWidth(i), h = atlas.getImageHeight(i);
+      float[] t = atlas.getUVTransform(i);
+      for (int y=0; y<h; ++y) {
+        for (int x=0; x<w; ++x) {
+          // the texture coordinates of the texel's centre, mapped as the vertex shader does
+          float u = ((x+0.5f)/w) * t[0] + t[2];
+          float v = ((y+0.5f)/h) * t[1] + t[3];
+          int ax = (int)Math.floor(u*atlas.getWidth()), ay = (int)Math.floor(v*atlas.getHeight());
+          if (!same(rgb, (ay*atlas.getWidth()+ax)*3, images[i], (y*w+x)*3)) {
+            error(atlas, i, "texel " + x + "," + y + " is not at its UV transform");
+            return;
+          }
+        }
+      }
+      for (int k=-TextureAtlas.PADDING; k<0; ++k) {   // the left and top borders, along the top left corner
+        int ax = atlas.getImageX(i)+k, ay = atlas.getImageY(i);
+        int bx = atlas.getImageX(i), by = atlas.getImageY(i)+k;
+        if (!same(rgb, (ay*atlas.getWidth()+ax)*3, images[i], 0) || !same(rgb, (by*atlas.getWidth()+bx)*3, images[i], 0)) {
+          error(atlas, i, "border does not repeat its edge");
+          return;
+        }
+      }
+    }
+  }
+
+  private static boolean same(byte[] a, int i, byte[] b, int j) {
+    return a[i] == b[j] && a[i+1] == b[j+1] && a[i+2] == b[j+2];
+  }
+
+  private static void error(TextureAtlas atlas, int image, String message) {
+    System.out.println("[error] " + atlas.getName(image) + " " + message);
+  }
+
+}
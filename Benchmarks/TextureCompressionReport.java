@@ -0,0 +1,85 @@
+import java.io.*;
+import com.jogamp.opengl.util.texture.spi.JPEGImage;
+
+/**
+ * Reports how fast TextureCompressor makes mipmaps and BC1 data for each texture the assignment
+ * uses, how close the compressed top level is to the image (PSNR, higher is better; above about
+ * 35 dB differences are hard to see), and how much GPU memory compression saves. Runs on the CPU
+ * only, and checks that each result reads back the same from a KTXFile. Run from this folder with bench.bat.
+ *
+ * The uncompressed size is what TextureLibrary estimates for GL_RGB with mipmaps: 4 bytes a texel plus a third.
+ */
+
+public class TextureCompressionReport {
+
+  private static final String TEXTURE_FOLDER = "../Assignment/textures";
+  private static final int RUNS = 5;   // the best of these is reported
+
+  public static void main(String[] args) throws IOException {
+    File[] files = new File(TEXTURE_FOLDER).listFiles((folder, name) -> name.endsWith(".jpg"));
+    if (files == null) {
+      System.out.println("No textures found in " + TEXTURE_FOLDER);
+      return;
+    }
+    File ktx = File.createTempFile("texture", ".ktx");
+    ktx.deleteOnExit();
+    System.out.println(String.format("%-24s %10s %6s %9s %9s %8s %8s %10s %10s %6s", "Texture", "size",
+      "levels", "mips ms", "BC1 ms", "MP/s", "PSNR dB", "RGB KB", "BC1 KB", "ratio"));
+    long totalUncompressed = 0, totalCompressed = 0;
+    for (File file : files) {
+      JPEGImage img;
+      try (FileInputStream in = new FileInputStream(file)) {
+        img = JPEGImage.read(in);
+      }
+      int width = img.getWidth(), height = img.getHeight();
+      byte[] rgb = new byte[img.getData().remaining()];
+      img.getData().duplicate().get(rgb);
+
+      long bestMips = Long.MAX_VALUE, bestEncode = Long.MAX_VALUE;
+      byte[][] mipmaps = null;
+      byte[][] levels = null;
+      long texels = 0;
+      for (int run=0; run<RUNS; ++run) {
+        long start = System.nanoTime();
+        mipmaps = TextureCompressor.buildMipChain(rgb, width, height);
+        long mid = System.nanoTime();
+        levels = new byte[mipmaps.length][];
+        texels = 0;
+        for (int level=0; level<mipmaps.length; ++level) {
+          int w = TextureCompressor.mipSize(width, level), h = TextureCompressor.mipSize(height, level);
+          levels[level] = TextureCompressor.encodeBC1(mipmaps[level], w, h);
+          texels += (long)w*h;
+        }
+        long end = System.nanoTime();
+        bestMips = Math.min(bestMips, mid-start);
+        bestEncode = Math.min(bestEncode, end-mid);
+      }
+
+      long compressed = 0;
+      for (byte[] level : levels) compressed += level.length;
+      long uncompressed = (long)width*height*4*4/3;
+      totalUncompressed += uncompressed;
+      totalCompressed += compressed;
+      double psnr = TextureCompressor.psnr(rgb, TextureCompressor.decodeBC1(levels[0], 0, width, height));
+      System.out.println(String.format("%-24s %10s %6d %9.1f %9.1f %8.1f %8.2f %10d %10d %6.1f", file.getName(),
+        width + "x" + height, levels.length, bestMips/1e6, bestEncode/1e6, texels/(bestEncode/1e3),
+        psnr, uncompressed/1024, compressed/1024, (double)uncompressed/compressed));
+
+      KTXFile.write(ktx.getPath(), 0x83F0, 0x1907, width, height, levels);   // GL_COMPRESSED_RGB_S3TC_DXT1_EXT, GL_RGB
+      checkRoundTrip(KTXFile.read(ktx.getPath()), width, height, levels, file.getName());
+    }
+    System.out.println(String.format("All textures: %d KB uncompressed, %d KB as BC1, %.1fx smaller",
+      totalUncompressed/1024, totalCompressed/1024, (double)totalUncompressed/totalCompressed));
+  }
+
+  private static void checkRoundTrip(KTXFile.Contents contents, int width, int height, byte[][] levels, String name) {
+    boolean same = contents.width == width && contents.height == height && contents.levels.length == levels.length;
+    for (int level=0; same && level<levels.length; ++level) {
+      byte[] read = new byte[contents.levels[level].remaining()];
+      contents.levels[level].duplicate().get(read);
+      same = java.util.Arrays.equals(read, levels[level]);
+    }
+    if (!same) System.out.println("[error] " + name + " reads back differently from its KTX file");
+  }
+
+}
@@ -0,0 +1,146 @@
+import java.util.Random;
+
+/**
+ * Checks the conversions VertexLayout.COMPACT stores vertices with, on the CPU:
+ *   - every half float reads back and encodes to the same bits (NaNs stay NaN)
+ *   - floats round to the nearest half, and halfway values to the even one
+ *   - a 64-segment sphere encoded and decoded stays within the error each attribute's format allows:
+ *     half a unit in the last place for positions, half a step of 1/511 for normals and of
+ *     1/65535 for texture coordinates
+ *   - smallestFor only picks half float positions when their worst rounding error is within 1/1024 of
+ *     the mesh's size: a unit sphere and a large sphere round the origin are COMPACT, and a unit sphere
+ *     placed 5000 units away, where halves are 4 units apart, is STANDARD
+ * Run from this folder with bench.bat.
+ */
+
+public class VertexLayoutCheck {
+
+  private static final int RANDOM_FLOATS = 1_000_000;
+  private static final int SEGMENTS = 64;
+
+  private static int failures = 0;
+
+  public static void main(String[] args) {
+    checkHalfRoundTrip();
+    checkNearestHalf();
+    checkSphere();
+    checkLayoutChoice();
+    System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+  }
+
+  private static void checkHalfRoundTrip() {
+    for (int bits=0; bits<0x10000; ++bits) {
+      float f = VertexLayout.halfToFloat((short)bits);
+      short back = VertexLayout.floatToHalf(f);
+      boolean same = Float.isNaN(f) ? Float.isNaN(VertexLayout.halfToFloat(back)) : back == (short)bits;
+      if (!same) {
+        error(String.format("half 0x%04x reads as %s and encodes back to 0x%04x", bits, f, back & 0xFFFF));
+        return;
+      }
+    }
+    System.out.println("Every half value round trips");
+  }
+
+  // Works on magnitudes, as the sign is copied across unchanged
+  private static void checkNearestHalf() {
+    Random random = new Random(1);
+    for (int i=0; i<RANDOM_FLOATS; ++i) {
+      // a spread of sizes from below the smallest subnormal half to the largest half
+      float f = (float)Math.pow(2, -26 + random.nextDouble()*42) * (random.nextBoolean() ? 1 : -1);
+      if (Math.abs(f) > 65504) continue;
+      int h = VertexLayout.floatToHalf(f) & 0x7FFF;
+      double d = Math.abs(Math.abs(f) - VertexLayout.halfToFloat((short)h));
+      if (h > 0 && Math.abs(Math.abs(f) - VertexLayout.halfToFloat((short)(h-1))) < d
+          || h < 0x7BFF && Math.abs(Math.abs(f) - VertexLayout.halfToFloat((short)(h+1))) < d) {
+        error(f + " does not round to the nearest half");
+        return;
+      }
+    }
+    for (int h=0; h<0x7BFF; ++h) {
+      float middle = (VertexLayout.halfToFloat((short)h) + VertexLayout.halfToFloat((short)(h+1))) / 2;   // exact in a float
+      int rounded = VertexLayout.floatToHalf(middle);
+      if (rounded != ((h % 2 == 0) ? h : h+1)) {
+        error(middle + ", halfway between two halves, does not round to the even one");
+        return;
+      }
+    }
+    System.out.println(RANDOM_FLOATS + " random floats round to the nearest half, halfway values to even");
+  }
+
+  private static void checkSphere() {
+    float[] vertices = Sphere.createVertices(SEGMENTS+1, SEGMENTS+1);   // the first and last of each ring coincide
+    float[] decoded = VertexLayout.COMPACT.decode(VertexLayout.COMPACT.encode(vertices));
+    double position = 0, normal = 0, texCoord = 0;
+    for (int v=0; v<vertices.length; v+=VertexLayout.SOURCE_FLOATS) {
+      for (int c=0; c<3; ++c) {
+        float x = vertices[v+c];
+        double error = Math.abs(decoded[v+c] - x);
+        // half an ulp of a half: 2^-11 of the value, or of the smallest normal half for subnormals
+        double bound = Math.max(Math.abs(x), 0x1p-14) * 0x1p-11;
+        if (error > bound) error("position " + x + " decodes as " + decoded[v+c]);
+        position = Math.max(position, error);
+      }
+      for (int c=3; c<6; ++c) {
+        double error = Math.abs(decoded[v+c] - vertices[v+c]);
+        if (error > 0.5/511 + 1e-6) error("normal " + vertices[v+c] + " decodes as " + decoded[v+c]);
+        normal = Math.max(normal, error);
+      }
+      for (int c=6; c<8; ++c) {
+        double error = Math.abs(decoded[v+c] - vertices[v+c]);
+        if (error > 0.5/65535 + 1e-7) error("texture coordinate " + vertices[v+c] + " decodes as " + decoded[v+c]);
+        texCoord = Math.max(texCoord, error);
+      }
+    }
+    System.out.println(String.format("%d-segment sphere, worst errors: position %.2g, normal %.2g, texture coordinate %.2g",
+      SEGMENTS, position, normal, texCoord));
+  }
+
+  private static void checkLayoutChoice() {
+    expectLayout("unit sphere", sphere(1, 0), VertexLayout.COMPACT);
+    expectLayout("sphere 2000 across at the origin", sphere(2000, 0), VertexLayout.COMPACT);
+    expectLayout("unit sphere at x 5000", sphere(1, 5000), VertexLayout.STANDARD);
+    expectLayout("unit sphere at x 100", sphere(1, 100), VertexLayout.STANDARD);
+    expectLayout("sphere 100 across at x 100", sphere(100, 100), VertexLayout.COMPACT);
+    expectLayout("sphere at x 70000, beyond the largest half", sphere(1000, 70000), VertexLayout.STANDARD);
+  }
+
+  private static float[] sphere(float size, float x) {
+    float[] vertices = Sphere.createVertices(SEGMENTS+1, SEGMENTS+1);
+    for (int v=0; v<vertices.length; v+=VertexLayout.SOURCE_FLOATS) {
+      vertices[v] = vertices[v]*size + x;
+      vertices[v+1] *= size;
+      vertices[v+2] *= size;
+    }
+    return vertices;
+  }
+
+  private static void expectLayout(String name, float[] vertices, VertexLayout expected) {
+    VertexLayout layout = VertexLayout.smallestFor(vertices);
+    String chosen = layout == VertexLayout.COMPACT ? "COMPACT" : "STANDARD";
+    if (layout != expected) {
+      error(name + " uses " + chosen);
+      return;
+    }
+    // Whatever was chosen, positions must come back within the tolerance
+    float[] decoded = layout.decode(layout.encode(vertices));
+    float[] min = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+    float[] max = {Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+    double worst = 0;
+    for (int v=0; v<vertices.length; v+=VertexLayout.SOURCE_FLOATS) {
+      for (int c=0; c<3; ++c) {
+        min[c] = Math.min(min[c], vertices[v+c]);
+        max[c] = Math.max(max[c], vertices[v+c]);
+        worst = Math.max(worst, Math.abs(decoded[v+c] - vertices[v+c]));
+      }
+    }
+    float extent = Math.max(max[0]-min[0], Math.max(max[1]-min[1], max[2]-min[2]));
+    if (worst > extent/1024) error(name + " has a position error of " + worst + ", over 1/1024 of its size " + extent);
+    System.out.println(String.format("%s: %s, worst position error %.2g", name, chosen, worst));
+  }
+
+  private static void error(String message) {
+    failures++;
+    System.out.println("[error] " + message);
+  }
+
+}
@@ -0,0 +1,18 @@
+javac -cp ..\Assignment;%classpath% *.java 
+java -cp .;..\Assignment;%classpath% GMathsBenchmark
+java -cp .;..\Assignment;%classpath% BVHBenchmark
+java -cp .;..\Assignment;%classpath% MeshLoadBenchmark
+java -cp .;..\Assignment;%classpath% TextureCompressionReport
+java -cp .;..\Assignment;%classpath% TextureAtlasReport
+java -cp .;..\Assignment;%classpath% SceneGraphBenchmark
+java -cp .;..\Assignment;%classpath% NormalMatrixCheck
+java -cp .;..\Assignment;%classpath% VertexLayoutCheck
+java -cp .;..\Assignment;%classpath% CullingCheck
+java -cp .;..\Assignment;%classpath% MeshOptimizerReport
+java -cp .;..\Assignment;%classpath% BVHCheck
+java -cp .;..\Assignment;%classpath% ShaderUniformCheck
+java -cp .;..\Assignment;%classpath% GLStateCacheCheck
+java -cp .;..\Assignment;%classpath% ObjLoaderCheck
+cd ..\Assignment
+java -cp .;..\Benchmarks;%classpath% SimulationReplayCheck
+cd ..\Benchmarks
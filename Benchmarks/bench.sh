@@ -0,0 +1,11 @@
+#!/bin/sh
+# bench.bat for Linux and macOS. The JOGL jars must be on $CLASSPATH, as setupJOGL.bat puts them on %classpath%.
+cd "$(dirname "$0")" || exit 1
+cp=".:../Assignment:$CLASSPATH"
+javac -cp "../Assignment:$CLASSPATH" *.java || exit 1
+for main in GMathsBenchmark BVHBenchmark MeshLoadBenchmark TextureCompressionReport TextureAtlasReport SceneGraphBenchmark \
+            NormalMatrixCheck VertexLayoutCheck CullingCheck MeshOptimizerReport BVHCheck ShaderUniformCheck \
+            GLStateCacheCheck ObjLoaderCheck; do
+  java -cp "$cp" $main
+done
+cd ../Assignment && java -cp ".:../Benchmarks:$CLASSPATH" SimulationReplayCheck
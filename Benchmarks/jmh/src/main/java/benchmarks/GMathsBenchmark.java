@@ -0,0 +1,108 @@
+package benchmarks;
+
+import gmaths.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmarks for the gmaths package, the same operations as ../GMathsBenchmark.java.
+ * Build with mvn -B package from the top folder, then run with the GC profiler, which
+ * reports the bytes allocated per op as gc.alloc.rate.norm:
+ *   java -jar Benchmarks/jmh/target/benchmarks.jar -prof gc
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GMathsBenchmark {
+
+  // Inputs are non-final fields and results are returned, so JMH sinks them and the JIT
+  // cannot treat the work as constant or dead. Only the angles change between calls.
+  private Mat4 a = Mat4Transform.rotateAroundY(25);
+  private Mat4 b = Mat4.multiply(Mat4Transform.translate(1, 2, 3), Mat4Transform.scale(2, 2, 2));
+  private Mat4 dest = new Mat4(1);
+  private float[] glsl = new float[16];
+  private Vec3 from = new Vec3(0, 0, 25);
+  private Vec3 to = new Vec3(0, 0, 0);
+  private Vec3 up = new Vec3(0, 1, 0);
+  private Vec3 v = new Vec3(1, 2, 3);
+  private float angle = 0;
+
+  private float nextAngle() {
+    angle += 0.1f;
+    if (angle > 360) angle = 0;
+    return angle;
+  }
+
+  @Benchmark
+  public Mat4 multiply() {
+    return Mat4.multiply(a, b);
+  }
+
+  @Benchmark
+  public Mat4 multiplyInto() {
+    return Mat4.multiplyInto(a, b, dest);
+  }
+
+  @Benchmark
+  public Mat4 inverse() {
+    return Mat4.inverse(b);
+  }
+
+  @Benchmark
+  public Mat4 inverseInto() {
+    return Mat4.inverseInto(b, dest);
+  }
+
+  @Benchmark
+  public float[] toFloatArrayForGLSL() {
+    return a.toFloatArrayForGLSL();
+  }
+
+  @Benchmark
+  public float[] toFloatArrayForGLSLInto() {
+    return a.toFloatArrayForGLSL(glsl);
+  }
+
+  @Benchmark
+  public Mat4 rotateAroundX() {
+    return Mat4Transform.rotateAroundX(nextAngle());
+  }
+
+  @Benchmark
+  public Mat4 rotateAroundY() {
+    return Mat4Transform.rotateAroundY(nextAngle());
+  }
+
+  @Benchmark
+  public Mat4 rotateAroundZ() {
+    return Mat4Transform.rotateAroundZ(nextAngle());
+  }
+
+  @Benchmark
+  public Mat4 rotateAroundYInto() {
+    return Mat4Transform.rotateAroundYInto(nextAngle(), dest);
+  }
+
+  @Benchmark
+  public Mat4 lookAt() {
+    from.x = nextAngle();
+    return Mat4Transform.lookAt(from, to, up);
+  }
+
+  @Benchmark
+  public Vec3 normalize() {
+    v.x = nextAngle();
+    return Vec3.normalize(v);
+  }
+
+  @Benchmark
+  public Vec3 crossProduct() {
+    v.x = nextAngle();
+    return Vec3.crossProduct(v, from);
+  }
+
+}